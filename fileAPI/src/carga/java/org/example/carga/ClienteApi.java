@@ -0,0 +1,122 @@
+package org.example.carga;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+// Las llamadas a la API que usa la prueba. Cada una se cronometra y queda en
+// Metricas con el nombre de la operación; las respuestas que no son 2xx cuentan
+// como error de esa operación.
+public class ClienteApi {
+    private static final Duration TIEMPO_MAXIMO = Duration.ofSeconds(60);
+
+    public record Respuesta(int estado, String cuerpo) {
+        public boolean ok() {
+            return estado >= 200 && estado < 300;
+        }
+    }
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(TIEMPO_MAXIMO)
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String base;
+    private final Metricas metricas;
+
+    public ClienteApi(int puerto, Metricas metricas) {
+        this.base = "http://localhost:" + puerto;
+        this.metricas = metricas;
+    }
+
+    public Respuesta crearUsuario(String nombre, long espacioMaximo) throws IOException {
+        return enviar("crearUsuario", "POST", "/usuarios", Map.of("nombre", nombre, "espacioMaximo", espacioMaximo));
+    }
+
+    public Respuesta crearCarpeta(String usuario, String path, String nombre) throws IOException {
+        return enviar("crearCarpeta", "POST", "/carpetas/" + usuario + "/crear", Map.of("path", path, "nombre", nombre));
+    }
+
+    public Respuesta borrarCarpeta(String usuario, String path) throws IOException {
+        return enviar("borrarCarpeta", "DELETE", "/carpetas/" + usuario, Map.of("path", path));
+    }
+
+    public Respuesta crearArchivo(String usuario, String path, String nombre, String extension, String contenido) throws IOException {
+        return enviar("crear", "POST", "/usuarios/" + usuario + "/archivos",
+                Map.of("path", path, "nombre", nombre, "extension", extension, "contenido", contenido));
+    }
+
+    public Respuesta listar(String usuario, String path) throws IOException {
+        return enviar("listar", "GET", "/usuarios/" + usuario + "/archivos?path=" + cod(path), null);
+    }
+
+    public Respuesta modificar(String usuario, String path, String nombreCompleto, String contenido) throws IOException {
+        return enviar("modificar", "PATCH", "/usuarios/" + usuario + "/archivos/modificar",
+                Map.of("path", path, "nombreArchivo", nombreCompleto, "nuevoContenido", contenido));
+    }
+
+    public Respuesta mover(String usuario, String origen, String destino, String nombre, String extension) throws IOException {
+        return enviar("mover", "POST", "/usuarios/" + usuario + "/archivos/mover",
+                Map.of("origenPath", origen, "destinoPath", destino, "nombre", nombre, "extension", extension));
+    }
+
+    public Respuesta compartir(String usuario, String path, String nombreCompleto, String destinatario) throws IOException {
+        return enviar("compartir", "POST", "/usuarios/" + usuario + "/archivos/compartir",
+                Map.of("path", path, "nombreArchivo", nombreCompleto, "destinatario", destinatario));
+    }
+
+    public Respuesta descargar(String usuario, String path, String nombreCompleto) throws IOException {
+        return enviar("descargar", "GET", "/usuarios/" + usuario + "/archivos/descargar?path=" + cod(path)
+                + "&nombreArchivo=" + cod(nombreCompleto), null);
+    }
+
+    // El usuario entero con el contenido de cada archivo, para la verificación final
+    public JsonNode usuarioCompleto(String id) throws IOException {
+        Respuesta r = enviar("verificar", "GET", "/usuarios/" + id + "?contenido=true", null);
+        if (!r.ok()) throw new IOException("GET /usuarios/" + id + " devolvió " + r.estado());
+        return mapper.readTree(r.cuerpo());
+    }
+
+    public JsonNode leerJson(String cuerpo) throws JsonProcessingException {
+        return mapper.readTree(cuerpo);
+    }
+
+    private Respuesta enviar(String operacion, String metodo, String ruta, Object cuerpo) throws IOException {
+        HttpRequest.BodyPublisher publicador = cuerpo == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(cuerpo));
+        HttpRequest peticion = HttpRequest.newBuilder(URI.create(base + ruta))
+                .timeout(TIEMPO_MAXIMO)
+                .header("Content-Type", "application/json")
+                .method(metodo, publicador)
+                .build();
+
+        long inicio = System.nanoTime();
+        try {
+            HttpResponse<String> respuesta = http.send(peticion, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            Respuesta r = new Respuesta(respuesta.statusCode(), respuesta.body());
+            metricas.registrar(operacion, System.nanoTime() - inicio, !r.ok());
+            return r;
+        } catch (IOException e) {
+            metricas.registrar(operacion, System.nanoTime() - inicio, true);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Petición interrumpida", e);
+        }
+    }
+
+    private static String cod(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+}
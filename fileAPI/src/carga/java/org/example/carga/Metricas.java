@@ -0,0 +1,109 @@
+package org.example.carga;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Latencias por operación y violaciones de consistencia encontradas
+public class Metricas {
+
+    private static class Serie {
+        // Latencias en tandas de arreglos fijos; se juntan y ordenan solo al final
+        private final List<long[]> tandas = new ArrayList<>();
+        private long[] actual = new long[4096];
+        private int usados;
+        final AtomicLong errores = new AtomicLong();
+
+        synchronized void agregar(long nanos) {
+            if (usados == actual.length) {
+                tandas.add(actual);
+                actual = new long[actual.length];
+                usados = 0;
+            }
+            actual[usados++] = nanos;
+        }
+
+        synchronized long[] todas() {
+            int total = usados;
+            for (long[] t : tandas) total += t.length;
+            long[] resultado = new long[total];
+            int i = 0;
+            for (long[] t : tandas) {
+                System.arraycopy(t, 0, resultado, i, t.length);
+                i += t.length;
+            }
+            System.arraycopy(actual, 0, resultado, i, usados);
+            return resultado;
+        }
+    }
+
+    private final Map<String, Serie> series = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> violaciones = new ConcurrentHashMap<>();
+    private final List<String> ejemplos = new ArrayList<>();
+    private static final int MAX_EJEMPLOS = 20;
+
+    public void registrar(String operacion, long nanos, boolean error) {
+        Serie s = series.computeIfAbsent(operacion, k -> new Serie());
+        s.agregar(nanos);
+        if (error) s.errores.incrementAndGet();
+    }
+
+    public void violacion(String tipo, String detalle) {
+        violaciones.computeIfAbsent(tipo, k -> new AtomicLong()).incrementAndGet();
+        synchronized (ejemplos) {
+            if (ejemplos.size() < MAX_EJEMPLOS) ejemplos.add(tipo + ": " + detalle);
+        }
+    }
+
+    public long totalViolaciones() {
+        return violaciones.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    // Resumen por operación (ordenado por nombre) listo para imprimir o guardar en JSON
+    public Map<String, Object> resumen(double segundos) {
+        Map<String, Object> porOperacion = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<String, Serie> e : series.entrySet()) {
+            long[] lat = e.getValue().todas();
+            Arrays.sort(lat);
+            total += lat.length;
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("peticiones", lat.length);
+            r.put("errores", e.getValue().errores.get());
+            r.put("porSegundo", redondear(lat.length / segundos));
+            r.put("p50ms", percentil(lat, 0.50));
+            r.put("p95ms", percentil(lat, 0.95));
+            r.put("p99ms", percentil(lat, 0.99));
+            r.put("maxms", lat.length == 0 ? 0 : redondear(lat[lat.length - 1] / 1e6));
+            porOperacion.put(e.getKey(), r);
+        }
+
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("segundos", redondear(segundos));
+        resumen.put("peticiones", total);
+        resumen.put("porSegundo", redondear(total / segundos));
+        resumen.put("operaciones", porOperacion);
+        Map<String, Long> v = new TreeMap<>();
+        violaciones.forEach((k, n) -> v.put(k, n.get()));
+        resumen.put("violaciones", v);
+        synchronized (ejemplos) {
+            resumen.put("ejemplosViolaciones", new ArrayList<>(ejemplos));
+        }
+        return resumen;
+    }
+
+    private static double percentil(long[] ordenadas, double p) {
+        if (ordenadas.length == 0) return 0;
+        int i = (int) Math.ceil(p * ordenadas.length) - 1;
+        return redondear(ordenadas[Math.max(0, i)] / 1e6);
+    }
+
+    private static double redondear(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
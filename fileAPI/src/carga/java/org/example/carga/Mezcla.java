@@ -0,0 +1,46 @@
+package org.example.carga;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Proporción de cada operación en la carga, p. ej. "crear=20,listar=25,modificar=20"
+public class Mezcla {
+    public static final Set<String> OPERACIONES = Set.of(
+            "crear", "listar", "modificar", "mover", "compartir", "descargar", "borrarCarpeta");
+
+    private final String[] nombres;
+    private final int[] acumulados;
+
+    public Mezcla(String especificacion) {
+        Map<String, Integer> pesos = new LinkedHashMap<>();
+        for (String parte : especificacion.split(",")) {
+            if (parte.isBlank()) continue;
+            String[] kv = parte.trim().split("=");
+            if (kv.length != 2 || !OPERACIONES.contains(kv[0].trim())) {
+                throw new IllegalArgumentException("Operación de la mezcla inválida: " + parte
+                        + " (válidas: " + OPERACIONES + ")");
+            }
+            int peso = Integer.parseInt(kv[1].trim());
+            if (peso > 0) pesos.put(kv[0].trim(), peso);
+        }
+        if (pesos.isEmpty()) throw new IllegalArgumentException("La mezcla no tiene operaciones");
+
+        nombres = pesos.keySet().toArray(new String[0]);
+        acumulados = new int[nombres.length];
+        int total = 0;
+        for (int i = 0; i < nombres.length; i++) {
+            total += pesos.get(nombres[i]);
+            acumulados[i] = total;
+        }
+    }
+
+    public String elegir(Random azar) {
+        int r = azar.nextInt(acumulados[acumulados.length - 1]);
+        for (int i = 0; i < acumulados.length; i++) {
+            if (r < acumulados[i]) return nombres[i];
+        }
+        return nombres[nombres.length - 1];
+    }
+}
@@ -0,0 +1,241 @@
+package org.example.carga;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.fileapi.FileApiApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Prueba de carga de punta a punta: levanta la aplicación en un puerto libre
+// sobre un directorio de datos temporal, siembra usuarios con un árbol de la
+// forma pedida, corre una mezcla de operaciones con N trabajadores y al final
+// comprueba el estado de cada usuario (y otra vez tras reiniciar la aplicación).
+// Se configura con propiedades carga.* (ver Configuracion); con Gradle:
+//   ./gradlew pruebaCarga -Pcarga.usuarios=8 -Pcarga.trabajadores=32 -Pcarga.duracion=60
+// Sale con código 1 si encontró violaciones de consistencia.
+public class PruebaCarga {
+
+    record Configuracion(int usuarios, int trabajadores, int duracion, int carpetas, int ramificacion,
+                         int archivos, String mezcla, long semilla, boolean reiniciar, String app, Path salida) {
+
+        static Configuracion leer() {
+            return new Configuracion(
+                    entero("carga.usuarios", 4),
+                    entero("carga.trabajadores", 16),
+                    entero("carga.duracion", 30),
+                    // forma del árbol sembrado en root/semilla de cada usuario
+                    entero("carga.carpetas", 20),
+                    entero("carga.ramificacion", 4),
+                    entero("carga.archivos", 5),
+                    System.getProperty("carga.mezcla",
+                            "crear=20,listar=20,modificar=20,mover=10,compartir=5,descargar=20,borrarCarpeta=5"),
+                    Long.parseLong(System.getProperty("carga.semilla", "1")),
+                    Boolean.parseBoolean(System.getProperty("carga.reiniciar", "true")),
+                    // argumentos extra para la aplicación, p. ej. "--spring.threads.virtual.enabled=true"
+                    System.getProperty("carga.app", ""),
+                    Paths.get(System.getProperty("carga.salida", "build/results/carga")));
+        }
+
+        private static int entero(String clave, int porDefecto) {
+            return Integer.parseInt(System.getProperty(clave, String.valueOf(porDefecto)));
+        }
+    }
+
+    private static final long ESPACIO_USUARIO = 1L << 40;
+
+    public static void main(String[] args) throws Exception {
+        Configuracion cfg = Configuracion.leer();
+        Mezcla mezcla = new Mezcla(cfg.mezcla());
+        Path datos = Files.createTempDirectory("fileapi-carga-");
+        System.out.println("Datos en " + datos + "; " + cfg);
+
+        Metricas metricas = new Metricas();
+        Metricas auxiliares = new Metricas(); // siembra y verificación: no cuentan en el informe
+        ConfigurableApplicationContext app = iniciar(datos, cfg);
+        int violaciones;
+        try {
+            ClienteApi preparacion = new ClienteApi(puerto(app), auxiliares);
+            Map<String, String> ids = sembrar(preparacion, cfg);
+
+            ClienteApi api = new ClienteApi(puerto(app), metricas);
+            List<String> nombres = new ArrayList<>(ids.keySet());
+            List<Trabajador> trabajadores = new ArrayList<>();
+            for (int i = 0; i < cfg.trabajadores(); i++) {
+                trabajadores.add(new Trabajador(i, api, metricas, mezcla, nombres, cfg.semilla()));
+            }
+            ExecutorService hilos = Executors.newFixedThreadPool(cfg.trabajadores());
+            try {
+                esperar(hilos, trabajadores.stream().map(t -> (Runnable) () -> {
+                    try {
+                        t.preparar();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }).toList());
+
+                System.out.println("Corriendo " + cfg.duracion() + " s con " + cfg.trabajadores() + " trabajadores...");
+                long inicio = System.nanoTime();
+                long fin = inicio + TimeUnit.SECONDS.toNanos(cfg.duracion());
+                trabajadores.forEach(t -> t.iniciar(fin));
+                esperar(hilos, new ArrayList<Runnable>(trabajadores));
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+
+                int archivosSemilla = cfg.carpetas() * cfg.archivos();
+                new Verificador(new ClienteApi(puerto(app), auxiliares), metricas, "")
+                        .verificar(ids, trabajadores, archivosSemilla);
+
+                if (cfg.reiniciar()) {
+                    app.close();
+                    app = iniciar(datos, cfg);
+                    new Verificador(new ClienteApi(puerto(app), auxiliares), metricas, " (tras reiniciar)")
+                            .verificar(ids, trabajadores, archivosSemilla);
+                }
+
+                Map<String, Object> informe = new LinkedHashMap<>();
+                informe.put("configuracion", cfg.toString());
+                informe.putAll(metricas.resumen(segundos));
+                imprimir(informe);
+                guardar(informe, cfg.salida());
+            } finally {
+                hilos.shutdownNow();
+            }
+            violaciones = (int) metricas.totalViolaciones();
+        } finally {
+            app.close();
+            borrar(datos);
+        }
+        System.exit(violaciones > 0 ? 1 : 0);
+    }
+
+    private static ConfigurableApplicationContext iniciar(Path datos, Configuracion cfg) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--fileapi.datos.directorio=" + datos,
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        if (!cfg.app().isBlank()) args.addAll(Arrays.asList(cfg.app().trim().split("\\s+")));
+        return SpringApplication.run(FileApiApplication.class, args.toArray(new String[0]));
+    }
+
+    private static int puerto(ConfigurableApplicationContext app) {
+        return ((WebServerApplicationContext) app).getWebServer().getPort();
+    }
+
+    // Cada usuario recibe root/semilla con "carpetas" carpetas (llenadas por
+    // niveles con "ramificacion" hijas) y "archivos" archivos en cada una
+    private static Map<String, String> sembrar(ClienteApi api, Configuracion cfg) throws Exception {
+        Map<String, String> ids = new ConcurrentHashMap<>();
+        ExecutorService hilos = Executors.newFixedThreadPool(Math.min(cfg.usuarios(), 8));
+        try {
+            List<Runnable> tareas = new ArrayList<>();
+            for (int i = 0; i < cfg.usuarios(); i++) {
+                String nombre = "carga" + i;
+                tareas.add(() -> {
+                    try {
+                        ClienteApi.Respuesta r = api.crearUsuario(nombre, ESPACIO_USUARIO);
+                        exigir(r);
+                        ids.put(nombre, api.leerJson(r.cuerpo()).path("id").asText());
+                        sembrarArbol(api, nombre, cfg);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            esperar(hilos, tareas);
+        } finally {
+            hilos.shutdownNow();
+        }
+        return new TreeMap<>(ids);
+    }
+
+    private static void sembrarArbol(ClienteApi api, String usuario, Configuracion cfg) throws IOException {
+        exigir(api.crearCarpeta(usuario, "root", "semilla"));
+        Queue<String> porLlenar = new ArrayDeque<>();
+        porLlenar.add("root/semilla");
+        int creadas = 1;
+        while (!porLlenar.isEmpty()) {
+            String carpeta = porLlenar.poll();
+            for (int f = 0; f < cfg.archivos(); f++) {
+                exigir(api.crearArchivo(usuario, carpeta, "s" + f, "txt", "semilla " + carpeta + " " + f + "\n"));
+            }
+            for (int h = 0; h < cfg.ramificacion() && creadas < cfg.carpetas(); h++, creadas++) {
+                String nombre = "c" + creadas;
+                exigir(api.crearCarpeta(usuario, carpeta, nombre));
+                porLlenar.add(carpeta + "/" + nombre);
+            }
+        }
+    }
+
+    private static void esperar(ExecutorService hilos, List<Runnable> tareas) throws Exception {
+        List<Future<?>> pendientes = new ArrayList<>();
+        for (Runnable t : tareas) pendientes.add(hilos.submit(t));
+        for (Future<?> f : pendientes) f.get();
+    }
+
+    private static void exigir(ClienteApi.Respuesta r) throws IOException {
+        if (!r.ok()) throw new IOException("Siembra fallida: " + r.estado() + " " + r.cuerpo());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void imprimir(Map<String, Object> informe) {
+        System.out.printf("%n%-14s %9s %7s %9s %9s %9s %9s %9s%n",
+                "operación", "peticiones", "errores", "por seg", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        Map<String, Map<String, Object>> ops = (Map<String, Map<String, Object>>) informe.get("operaciones");
+        ops.forEach((op, r) -> System.out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s%n", op,
+                r.get("peticiones"), r.get("errores"), r.get("porSegundo"),
+                r.get("p50ms"), r.get("p95ms"), r.get("p99ms"), r.get("maxms")));
+        System.out.printf("%ntotal: %s peticiones en %s s (%s por segundo)%n",
+                informe.get("peticiones"), informe.get("segundos"), informe.get("porSegundo"));
+        System.out.println("violaciones: " + informe.get("violaciones"));
+        ((List<String>) informe.get("ejemplosViolaciones")).forEach(v -> System.out.println("  " + v));
+    }
+
+    private static void guardar(Map<String, Object> informe, Path directorio) throws IOException {
+        Files.createDirectories(directorio);
+        Path archivo = directorio.resolve("carga-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(archivo.toFile(), informe);
+        System.out.println("Informe en " + archivo.toAbsolutePath());
+    }
+
+    private static void borrar(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) return;
+        Files.walkFileTree(directorio, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path archivo, BasicFileAttributes attrs) throws IOException {
+                Files.delete(archivo);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,260 @@
+package org.example.carga;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Un cliente de la carga. Trabaja sobre todos los usuarios, pero solo dentro de
+// sus propias carpetas (root/w<n>/...), así varios trabajadores compiten por la
+// cola de cada usuario y aun así cada uno sabe exactamente qué debería haber en
+// las suyas. Lo que espera lo guarda en un modelo local que al final se compara
+// con lo que devuelve el servidor.
+public class Trabajador implements Runnable {
+    static final String EXTENSION = "txt";
+
+    static class Esperado {
+        final String usuario;
+        String carpeta;
+        final String nombre;
+        String contenido;
+
+        Esperado(String usuario, String carpeta, String nombre, String contenido) {
+            this.usuario = usuario;
+            this.carpeta = carpeta;
+            this.nombre = nombre;
+            this.contenido = contenido;
+        }
+
+        String nombreCompleto() {
+            return nombre + "." + EXTENSION;
+        }
+    }
+
+    record Compartido(String receptor, String nombreCompleto, String contenido) {
+    }
+
+    final int numero;
+    private final ClienteApi api;
+    private final Metricas metricas;
+    private final Mezcla mezcla;
+    private final List<String> usuarios;
+    private final Random azar;
+    private long fin;
+    private int secuencia;
+
+    final List<Esperado> archivos = new ArrayList<>();
+    final Map<String, List<String>> carpetas = new HashMap<>();
+    final Map<String, List<String>> borrables = new HashMap<>();
+    final List<Compartido> compartidos = new ArrayList<>();
+    private final Set<String> yaCompartidos = new HashSet<>();
+    // Nombres cuyo resultado no se sabe (la petición falló sin respuesta): no se verifican
+    final Set<String> inciertos = new HashSet<>();
+
+    public Trabajador(int numero, ClienteApi api, Metricas metricas, Mezcla mezcla, List<String> usuarios, long semilla) {
+        this.numero = numero;
+        this.api = api;
+        this.metricas = metricas;
+        this.mezcla = mezcla;
+        this.usuarios = usuarios;
+        this.azar = new Random(semilla * 31 + numero);
+    }
+
+    String raiz() {
+        return "root/w" + numero;
+    }
+
+    // root/w<n> con dos subcarpetas fijas en cada usuario
+    public void preparar() throws IOException {
+        for (String u : usuarios) {
+            exigir(api.crearCarpeta(u, "root", "w" + numero));
+            exigir(api.crearCarpeta(u, raiz(), "a"));
+            exigir(api.crearCarpeta(u, raiz(), "b"));
+            carpetas.put(u, List.of(raiz(), raiz() + "/a", raiz() + "/b"));
+            borrables.put(u, new ArrayList<>());
+        }
+    }
+
+    public void iniciar(long fin) {
+        this.fin = fin;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < fin) {
+            String operacion = mezcla.elegir(azar);
+            try {
+                switch (operacion) {
+                    case "crear" -> crear();
+                    case "listar" -> listar();
+                    case "modificar" -> modificar();
+                    case "mover" -> mover();
+                    case "compartir" -> compartir();
+                    case "descargar" -> descargar();
+                    case "borrarCarpeta" -> borrarCarpeta();
+                    default -> throw new IllegalStateException(operacion);
+                }
+            } catch (IOException e) {
+                // Ya quedó contado como error de la operación
+            }
+        }
+    }
+
+    private void crear() throws IOException {
+        String u = usuarioAlAzar();
+        String carpeta = carpetaAlAzar(u);
+        String nombre = "w" + numero + "n" + (++secuencia);
+        String contenido = contenido(nombre);
+        try {
+            if (api.crearArchivo(u, carpeta, nombre, EXTENSION, contenido).ok()) {
+                archivos.add(new Esperado(u, carpeta, nombre, contenido));
+            }
+        } catch (IOException e) {
+            inciertos.add(nombre);
+            throw e;
+        }
+    }
+
+    // Las carpetas del trabajador solo las toca él: el listado tiene que coincidir
+    private void listar() throws IOException {
+        String u = usuarioAlAzar();
+        String carpeta = carpetaAlAzar(u);
+        ClienteApi.Respuesta r = api.listar(u, carpeta);
+        if (!r.ok()) return;
+
+        Set<String> vistos = new TreeSet<>();
+        for (JsonNode a : api.leerJson(r.cuerpo())) {
+            vistos.add(a.path("nombre").asText());
+        }
+        Set<String> esperados = new TreeSet<>();
+        for (Esperado e : archivos) {
+            if (e.usuario.equals(u) && e.carpeta.equals(carpeta)) esperados.add(e.nombre);
+        }
+        vistos.removeAll(inciertos);
+        esperados.removeAll(inciertos);
+        if (!vistos.equals(esperados)) {
+            metricas.violacion("listadoInconsistente", u + ":" + carpeta + " esperado " + esperados + " visto " + vistos);
+        }
+    }
+
+    private void modificar() throws IOException {
+        Esperado e = archivoAlAzar();
+        if (e == null) {
+            crear();
+            return;
+        }
+        String contenido = contenido(e.nombre);
+        try {
+            if (api.modificar(e.usuario, e.carpeta, e.nombreCompleto(), contenido).ok()) {
+                e.contenido = contenido;
+            }
+        } catch (IOException ex) {
+            inciertos.add(e.nombre);
+            throw ex;
+        }
+    }
+
+    private void mover() throws IOException {
+        Esperado e = archivoAlAzar();
+        if (e == null) {
+            crear();
+            return;
+        }
+        String destino = carpetaAlAzar(e.usuario);
+        if (destino.equals(e.carpeta)) return;
+        try {
+            if (api.mover(e.usuario, e.carpeta, destino, e.nombre, EXTENSION).ok()) {
+                e.carpeta = destino;
+            }
+        } catch (IOException ex) {
+            inciertos.add(e.nombre);
+            throw ex;
+        }
+    }
+
+    // La copia se queda con el contenido que tenía el archivo al compartirlo
+    private void compartir() throws IOException {
+        Esperado e = archivoAlAzar();
+        if (e == null || usuarios.size() < 2) {
+            crear();
+            return;
+        }
+        String receptor = usuarioAlAzar();
+        if (receptor.equals(e.usuario) || !yaCompartidos.add(receptor + "|" + e.nombreCompleto())) return;
+        try {
+            if (api.compartir(e.usuario, e.carpeta, e.nombreCompleto(), receptor).ok()) {
+                compartidos.add(new Compartido(receptor, e.nombreCompleto(), e.contenido));
+            }
+        } catch (IOException ex) {
+            inciertos.add(e.nombre);
+            throw ex;
+        }
+    }
+
+    private void descargar() throws IOException {
+        Esperado e = archivoAlAzar();
+        if (e == null) {
+            crear();
+            return;
+        }
+        ClienteApi.Respuesta r = api.descargar(e.usuario, e.carpeta, e.nombreCompleto());
+        if (r.ok() && !inciertos.contains(e.nombre) && !r.cuerpo().equals(e.contenido)) {
+            metricas.violacion("lecturaDesactualizada", e.usuario + ":" + e.carpeta + "/" + e.nombreCompleto());
+        }
+    }
+
+    // Alterna entre crear una carpeta temporal (donde también caen archivos) y borrar una
+    private void borrarCarpeta() throws IOException {
+        String u = usuarioAlAzar();
+        List<String> mias = borrables.get(u);
+        if (mias.isEmpty()) {
+            String nombre = "t" + (++secuencia);
+            if (api.crearCarpeta(u, raiz(), nombre).ok()) {
+                mias.add(raiz() + "/" + nombre);
+            }
+            return;
+        }
+
+        String carpeta = mias.get(azar.nextInt(mias.size()));
+        if (api.borrarCarpeta(u, carpeta).ok()) {
+            mias.remove(carpeta);
+            archivos.removeIf(e -> e.usuario.equals(u) && e.carpeta.equals(carpeta));
+        }
+    }
+
+    private String usuarioAlAzar() {
+        return usuarios.get(azar.nextInt(usuarios.size()));
+    }
+
+    private String carpetaAlAzar(String u) {
+        List<String> fijas = carpetas.get(u);
+        List<String> temporales = borrables.get(u);
+        int i = azar.nextInt(fijas.size() + temporales.size());
+        return i < fijas.size() ? fijas.get(i) : temporales.get(i - fijas.size());
+    }
+
+    private Esperado archivoAlAzar() {
+        return archivos.isEmpty() ? null : archivos.get(azar.nextInt(archivos.size()));
+    }
+
+    // Texto único por versión, de largo variable
+    private String contenido(String nombre) {
+        StringBuilder sb = new StringBuilder(nombre).append(" v").append(++secuencia).append('\n');
+        int lineas = 1 + azar.nextInt(60);
+        for (int i = 0; i < lineas; i++) {
+            sb.append("línea ").append(i).append(' ').append(Long.toHexString(azar.nextLong())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void exigir(ClienteApi.Respuesta r) throws IOException {
+        if (!r.ok()) throw new IOException("Preparación fallida: " + r.estado() + " " + r.cuerpo());
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.carga;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Compara el estado final de cada usuario con lo que los trabajadores esperan:
+// archivos perdidos o resucitados, actualizaciones perdidas, copias compartidas,
+// tamaños y espacio usado. Cada diferencia se anota como violación.
+public class Verificador {
+    private final ClienteApi api;
+    private final Metricas metricas;
+    private final String sufijo;
+
+    // Lo que devolvió el servidor para un usuario
+    private static class Estado {
+        final Set<String> carpetas = new HashSet<>();
+        // ruta de la carpeta -> nombre completo -> archivo
+        final Map<String, Map<String, JsonNode>> archivos = new HashMap<>();
+        long sumaTamanos;
+    }
+
+    public Verificador(ClienteApi api, Metricas metricas, String sufijo) {
+        this.api = api;
+        this.metricas = metricas;
+        this.sufijo = sufijo;
+    }
+
+    public void verificar(Map<String, String> ids, List<Trabajador> trabajadores, int archivosSemilla) throws IOException {
+        for (Map.Entry<String, String> usuario : ids.entrySet()) {
+            String u = usuario.getKey();
+            JsonNode json = api.usuarioCompleto(usuario.getValue());
+            Estado estado = new Estado();
+            recorrer(json.path("directorioRaiz"), "", estado);
+            recorrer(json.path("directorioCompartidos"), "", estado);
+
+            if (json.path("espacioUsado").asLong() != estado.sumaTamanos) {
+                violacion("espacioUsadoIncorrecto", u + ": espacioUsado " + json.path("espacioUsado").asLong()
+                        + ", suma de archivos " + estado.sumaTamanos);
+            }
+            int semilla = contarBajo(estado, "root/semilla");
+            if (semilla != archivosSemilla) {
+                violacion("semillaAlterada", u + ": " + semilla + " archivos en root/semilla, se crearon " + archivosSemilla);
+            }
+            for (Trabajador t : trabajadores) {
+                verificarTrabajador(u, t, estado);
+            }
+        }
+    }
+
+    private void verificarTrabajador(String u, Trabajador t, Estado estado) {
+        // Carpetas: las fijas y las temporales que no se borraron, ninguna más
+        Set<String> carpetasEsperadas = new HashSet<>(t.carpetas.get(u));
+        carpetasEsperadas.addAll(t.borrables.get(u));
+        for (String c : carpetasEsperadas) {
+            if (!estado.carpetas.contains(c)) violacion("carpetaPerdida", u + ":" + c);
+        }
+        for (String c : estado.carpetas) {
+            if (bajo(c, t.raiz()) && !carpetasEsperadas.contains(c)) violacion("carpetaSobrante", u + ":" + c);
+        }
+
+        Map<String, Trabajador.Esperado> esperados = new HashMap<>();
+        for (Trabajador.Esperado e : t.archivos) {
+            if (e.usuario.equals(u)) esperados.put(e.carpeta + "/" + e.nombreCompleto(), e);
+        }
+        for (Map.Entry<String, Map<String, JsonNode>> carpeta : estado.archivos.entrySet()) {
+            if (!bajo(carpeta.getKey(), t.raiz())) continue;
+            for (Map.Entry<String, JsonNode> a : carpeta.getValue().entrySet()) {
+                String ruta = carpeta.getKey() + "/" + a.getKey();
+                Trabajador.Esperado e = esperados.remove(ruta);
+                if (e == null) {
+                    if (!t.inciertos.contains(a.getValue().path("nombre").asText())) {
+                        violacion("archivoSobrante", u + ":" + ruta);
+                    }
+                } else if (!e.contenido.equals(a.getValue().path("contenido").asText())) {
+                    violacion("actualizacionPerdida", u + ":" + ruta);
+                }
+            }
+        }
+        for (Trabajador.Esperado e : esperados.values()) {
+            if (!t.inciertos.contains(e.nombre)) violacion("archivoPerdido", u + ":" + e.carpeta + "/" + e.nombreCompleto());
+        }
+
+        Map<String, JsonNode> recibidos = estado.archivos.getOrDefault("compartidos", Map.of());
+        for (Trabajador.Compartido c : t.compartidos) {
+            if (!c.receptor().equals(u)) continue;
+            JsonNode a = recibidos.get(c.nombreCompleto());
+            if (a == null) {
+                violacion("compartidoPerdido", u + ":compartidos/" + c.nombreCompleto());
+            } else if (!c.contenido().equals(a.path("contenido").asText())) {
+                violacion("compartidoDistinto", u + ":compartidos/" + c.nombreCompleto());
+            }
+        }
+    }
+
+    private void recorrer(JsonNode dir, String padre, Estado estado) {
+        if (dir.isMissingNode() || dir.isNull()) return;
+        String ruta = padre.isEmpty() ? dir.path("nombre").asText() : padre + "/" + dir.path("nombre").asText();
+        estado.carpetas.add(ruta);
+        Map<String, JsonNode> archivos = estado.archivos.computeIfAbsent(ruta, k -> new HashMap<>());
+        for (JsonNode a : dir.path("archivos")) {
+            String nombreCompleto = a.path("nombre").asText() + "." + a.path("extension").asText();
+            archivos.put(nombreCompleto, a);
+            long tamano = a.path("tamano").asLong();
+            estado.sumaTamanos += tamano;
+            long real = a.path("contenido").asText().getBytes(StandardCharsets.UTF_8).length;
+            if (tamano != real) violacion("tamanoIncorrecto", ruta + "/" + nombreCompleto + ": " + tamano + " != " + real);
+        }
+        for (JsonNode sub : dir.path("subdirectorios")) {
+            recorrer(sub, ruta, estado);
+        }
+    }
+
+    private static int contarBajo(Estado estado, String raiz) {
+        int total = 0;
+        for (Map.Entry<String, Map<String, JsonNode>> e : estado.archivos.entrySet()) {
+            if (bajo(e.getKey(), raiz)) total += e.getValue().size();
+        }
+        return total;
+    }
+
+    private static boolean bajo(String ruta, String raiz) {
+        return ruta.equals(raiz) || ruta.startsWith(raiz + "/");
+    }
+
+    private void violacion(String tipo, String detalle) {
+        metricas.violacion(tipo + sufijo, detalle);
+    }
+}
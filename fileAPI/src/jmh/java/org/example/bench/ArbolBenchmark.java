@@ -0,0 +1,61 @@
+package org.example.bench;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Operaciones sobre el árbol en memoria según su tamaño (carpetas x 10 archivos)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArbolBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int carpetas;
+
+    private Directorio raiz;
+    private Directorio ultima;
+    private Archivo objetivo;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        raiz = ArbolesSinteticos.arbol("root", carpetas, 8, 10, 7);
+        ultima = raiz;
+        while (!ultima.getSubdirectorios().isEmpty()) {
+            ultima = ultima.getSubdirectorios().get(ultima.getSubdirectorios().size() - 1);
+        }
+        // Nombre único en la última carpeta del recorrido: eliminarArchivo busca
+        // en profundidad desde la raíz, así que es el peor caso
+        objetivo = new Archivo("objetivo", "bin", "0".repeat(64), 1);
+        ultima.agregarArchivo(objetivo);
+    }
+
+    @Benchmark
+    public long getTamanoTotal() {
+        return raiz.getTamanoTotal();
+    }
+
+    // Lo que costaba el tamaño antes de mantener el agregado: recorrer todo
+    @Benchmark
+    public int verificarTamanos() {
+        return raiz.verificarTamanos();
+    }
+
+    // Se vuelve a agregar en la misma invocación para que cada una encuentre el árbol igual
+    @Benchmark
+    public boolean eliminarArchivo() {
+        boolean eliminado = raiz.eliminarArchivo("objetivo", "bin");
+        ultima.agregarArchivo(objetivo);
+        return eliminado;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.bench;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.FormatoUsuario;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+// Árboles y usuarios de prueba para los benchmarks. Todo sale de una semilla,
+// así dos corridas (o dos commits) miden exactamente los mismos datos.
+// Los blobs son hashes inventados: nada de esto toca el almacén de blobs.
+public class ArbolesSinteticos {
+    private static final String[] EXTENSIONES = {"txt", "pdf", "jpg", "docx", "csv", "java"};
+
+    // Un árbol de "carpetas" directorios (contando la raíz) que se llena por
+    // niveles, con "ramificacion" subcarpetas por carpeta y "archivosPorCarpeta"
+    // archivos en cada una
+    public static Directorio arbol(String nombre, int carpetas, int ramificacion, int archivosPorCarpeta, long semilla) {
+        Random azar = new Random(semilla);
+        Directorio raiz = new Directorio(nombre, null);
+        Queue<Directorio> porLlenar = new ArrayDeque<>();
+        porLlenar.add(raiz);
+        int creadas = 1;
+
+        while (!porLlenar.isEmpty()) {
+            Directorio dir = porLlenar.poll();
+            llenar(dir, archivosPorCarpeta, azar);
+            for (int i = 0; i < ramificacion && creadas < carpetas; i++, creadas++) {
+                Directorio sub = new Directorio("carpeta-" + creadas, null);
+                dir.agregarSubdirectorio(sub);
+                porLlenar.add(sub);
+            }
+        }
+        return raiz;
+    }
+
+    // Una "espina": en cada nivel hay "ramificacion" hermanas y solo la última
+    // sigue hacia abajo, de modo que profundidad y anchura se varían por separado
+    // sin que el árbol crezca exponencialmente. Devuelve la raíz; la ruta a la
+    // carpeta más profunda es rutaEspina(profundidad, ramificacion).
+    public static Directorio espina(String nombre, int profundidad, int ramificacion) {
+        Directorio raiz = new Directorio(nombre, null);
+        Directorio actual = raiz;
+        for (int nivel = 1; nivel <= profundidad; nivel++) {
+            Directorio siguiente = null;
+            for (int i = 0; i < ramificacion; i++) {
+                Directorio sub = new Directorio(nombreEspina(nivel, i), null);
+                actual.agregarSubdirectorio(sub);
+                siguiente = sub;
+            }
+            actual = siguiente;
+        }
+        return raiz;
+    }
+
+    public static String rutaEspina(String raiz, int profundidad, int ramificacion) {
+        StringBuilder ruta = new StringBuilder(raiz);
+        for (int nivel = 1; nivel <= profundidad; nivel++) {
+            ruta.append('/').append(nombreEspina(nivel, ramificacion - 1));
+        }
+        return ruta.toString();
+    }
+
+    private static String nombreEspina(int nivel, int i) {
+        return "n" + nivel + "-" + i;
+    }
+
+    public static Usuario usuario(String nombre, Directorio raiz) {
+        Usuario usuario = new Usuario(nombre, Long.MAX_VALUE / 2);
+        usuario.setDirectorioRaiz(raiz);
+        usuario.setDirectorioCompartidos(new Directorio("compartidos", null));
+        usuario.recalcularEspacioUsado();
+        return usuario;
+    }
+
+    // Escribe "cantidad" instantáneas de usuarios chicos directamente (sin fsync
+    // ni diario), como las que encontraría el servidor al arrancar
+    public static List<String> escribirUsuarios(Path directorio, int cantidad, long semilla) throws IOException {
+        Files.createDirectories(directorio);
+        List<String> nombres = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            String nombre = "usuario-" + i;
+            Usuario u = usuario(nombre, arbol("root", 3, 2, 2, semilla + i));
+            Files.write(FormatoUsuario.instantanea(directorio, u.getId()), FormatoUsuario.serializar(u));
+            nombres.add(nombre);
+        }
+        return nombres;
+    }
+
+    // Todos los archivos del árbol, en orden de recorrido
+    public static List<Archivo> archivos(Directorio raiz) {
+        List<Archivo> todos = new ArrayList<>();
+        raiz.paraCadaArchivo(todos::add);
+        return todos;
+    }
+
+    public static String blobFalso(Random azar) {
+        byte[] hash = new byte[32];
+        azar.nextBytes(hash);
+        return HexFormat.of().formatHex(hash);
+    }
+
+    public static void borrar(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) return;
+        Files.walkFileTree(directorio, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path archivo, BasicFileAttributes attrs) throws IOException {
+                Files.delete(archivo);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void llenar(Directorio dir, int archivos, Random azar) {
+        for (int i = 0; i < archivos; i++) {
+            String extension = EXTENSIONES[azar.nextInt(EXTENSIONES.length)];
+            dir.agregarArchivo(new Archivo("archivo-" + i, extension, blobFalso(azar), 1 + azar.nextInt(1 << 20)));
+        }
+    }
+}
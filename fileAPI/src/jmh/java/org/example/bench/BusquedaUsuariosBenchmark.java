@@ -0,0 +1,53 @@
+package org.example.bench;
+
+import org.example.model.Usuario;
+import org.example.util.ColaMutaciones;
+import org.example.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Buscar un usuario por nombre con muchos usuario_*.smile en el directorio de datos
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BusquedaUsuariosBenchmark {
+
+    @Param({"10", "10000", "100000"})
+    public int usuarios;
+
+    private Path directorio;
+    private List<String> nombres;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        directorio = Files.createTempDirectory("fileapi-jmh-usuarios-");
+        nombres = ArbolesSinteticos.escribirUsuarios(directorio, usuarios, 42);
+        JsonUtil.inicializar(directorio);
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws IOException {
+        ArbolesSinteticos.borrar(directorio);
+    }
+
+    @Benchmark
+    public Usuario buscarPorNombre() throws IOException {
+        String nombre = nombres.get(ThreadLocalRandom.current().nextInt(nombres.size()));
+        return ColaMutaciones.leer(nombre, usuario -> usuario);
+    }
+}
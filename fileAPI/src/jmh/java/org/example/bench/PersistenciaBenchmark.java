@@ -0,0 +1,112 @@
+package org.example.bench;
+
+import org.example.model.Archivo;
+import org.example.model.Usuario;
+import org.example.util.ColaMutaciones;
+import org.example.util.DiarioUsuarios;
+import org.example.util.FormatoUsuario;
+import org.example.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cargar y guardar un usuario según el tamaño de su árbol (carpetas x 10 archivos)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenciaBenchmark {
+    private static final int ARCHIVOS_POR_CARPETA = 10;
+
+    // Dos usuarios iguales y una cache de un byte: cada carga desaloja al otro,
+    // así que siempre se lee la instantánea de disco
+    @State(Scope.Benchmark)
+    public static class Carga {
+        @Param({"10", "1000", "10000"})
+        public int carpetas;
+
+        Path directorio;
+        String[] ids;
+        int siguiente;
+
+        @Setup(Level.Trial)
+        public void preparar() throws IOException {
+            directorio = Files.createTempDirectory("fileapi-jmh-carga-");
+            JsonUtil.inicializar(directorio);
+            ids = new String[2];
+            for (int i = 0; i < ids.length; i++) {
+                Usuario u = ArbolesSinteticos.usuario("carga-" + i,
+                        ArbolesSinteticos.arbol("root", carpetas, 8, ARCHIVOS_POR_CARPETA, 7));
+                JsonUtil.guardarUsuario(u);
+                ids[i] = u.getId();
+            }
+            JsonUtil.configurarCache(1, 0);
+        }
+
+        @TearDown(Level.Trial)
+        public void limpiar() throws IOException {
+            ArbolesSinteticos.borrar(directorio);
+        }
+    }
+
+    // Un usuario en cache; cada guardado lleva un cambio de contenido al diario.
+    // La compactación automática se apaga para que no corra de fondo sobre el
+    // mismo árbol; su costo es el de serializar la instantánea, que se mide aparte.
+    @State(Scope.Benchmark)
+    public static class Guardado {
+        @Param({"10", "1000", "10000"})
+        public int carpetas;
+
+        Path directorio;
+        Usuario usuario;
+        List<Archivo> archivos;
+        int siguiente;
+
+        @Setup(Level.Trial)
+        public void preparar() throws IOException {
+            directorio = Files.createTempDirectory("fileapi-jmh-guardado-");
+            DiarioUsuarios.configurar(Long.MAX_VALUE);
+            JsonUtil.inicializar(directorio);
+            Usuario u = ArbolesSinteticos.usuario("guardado",
+                    ArbolesSinteticos.arbol("root", carpetas, 8, ARCHIVOS_POR_CARPETA, 7));
+            JsonUtil.guardarUsuario(u);
+            usuario = ColaMutaciones.leerPorId(u.getId(), cargado -> cargado);
+            archivos = ArbolesSinteticos.archivos(usuario.getDirectorioRaiz());
+        }
+
+        @TearDown(Level.Trial)
+        public void limpiar() throws IOException {
+            ArbolesSinteticos.borrar(directorio);
+        }
+    }
+
+    // Las cargas pasan por la franja del usuario, así que incluye el relevo de hilo
+    @Benchmark
+    public Usuario cargarUsuario(Carga c) throws IOException {
+        String id = c.ids[c.siguiente++ & 1];
+        return ColaMutaciones.leerPorId(id, usuario -> usuario);
+    }
+
+    @Benchmark
+    public void guardarUsuario(Guardado g) throws IOException {
+        Archivo archivo = g.archivos.get(g.siguiente++ % g.archivos.size());
+        archivo.getDirectorio().actualizarContenido(archivo, archivo.getBlob(), archivo.getTamano() + 1);
+        JsonUtil.guardarUsuario(g.usuario);
+    }
+
+    @Benchmark
+    public byte[] serializarInstantanea(Guardado g) throws IOException {
+        return FormatoUsuario.serializar(g.usuario);
+    }
+}
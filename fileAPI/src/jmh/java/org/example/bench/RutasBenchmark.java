@@ -0,0 +1,55 @@
+package org.example.bench;
+
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.ResolutorRutas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Resolver la ruta de la carpeta más profunda de una espina, variando la
+// profundidad y la cantidad de hermanas en cada nivel
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RutasBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int profundidad;
+
+    @Param({"4", "64", "1024"})
+    public int ramificacion;
+
+    private Usuario usuario;
+    private String ruta;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        usuario = ArbolesSinteticos.usuario("rutas", ArbolesSinteticos.espina("root", profundidad, ramificacion));
+        ruta = ArbolesSinteticos.rutaEspina("root", profundidad, ramificacion);
+        if (ResolutorRutas.resolver(usuario, ruta) == null) {
+            throw new IllegalStateException("La ruta generada no existe: " + ruta);
+        }
+    }
+
+    // Ruta ya resuelta antes: una búsqueda en la cache del usuario
+    @Benchmark
+    public Directorio resolver() {
+        return ResolutorRutas.resolver(usuario, ruta);
+    }
+
+    // Cache vacía: se baja nivel por nivel
+    @Benchmark
+    public Directorio resolverSinCache() {
+        ResolutorRutas.olvidar(usuario);
+        return ResolutorRutas.resolver(usuario, ruta);
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.controller;
+
+import org.example.bench.ArbolesSinteticos;
+import org.example.model.Directorio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// La copia que hace compartir carpeta, según el tamaño de la carpeta
+// (en este paquete porque clonarDirectorio no es público)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClonarDirectorioBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int carpetas;
+
+    private Directorio original;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        original = ArbolesSinteticos.arbol("compartida", carpetas, 8, 10, 7);
+    }
+
+    @Benchmark
+    public Directorio clonarDirectorio() {
+        return CarpetaController.clonarDirectorio(original, null);
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.util.ColaMutaciones;
+import org.example.util.DiarioUsuarios;
+import org.example.util.JsonUtil;
+import org.example.util.SesionesCarga;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+public class AlmacenamientoConfig {
+    // Carpeta donde viven los usuario_*.json y el índice de nombres
+    @Value("${fileapi.datos.directorio:.}")
+    private String directorio;
+
+    // Límite de la cache de usuarios según su tamaño estimado en memoria
+    @Value("${fileapi.cache.capacidad-mb:256}")
+    private long capacidadCacheMb;
+
+    // Cada cuánto se escriben los usuarios modificados (0 = en cada cambio)
+    @Value("${fileapi.cache.escritura-diferida-ms:0}")
+    private long escrituraDiferidaMs;
+
+    // Hilos escritores; cada usuario se asigna siempre al mismo
+    @Value("${fileapi.mutaciones.franjas:0}")
+    private int franjas;
+
+    // Cada cuánto se buscan blobs sin referencias, y cuánto deben llevar así para borrarse
+    @Value("${fileapi.blobs.recoleccion-intervalo-min:10}")
+    private long intervaloRecoleccionMin;
+
+    @Value("${fileapi.blobs.gracia-min:10}")
+    private long graciaMin;
+
+    // Tamaño del diario a partir del cual se reescribe la instantánea del usuario
+    @Value("${fileapi.diario.umbral-compactacion-kb:1024}")
+    private long umbralCompactacionKb;
+
+    // Las subidas por trozos abiertas hace más que esto se consideran abandonadas;
+    // el recolector las descarta y libera su reserva
+    @Value("${fileapi.cargas.vencimiento-horas:24}")
+    private long vencimientoCargasHoras;
+
+    @PostConstruct
+    public void inicializar() throws IOException {
+        DiarioUsuarios.configurar(umbralCompactacionKb * 1024);
+        JsonUtil.inicializar(Paths.get(directorio));
+        SesionesCarga.configurarVencimiento(Duration.ofHours(vencimientoCargasHoras));
+        JsonUtil.configurarCache(capacidadCacheMb * 1024 * 1024, escrituraDiferidaMs);
+        if (franjas > 0) {
+            ColaMutaciones.configurar(franjas);
+        }
+        JsonUtil.configurarRecolector(intervaloRecoleccionMin * 60_000, graciaMin * 60_000);
+    }
+
+    @PreDestroy
+    public void cerrar() throws IOException {
+        JsonUtil.vaciarCache();
+        // Guarda las fechas de modificación vistas para acelerar el próximo arranque
+        JsonUtil.persistirIndice();
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.DiarioUsuarios;
+import org.example.util.JsonUtil;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Publica en Micrometer los contadores que ya llevan la cache, el almacén de
+// blobs, la cola de mutaciones y el diario (los mismos de /estadisticas).
+// Los medidores del camino caliente están en Medidas.
+@Configuration
+public class MetricasConfig {
+    // Micrometer solo guarda referencias débiles a lo que mide
+    private final List<Lectura> lecturas = new ArrayList<>();
+
+    @Bean
+    public MeterBinder estadisticasAlmacenamiento() {
+        return registro -> {
+            publicar(registro, "fileapi.cache.usuarios", JsonUtil::estadisticasCache,
+                    List.of("aciertos", "fallos", "desalojos", "escrituras"),
+                    List.of("usuarios", "bytesEstimados", "capacidadBytes", "sucios", "tasaAciertos"));
+            publicar(registro, "fileapi.blobs", AlmacenBlobs::estadisticas,
+                    List.of("blobsBorrados", "bytesLiberados", "blobsComprimidos", "blobsSinComprimir",
+                            "bytesAhorradosPorCompresion"),
+                    List.of("blobsReferenciados", "referencias", "pendientesDeRecolectar"));
+            publicar(registro, "fileapi.mutaciones", ColaMutaciones::estadisticas,
+                    List.of("operaciones", "lotes", "escrituras"),
+                    List.of("franjas", "operacionesPorLote"));
+            publicar(registro, "fileapi.diario", DiarioUsuarios::estadisticas,
+                    List.of("registros", "sincronizaciones", "compactaciones", "reproducidos", "lineasCortadas"),
+                    List.of("umbralCompactacion"));
+        };
+    }
+
+    private void publicar(MeterRegistry registro, String prefijo, Supplier<Map<String, Object>> fuente,
+                                 List<String> contadores, List<String> valores) {
+        Lectura lectura = new Lectura(fuente);
+        lecturas.add(lectura);
+        for (String clave : contadores) {
+            FunctionCounter.builder(prefijo + "." + clave, lectura, l -> l.valor(clave)).register(registro);
+        }
+        for (String clave : valores) {
+            Gauge.builder(prefijo + "." + clave, lectura, l -> l.valor(clave)).register(registro);
+        }
+    }
+
+    // Algunas estadísticas recorren todo lo que cuentan (p. ej. las referencias a
+    // blobs): se piden una vez por grupo y por lectura del scraper, no una por medidor
+    private static class Lectura {
+        private static final long VIGENCIA = TimeUnit.SECONDS.toNanos(1);
+
+        private final Supplier<Map<String, Object>> fuente;
+        private Map<String, Object> ultima;
+        private long leidaEn;
+
+        Lectura(Supplier<Map<String, Object>> fuente) {
+            this.fuente = fuente;
+        }
+
+        synchronized double valor(String clave) {
+            long ahora = System.nanoTime();
+            if (ultima == null || ahora - leidaEn > VIGENCIA) {
+                ultima = fuente.get();
+                leidaEn = ahora;
+            }
+            return ultima.get(clave) instanceof Number n ? n.doubleValue() : Double.NaN;
+        }
+    }
+}
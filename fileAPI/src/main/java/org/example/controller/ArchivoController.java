@@ -2,12 +2,34 @@ package org.example.controller;
 
 import org.example.model.Archivo;
 import org.example.model.Directorio;
-import org.example.model.Usuario;
-import org.example.util.JsonUtil;
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.Etiquetas;
+import org.example.util.IndiceContenido;
+import org.example.util.IndiceNombres;
+import org.example.util.Medidas;
+import org.example.util.ResolutorRutas;
+import org.example.util.RangoHttp;
+import org.example.util.VistaArbol;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -17,59 +39,30 @@ import java.util.Optional;
 @RequestMapping("/usuarios/{nombre}/archivos")
 public class ArchivoController {
 
-    // Busca un directorio dentro del árbol usando una ruta tipo "root/Carpeta/Sub"
-    private Directorio buscarDirectorio(Usuario usuario, String path) {
-        String[] partes = path.split("/");
-        Directorio actual = partes[0].equalsIgnoreCase("root")
-                ? usuario.getDirectorioRaiz()
-                : usuario.getDirectorioCompartidos();
-
-        for (int i = 1; i < partes.length && actual != null; i++) {
-            actual = actual.getSubdirectorioPorNombre(partes[i]);
-        }
-        return actual;
-    }
-
     // Crear archivo en un path dado
     @PostMapping
     public ResponseEntity<?> crearArchivo(
             @PathVariable String nombre,
             @RequestBody Map<String, String> archivoData) {
-        try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-
-            // Obtener valores del cuerpo JSON
-            String path = archivoData.get("path");
-            String nombreArchivo = archivoData.get("nombre");
-            String extension = archivoData.get("extension");
-            String contenido = archivoData.get("contenido");
-
-            // Verificar ruta válida
-            Directorio dir = buscarDirectorio(usuario, path);
-            if (dir == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
-            }
+        // Obtener valores del cuerpo JSON
+        String path = archivoData.get("path");
+        String nombreArchivo = archivoData.get("nombre");
+        String extension = archivoData.get("extension");
+        String contenido = archivoData.get("contenido");
 
-            // Verificar duplicado
-            boolean yaExiste = dir.getArchivos().stream()
-                    .anyMatch(a -> a.getNombre().equals(nombreArchivo) && a.getExtension().equals(extension));
-            if (yaExiste) {
-                return ResponseEntity.status(409).body(Map.of(
-                        "error", "Ya existe un archivo con ese nombre en este directorio"
-                ));
-            }
-
-            // Verificar espacio
-            Archivo nuevo = new Archivo(nombreArchivo, extension, contenido);
-            if (!usuario.puedeAgregarArchivo(nuevo.getTamano())) {
-                return ResponseEntity.status(413).body(Map.of("error", "No hay suficiente espacio disponible"));
-            }
-
-            // Crear archivo
-            dir.agregarArchivo(nuevo);
-            usuario.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(usuario);
-            return ResponseEntity.ok(nuevo);
+        try {
+            // El contenido se guarda en el almacén de blobs (y se tokeniza para el
+            // índice de búsqueda) antes de entrar a la cola; el árbol del usuario
+            // solo recibe la referencia. Si la cola rechaza la operación el blob
+            // queda sin referencias y el recolector lo borra pasada la gracia; no
+            // se libera aquí porque nunca se retuvo (el mismo hash puede estar en
+            // uso por otros archivos). Sus términos salen solos de la caché LRU.
+            long tamano = AlmacenBlobs.tamano(contenido);
+            String blob = AlmacenBlobs.guardar(contenido);
+            IndiceContenido.prepararPara(nombre, blob);
+
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.crearArchivo(usuario, tx, path, nombreArchivo, extension, blob, tamano)));
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al guardar el archivo"));
@@ -82,13 +75,19 @@ public class ArchivoController {
     @GetMapping
     public ResponseEntity<?> listarArchivos(
             @PathVariable String nombre,
-            @RequestParam String path) {
+            @RequestParam String path,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            Directorio dir = buscarDirectorio(usuario, path);
-            if (dir == null) return ResponseEntity.badRequest().body("Directorio no encontrado");
-            return ResponseEntity.ok(dir.getArchivos());
+            return ColaMutaciones.leer(nombre, usuario -> {
+                Directorio dir = ResolutorRutas.resolver(usuario, path);
+                if (dir == null) return ResponseEntity.badRequest().body("Directorio no encontrado");
+                String etag = Etiquetas.de(dir);
+                if (Etiquetas.noModificado(ifNoneMatch, etag)) {
+                    return ResponseEntity.status(304).eTag(etag).build();
+                }
+                return ResponseEntity.ok().eTag(etag).body(VistaArbol.archivos(dir.verArchivos()));
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Error al cargar archivos: " + e.getMessage());
@@ -98,26 +97,15 @@ public class ArchivoController {
     @DeleteMapping
     public ResponseEntity<?> borrarArchivo(
             @PathVariable String nombre,
-            @RequestBody Map<String, String> data) {
-        try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            String path = data.get("path");
-            String nombreArchivo = data.get("nombre");
-            String extension = data.get("extension");
-
-            Directorio dir = buscarDirectorio(usuario, path);
-            if (dir == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
-            }
+            @RequestBody Map<String, String> data,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
+        String path = data.get("path");
+        String nombreArchivo = data.get("nombre");
+        String extension = data.get("extension");
 
-            boolean eliminado = dir.eliminarArchivo(nombreArchivo, extension);
-            if (!eliminado) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
-            }
-
-            usuario.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(usuario);
-            return ResponseEntity.ok(Map.of("mensaje", "Archivo eliminado correctamente"));
+        try {
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.borrarArchivo(usuario, tx, path, nombreArchivo, extension, ifMatch)));
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al eliminar archivo"));
@@ -128,7 +116,8 @@ public class ArchivoController {
     @PatchMapping("/modificar")
     public ResponseEntity<?> modificarArchivo(
             @PathVariable String nombre,
-            @RequestBody Map<String, String> request) {
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
             String path = request.get("path");
             String nombreArchivo = request.get("nombreArchivo");
@@ -138,30 +127,13 @@ public class ArchivoController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Faltan datos obligatorios: path, nombreArchivo o nuevoContenido"));
             }
 
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            Directorio dir = buscarDirectorio(usuario, path);
-            if (dir == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
-            }
-
-            Archivo archivo = dir.getArchivos().stream()
-                    .filter(a -> a.getNombreCompleto().equals(nombreArchivo))
-                    .findFirst()
-                    .orElse(null);
-
-            if (archivo == null) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
-            }
+            // Como en crearArchivo: si se rechaza, el blob lo recoge el recolector
+            long tamano = AlmacenBlobs.tamano(nuevoContenido);
+            String blob = AlmacenBlobs.guardar(nuevoContenido);
+            IndiceContenido.prepararPara(nombre, blob);
 
-            archivo.setContenido(nuevoContenido);
-            usuario.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(usuario);
-
-            return ResponseEntity.ok(Map.of(
-                    "mensaje", "Archivo modificado correctamente",
-                    "tamanoActual", archivo.getTamano(),
-                    "fechaModificacion", archivo.getFechaModificacion()
-            ));
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.modificarArchivo(usuario, tx, path, nombreArchivo, blob, tamano, ifMatch)));
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al modificar archivo: " + e.getMessage()));
@@ -182,31 +154,37 @@ public class ArchivoController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Faltan datos requeridos"));
             }
 
-            Usuario emisor = JsonUtil.buscarPorNombre(nombre);
-            Usuario receptor = JsonUtil.buscarPorNombre(destinatario);
-
-            Directorio dirOrigen = buscarDirectorio(emisor, path);
-            if (dirOrigen == null) return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen no encontrado"));
+            // Primero se clona en la cola del emisor y luego se agrega en la del
+            // receptor, nunca una dentro de la otra
+            Archivo copia = ColaMutaciones.leer(nombre, emisor -> {
+                Directorio dirOrigen = ResolutorRutas.resolver(emisor, path);
+                if (dirOrigen == null) return null;
 
-            Archivo original = dirOrigen.getArchivos().stream()
-                    .filter(a -> a.getNombreCompleto().equals(nombreArchivo))
-                    .findFirst()
-                    .orElse(null);
+                Archivo original = dirOrigen.getArchivoPorNombreCompleto(nombreArchivo);
 
-            if (original == null) return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+                // Clonar el archivo: la copia apunta al mismo blob
+                return original == null ? null
+                        : new Archivo(original.getNombre(), original.getExtension(), original.getBlob(), original.getTamano());
+            });
 
-            // Clonar el archivo
-            Archivo copia = new Archivo(original.getNombre(), original.getExtension(), original.getContenido());
+            if (copia == null) return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
 
-            if (!receptor.puedeAgregarArchivo(copia.getTamano())) {
-                return ResponseEntity.status(413).body(Map.of("error", "El destinatario no tiene espacio suficiente"));
-            }
+            return ColaMutaciones.mutar(destinatario, receptor -> {
+                if (receptor.getDirectorioCompartidos().contieneArchivo(copia.getNombre(), copia.getExtension())) {
+                    return ResponseEntity.status(409).body(Map.of(
+                            "error", "El destinatario ya tiene un archivo compartido con ese nombre"
+                    ));
+                }
+                if (!receptor.puedeAgregarArchivo(copia.getTamano())) {
+                    return ResponseEntity.status(413).body(Map.of("error", "El destinatario no tiene espacio suficiente"));
+                }
 
-            receptor.getDirectorioCompartidos().agregarArchivo(copia);
-            receptor.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(receptor);
+                receptor.getDirectorioCompartidos().agregarArchivo(copia);
+                AlmacenBlobs.retener(copia.getBlob());
+                receptor.recalcularEspacioUsado();
 
-            return ResponseEntity.ok(Map.of("mensaje", "Archivo compartido exitosamente"));
+                return ResponseEntity.ok(Map.of("mensaje", "Archivo compartido exitosamente"));
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al compartir archivo: " + e.getMessage()));
@@ -217,59 +195,218 @@ public class ArchivoController {
     public ResponseEntity<?> descargarArchivo(
             @PathVariable String nombre,
             @RequestParam String path,
-            @RequestParam String nombreArchivo) {
+            @RequestParam String nombreArchivo,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            Directorio dir = buscarDirectorio(usuario, path);
-            if (dir == null) return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
-
-            Archivo archivo = dir.getArchivos().stream()
-                    .filter(a -> a.getNombreCompleto().equals(nombreArchivo))
-                    .findFirst()
-                    .orElse(null);
+            return ColaMutaciones.leer(nombre, usuario -> {
+                Directorio dir = ResolutorRutas.resolver(usuario, path);
+                if (dir == null) return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+
+                Archivo archivo = dir.getArchivoPorNombreCompleto(nombreArchivo);
+
+                if (archivo == null) {
+                    return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+                }
+                String etag = Etiquetas.de(archivo);
+                if (Etiquetas.noModificado(ifNoneMatch, etag)) {
+                    return ResponseEntity.status(304).eTag(etag).build();
+                }
+
+                return ResponseEntity.ok()
+                        .eTag(etag)
+                        .header("Content-Disposition", "attachment; filename=\"" + archivo.getNombreCompleto() + "\"")
+                        .body(AlmacenBlobs.leerTexto(archivo.getBlob()));
+            });
 
-            if (archivo == null) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
-            }
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al descargar archivo: " + e.getMessage()));
+        }
+    }
 
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=\"" + archivo.getNombreCompleto() + "\"")
-                    .body(archivo.getContenido());
+    // Descarga por streaming: el contenido sale del blob en bloques de tamaño fijo
+    // (o por sendfile de Tomcat), con soporte de Range/If-Range y respuestas 206
+    @GetMapping("/flujo")
+    public ResponseEntity<?> descargarFlujo(
+            @PathVariable String nombre,
+            @RequestParam String path,
+            @RequestParam String nombreArchivo,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
+        // Se copian los datos dentro de la cola: lo de abajo corre fuera de ella
+        // y el archivo del árbol puede cambiar mientras tanto
+        Descarga archivo;
+        try {
+            archivo = ColaMutaciones.leer(nombre, usuario -> {
+                Directorio dir = ResolutorRutas.resolver(usuario, path);
+                if (dir == null) return null;
+                Archivo a = dir.getArchivoPorNombreCompleto(nombreArchivo);
+                return a == null ? null
+                        : new Descarga(a.getBlob(), a.getTamano(), a.getFechaModificacion(), a.getNombreCompleto());
+            });
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al descargar archivo: " + e.getMessage()));
         }
+        if (archivo == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+        }
+        enviar(archivo, request, response);
+        return null; // la respuesta ya se escribió
+    }
+
+    // Paquete y no private para poder probarlo sin la cola
+    void enviar(Descarga archivo, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String blob = archivo.blob();
+        Path ruta = blob == null ? null : AlmacenBlobs.ubicar(blob);
+        boolean comprimido = ruta != null && AlmacenBlobs.esComprimido(ruta);
+        // Los rangos y Content-Length son siempre sobre el contenido sin comprimir
+        long longitud = ruta == null ? 0 : comprimido ? archivo.tamano() : Files.size(ruta);
+        String etag = "\"" + (blob == null ? "vacio" : blob) + "\"";
+        long modificado = archivo.fechaModificacion().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setDateHeader("Last-Modified", modificado);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + archivo.nombreCompleto() + "\"");
+        response.setContentType("application/octet-stream");
+        if (comprimido) response.setHeader("Vary", "Accept-Encoding");
+
+        // Guardado en gzip y el cliente lo acepta: se manda tal cual está en disco,
+        // sin descomprimir. Con Range no, porque los rangos son sobre el original.
+        if (comprimido && request.getHeader("Range") == null && aceptaGzip(request.getHeader("Accept-Encoding"))) {
+            // Otra representación, otro ETag fuerte
+            response.setHeader("ETag", "\"" + blob + "-gzip\"");
+            response.setHeader("Content-Encoding", "gzip");
+            long tamanoEnDisco = Files.size(ruta);
+            response.setContentLengthLong(tamanoEnDisco);
+            if (!"HEAD".equals(request.getMethod())) {
+                enviarBloques(ruta, 0, tamanoEnDisco, request, response);
+            }
+            return;
+        }
+        response.setHeader("ETag", etag);
+
+        RangoHttp rango = RangoHttp.parsear(request.getHeader("Range"), longitud);
+        if (rango != null && !coincideIfRange(request.getHeader("If-Range"), etag, modificado)) {
+            rango = null; // el cliente tiene otra versión: se envía completo
+        }
+        if (rango == RangoHttp.NO_SATISFACIBLE) {
+            response.setStatus(416);
+            response.setHeader("Content-Range", "bytes */" + longitud);
+            return;
+        }
+
+        long inicio = 0;
+        long cantidad = longitud;
+        if (rango != null) {
+            inicio = rango.getInicio();
+            cantidad = rango.getLongitud();
+            response.setStatus(206);
+            response.setHeader("Content-Range", "bytes " + rango.getInicio() + "-" + rango.getFin() + "/" + longitud);
+        }
+        response.setContentLengthLong(cantidad);
+
+        if (cantidad > 0 && !"HEAD".equals(request.getMethod())) {
+            if (comprimido) {
+                enviarDescomprimido(blob, inicio, cantidad, response);
+            } else {
+                enviarBloques(ruta, inicio, cantidad, request, response);
+            }
+        }
+    }
+
+    // Lo que la descarga por streaming necesita del archivo, leído dentro de la cola
+    record Descarga(String blob, long tamano, LocalDateTime fechaModificacion, String nombreCompleto) {
+    }
+
+    // gzip con q=0 cuenta como rechazado
+    private static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String parte : acceptEncoding.split(",")) {
+            String[] campos = parte.trim().split(";");
+            String codificacion = campos[0].trim();
+            if (!codificacion.equalsIgnoreCase("gzip") && !codificacion.equals("*")) continue;
+            boolean rechazado = false;
+            for (int i = 1; i < campos.length; i++) {
+                String param = campos[i].trim().replace(" ", "");
+                if (param.matches("q=0(\\.0*)?")) rechazado = true;
+            }
+            return !rechazado;
+        }
+        return false;
     }
 
-    private String buscarRutaArchivo(Directorio directorio, String nombreArchivo) {
-        for (Archivo archivo : directorio.getArchivos()) {
-            if (archivo.getNombre().equals(nombreArchivo)) {
-                return directorio.getNombre();
+    // Para un blob en gzip no hay sendfile: se descomprime y se salta hasta el inicio
+    private void enviarDescomprimido(String blob, long inicio, long cantidad,
+                                     HttpServletResponse response) throws IOException {
+        try (InputStream in = AlmacenBlobs.abrir(blob)) {
+            in.skipNBytes(inicio);
+            OutputStream salida = response.getOutputStream();
+            byte[] buffer = new byte[(int) BLOQUE_DESCARGA];
+            long restante = cantidad;
+            while (restante > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, restante));
+                if (n < 0) break;
+                salida.write(buffer, 0, n);
+                restante -= n;
             }
         }
+    }
+
+    private static final long BLOQUE_DESCARGA = 64 * 1024;
+
+    private void enviarBloques(Path ruta, long inicio, long cantidad,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Medidas.BLOB.leidos(cantidad);
+        // Tomcat (conector NIO) puede enviar el archivo con sendfile, sin pasar por el heap
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", ruta.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", inicio);
+            request.setAttribute("org.apache.tomcat.sendfile.end", inicio + cantidad);
+            return;
+        }
 
-        for (Directorio subdir : directorio.getSubdirectorios()) {
-            String resultado = buscarRutaArchivo(subdir, nombreArchivo);
-            if (resultado != null) {
-                return directorio.getNombre() + "/" + resultado;
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            WritableByteChannel salida = Channels.newChannel(response.getOutputStream());
+            long enviado = 0;
+            while (enviado < cantidad) {
+                long n = canal.transferTo(inicio + enviado, Math.min(BLOQUE_DESCARGA, cantidad - enviado), salida);
+                if (n <= 0) break;
+                enviado += n;
             }
         }
+    }
 
-        return null;
+    // If-Range puede traer un ETag (comparación fuerte) o una fecha HTTP
+    private boolean coincideIfRange(String ifRange, String etag, long modificado) {
+        if (ifRange == null) return true;
+        String valor = ifRange.trim();
+        if (valor.startsWith("\"") || valor.startsWith("W/")) {
+            return valor.equals(etag);
+        }
+        try {
+            long fecha = ZonedDateTime.parse(valor, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return fecha == (modificado / 1000) * 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
+
+    // Carpetas (de root y compartidos) que tienen un archivo con ese nombre;
+    // "ruta" es la primera, por compatibilidad
     @GetMapping("/ruta")
     public ResponseEntity<?> obtenerRutaArchivo(
             @PathVariable String nombre,
             @RequestParam String nombreArchivo) {
 
         try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            String path = buscarRutaArchivo(usuario.getDirectorioRaiz(), nombreArchivo);
-            if (path == null) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
-            }
-            return ResponseEntity.ok(Map.of("ruta", path));
+            return ColaMutaciones.leer(nombre, usuario -> {
+                List<String> rutas = IndiceNombres.de(usuario).rutasDeArchivo(nombreArchivo);
+                if (rutas.isEmpty()) {
+                    return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+                }
+                return ResponseEntity.ok(Map.of("ruta", rutas.get(0), "rutas", rutas));
+            });
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al buscar el usuario"));
         }
@@ -280,48 +417,46 @@ public class ArchivoController {
             @PathVariable("nombre") String nombre,
             @RequestBody Map<String, String> request) {
         try {
-            Usuario user = JsonUtil.buscarPorNombre(nombre);
+            return ColaMutaciones.mutar(nombre, user -> {
+                String origenPath = request.get("origenPath");   // solo la ruta al directorio origen
+                String destinoPath = request.get("destinoPath"); // solo la ruta al directorio destino
+                String nombreArchivo = request.get("nombre");
+                String extension = request.get("extension");
 
-            String origenPath = request.get("origenPath");   // solo la ruta al directorio origen
-            String destinoPath = request.get("destinoPath"); // solo la ruta al directorio destino
-            String nombreArchivo = request.get("nombre");
-            String extension = request.get("extension");
+                Directorio origenDir = ResolutorRutas.resolver(user, origenPath);
+                Directorio destinoDir = ResolutorRutas.resolver(user, destinoPath);
 
-            Directorio origenDir = buscarDirectorio(user, origenPath);
-            Directorio destinoDir = buscarDirectorio(user, destinoPath);
+                if (origenDir == null || destinoDir == null) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
+                }
 
-            if (origenDir == null || destinoDir == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
-            }
-
-            // buscar archivo en el origen
-            Optional<Archivo> archivoOriginal = origenDir.getArchivos().stream()
-                    .filter(a -> a.getNombre().equals(nombreArchivo) && a.getExtension().equals(extension))
-                    .findFirst();
+                // buscar archivo en el origen
+                Optional<Archivo> archivoOriginal = Optional.ofNullable(origenDir.getArchivo(nombreArchivo, extension));
 
-            if (archivoOriginal.isEmpty()) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo de origen no encontrado"));
-            }
+                if (archivoOriginal.isEmpty()) {
+                    return ResponseEntity.status(404).body(Map.of("error", "Archivo de origen no encontrado"));
+                }
 
-            // verificar si ya existe en destino
-            boolean existe = destinoDir.getArchivos().stream()
-                    .anyMatch(a -> a.getNombre().equals(nombreArchivo) && a.getExtension().equals(extension));
-            if (existe) {
-                return ResponseEntity.status(409).body(Map.of("error", "Ya existe un archivo con ese nombre en el destino"));
-            }
+                // verificar si ya existe en destino
+                boolean existe = destinoDir.contieneArchivo(nombreArchivo, extension);
+                if (existe) {
+                    return ResponseEntity.status(409).body(Map.of("error", "Ya existe un archivo con ese nombre en el destino"));
+                }
 
-            // crear copia
-            Archivo copia = new Archivo(nombreArchivo, extension, archivoOriginal.get().getContenido());
+                // crear copia
+                Archivo copia = new Archivo(nombreArchivo, extension,
+                        archivoOriginal.get().getBlob(), archivoOriginal.get().getTamano());
 
-            if (!user.puedeAgregarArchivo(copia.getTamano())) {
-                return ResponseEntity.status(413).body(Map.of("error", "No hay espacio suficiente para copiar el archivo"));
-            }
+                if (!user.puedeAgregarArchivo(copia.getTamano())) {
+                    return ResponseEntity.status(413).body(Map.of("error", "No hay espacio suficiente para copiar el archivo"));
+                }
 
-            destinoDir.getArchivos().add(copia);
-            user.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(user);
+                destinoDir.agregarArchivo(copia);
+                AlmacenBlobs.retener(copia.getBlob());
+                user.recalcularEspacioUsado();
 
-            return ResponseEntity.ok(Map.of("mensaje", "Archivo copiado correctamente"));
+                return ResponseEntity.ok(Map.of("mensaje", "Archivo copiado correctamente"));
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error procesando la copia"));
@@ -331,62 +466,16 @@ public class ArchivoController {
     @PostMapping("/mover")
     public ResponseEntity<?> moverArchivo(
             @PathVariable("nombre") String nombre, // corregido
-            @RequestBody Map<String, String> request) {
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
-            Usuario user = JsonUtil.buscarPorNombre(nombre);
-
             String origenPath = request.get("origenPath");   // solo directorio
             String destinoPath = request.get("destinoPath"); // solo directorio
             String nombreArchivo = request.get("nombre");
             String extension = request.get("extension");
 
-            Directorio origenDir = buscarDirectorio(user, origenPath);
-            Directorio destinoDir = buscarDirectorio(user, destinoPath);
-
-            if (origenDir == null || destinoDir == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
-            }
-
-            // buscar archivo en origen
-            Optional<Archivo> archivoOriginal = origenDir.getArchivos().stream()
-                    .filter(a -> a.getNombre().equals(nombreArchivo) && a.getExtension().equals(extension))
-                    .findFirst();
-
-            if (archivoOriginal.isEmpty()) {
-                return ResponseEntity.status(404).body(Map.of("error", "Archivo de origen no encontrado"));
-            }
-
-            // verificar si ya existe en destino
-            boolean existe = destinoDir.getArchivos().stream()
-                    .anyMatch(a -> a.getNombre().equals(nombreArchivo) && a.getExtension().equals(extension));
-            if (existe) {
-                return ResponseEntity.status(409).body(Map.of("error", "Ya existe un archivo con ese nombre en el destino"));
-            }
-
-            // mover significa: cambiar de referencia sin clonar
-            Archivo archivoMovido = archivoOriginal.get();
-
-            // eliminar del origen
-            origenDir.getArchivos().remove(archivoMovido);
-
-            // agregar al destino
-            destinoDir.getArchivos().add(archivoMovido);
-
-            // actualizar fechas
-            archivoMovido.setFechaModificacion(java.time.LocalDateTime.now());
-            origenDir.setFechaModificacion(java.time.LocalDateTime.now());
-            destinoDir.setFechaModificacion(java.time.LocalDateTime.now());
-
-            // recalcular espacio (opcional pero consistente)
-            user.recalcularEspacioUsado();
-
-            // guardar
-            JsonUtil.guardarUsuario(user);
-
-            return ResponseEntity.ok(Map.of(
-                    "mensaje", "Archivo movido correctamente",
-                    "nuevoPath", destinoPath + "/" + nombreArchivo + "." + extension
-            ));
+            return ColaMutaciones.mutar(nombre, user -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.moverArchivo(user, tx, origenPath, destinoPath, nombreArchivo, extension, ifMatch)));
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error procesando el movimiento"));
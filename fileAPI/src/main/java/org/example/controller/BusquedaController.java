@@ -0,0 +1,147 @@
+package org.example.controller;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.ColaMutaciones;
+import org.example.util.IndiceContenido;
+import org.example.util.IndiceMetadatos;
+import org.example.util.ResolutorRutas;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/usuarios/{nombre}")
+public class BusquedaController {
+
+    // Busca en nombres y contenidos de los archivos de las dos raíces, ordenado
+    // por relevancia. La página empieza en 0.
+    @GetMapping("/buscar")
+    public ResponseEntity<?> buscar(
+            @PathVariable String nombre,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(defaultValue = "20") int tamano) {
+
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Consulta vacía"));
+        }
+        if (pagina < 0 || tamano < 1 || tamano > IndiceContenido.MAX_POR_PAGINA) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "pagina debe ser >= 0 y tamano entre 1 y " + IndiceContenido.MAX_POR_PAGINA));
+        }
+
+        try {
+            // La primera búsqueda arma el índice; lo que haya que leer de los blobs
+            // se lee y tokeniza antes, fuera de la cola
+            for (String blob : ColaMutaciones.leer(nombre, IndiceContenido::blobsPorPreparar)) {
+                IndiceContenido.prepararContenido(blob);
+            }
+
+            return ColaMutaciones.leer(nombre, usuario -> {
+                IndiceContenido.Pagina encontrados = IndiceContenido.de(usuario).buscar(q, pagina, tamano);
+
+                List<Map<String, Object>> resultados = new ArrayList<>();
+                for (IndiceContenido.Resultado r : encontrados.resultados) {
+                    Map<String, Object> item = describir(r.archivo);
+                    item.put("puntuacion", r.puntuacion);
+                    resultados.add(item);
+                }
+
+                Map<String, Object> respuesta = new LinkedHashMap<>();
+                respuesta.put("consulta", q);
+                respuesta.put("total", encontrados.total);
+                respuesta.put("pagina", pagina);
+                respuesta.put("tamano", tamano);
+                respuesta.put("resultados", resultados);
+                return ResponseEntity.ok(respuesta);
+            });
+
+        } catch (IOException e) {
+            return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+        }
+    }
+
+    // Filtra archivos por metadatos, p. ej. ?extension=pdf&tamanoMin=1048576&modificadoDesde=2025-06-23T00:00:00
+    // Los rangos incluyen los extremos; path limita a una carpeta y lo que cuelga
+    // de ella. Ordenado por fecha de modificación, lo más reciente primero.
+    @GetMapping("/consulta")
+    public ResponseEntity<?> consultar(
+            @PathVariable String nombre,
+            @RequestParam(required = false) String extension,
+            @RequestParam(required = false) Long tamanoMin,
+            @RequestParam(required = false) Long tamanoMax,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime creadoDesde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime creadoHasta,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime modificadoDesde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime modificadoHasta,
+            @RequestParam(required = false) String path,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(defaultValue = "50") int tamano) {
+
+        if (pagina < 0 || tamano < 1 || tamano > IndiceContenido.MAX_POR_PAGINA) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "pagina debe ser >= 0 y tamano entre 1 y " + IndiceContenido.MAX_POR_PAGINA));
+        }
+
+        try {
+            IndiceMetadatos.Filtro filtro = new IndiceMetadatos.Filtro();
+            filtro.extension = extension;
+            filtro.tamanoMin = tamanoMin;
+            filtro.tamanoMax = tamanoMax;
+            filtro.creadoDesde = creadoDesde;
+            filtro.creadoHasta = creadoHasta;
+            filtro.modificadoDesde = modificadoDesde;
+            filtro.modificadoHasta = modificadoHasta;
+            return ColaMutaciones.leer(nombre, usuario -> consultar(usuario, filtro, path, pagina, tamano));
+
+        } catch (IOException e) {
+            return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+        }
+    }
+
+    // Paquete y no private para poder probarlo sin la cola
+    ResponseEntity<?> consultar(Usuario usuario, IndiceMetadatos.Filtro filtro, String path, int pagina, int tamano) {
+        if (path != null) {
+            Directorio dir = ResolutorRutas.resolver(usuario, path);
+            if (dir == null) return ResponseEntity.badRequest().body(Map.of("error", "Ruta no válida."));
+            filtro.dentroDe = dir;
+        }
+
+        List<Archivo> encontrados = IndiceMetadatos.de(usuario).consultar(filtro);
+        int desde = (int) Math.min((long) pagina * tamano, encontrados.size());
+        int hasta = (int) Math.min((long) desde + tamano, encontrados.size());
+
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        for (Archivo a : encontrados.subList(desde, hasta)) {
+            resultados.add(describir(a));
+        }
+
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("total", encontrados.size());
+        respuesta.put("pagina", pagina);
+        respuesta.put("tamano", tamano);
+        respuesta.put("resultados", resultados);
+        return ResponseEntity.ok(respuesta);
+    }
+
+    private Map<String, Object> describir(Archivo a) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", a.getId());
+        item.put("nombre", a.getNombre());
+        item.put("extension", a.getExtension());
+        item.put("ruta", a.getDirectorio().getRuta() + "/" + a.getNombreCompleto());
+        item.put("tamano", a.getTamano());
+        item.put("fechaCreacion", a.getFechaCreacion());
+        item.put("fechaModificacion", a.getFechaModificacion());
+        return item;
+    }
+}
@@ -0,0 +1,241 @@
+package org.example.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.SesionCarga;
+import org.example.model.Usuario;
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.IndiceContenido;
+import org.example.util.ResolutorRutas;
+import org.example.util.JsonUtil;
+import org.example.util.SesionesCarga;
+import org.example.util.VistaArbol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Subida de archivos grandes por trozos:
+//   POST   /cargas                      abre la sesión y reserva el espacio
+//   PUT    /cargas/{sesion}/trozos/{n}  cuerpo binario del trozo n (se puede repetir)
+//   GET    /cargas/{sesion}             trozos recibidos y faltantes, para reanudar
+//   POST   /cargas/{sesion}/confirmar   junta los trozos y crea el archivo
+//   DELETE /cargas/{sesion}             cancela y libera la reserva
+@RestController
+@RequestMapping("/usuarios/{nombre}/cargas")
+public class CargaController {
+
+    // Tamaño de trozo cuando el cliente no pide otro
+    @Value("${fileapi.cargas.tamano-trozo-mb:8}")
+    private long tamanoTrozoMb;
+
+    private static final long TROZO_MAXIMO = 64L * 1024 * 1024;
+
+    private boolean existeArchivo(Directorio dir, String nombreArchivo, String extension) {
+        return dir.contieneArchivo(nombreArchivo, extension);
+    }
+
+    @PostMapping
+    public ResponseEntity<?> abrirSesion(
+            @PathVariable String nombre,
+            @RequestBody Map<String, Object> data) {
+        String path = (String) data.get("path");
+        String nombreArchivo = (String) data.get("nombre");
+        String extension = (String) data.get("extension");
+        if (path == null || nombreArchivo == null || extension == null || !(data.get("tamano") instanceof Number)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Faltan datos obligatorios: path, nombre, extension o tamano"));
+        }
+        long tamano = ((Number) data.get("tamano")).longValue();
+        long tamanoTrozo = data.get("tamanoTrozo") instanceof Number n
+                ? n.longValue() : tamanoTrozoMb * 1024 * 1024;
+        if (tamano < 0 || tamanoTrozo <= 0 || tamanoTrozo > TROZO_MAXIMO) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Tamaño de archivo o de trozo inválido"));
+        }
+
+        try {
+            String idUsuario = JsonUtil.buscarIdPorNombre(nombre);
+            if (idUsuario == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+            }
+            SesionesCarga.descartarVencidas(idUsuario);
+
+            SesionCarga sesion = new SesionCarga(idUsuario, path, nombreArchivo, extension, tamano, tamanoTrozo);
+            ResponseEntity<?> error = ColaMutaciones.mutarPorId(idUsuario, usuario -> {
+                Directorio dir = ResolutorRutas.resolver(usuario, path);
+                if (dir == null) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+                }
+                if (existeArchivo(dir, nombreArchivo, extension)) {
+                    return ResponseEntity.status(409).body(Map.of("error", "Ya existe un archivo con ese nombre en este directorio"));
+                }
+                if (!usuario.reservarEspacio(tamano)) {
+                    return ResponseEntity.status(413).body(Map.of("error", "No hay suficiente espacio disponible"));
+                }
+                return null;
+            });
+            if (error != null) return error;
+
+            try {
+                SesionesCarga.crear(sesion);
+            } catch (IOException e) {
+                ColaMutaciones.mutarPorId(idUsuario, usuario -> {
+                    usuario.liberarReserva(tamano);
+                    return null;
+                });
+                throw e;
+            }
+            return ResponseEntity.ok(describir(sesion));
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al abrir la subida: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{sesion}")
+    public ResponseEntity<?> estadoSesion(
+            @PathVariable String nombre,
+            @PathVariable("sesion") String idSesion) {
+        try {
+            SesionCarga sesion = obtenerSesion(nombre, idSesion);
+            if (sesion == null) return ResponseEntity.status(404).body(Map.of("error", "Sesión no encontrada"));
+            return ResponseEntity.ok(describir(sesion));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al leer la sesión: " + e.getMessage()));
+        }
+    }
+
+    // El cuerpo se copia del socket al disco sin pasar por Jackson ni por un String
+    @PutMapping("/{sesion}/trozos/{numero}")
+    public ResponseEntity<?> subirTrozo(
+            @PathVariable String nombre,
+            @PathVariable("sesion") String idSesion,
+            @PathVariable int numero,
+            HttpServletRequest request) {
+        try {
+            SesionCarga sesion = obtenerSesion(nombre, idSesion);
+            if (sesion == null) {
+                if (SesionesCarga.estaReclamada(idSesion)) return sesionConfirmandose();
+                return ResponseEntity.status(404).body(Map.of("error", "Sesión no encontrada"));
+            }
+
+            long escritos = SesionesCarga.escribirTrozo(sesion, numero, request.getInputStream());
+            return ResponseEntity.ok(Map.of("trozo", numero, "bytes", escritos));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return sesionConfirmandose();
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al guardar el trozo: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{sesion}/confirmar")
+    public ResponseEntity<?> confirmar(
+            @PathVariable String nombre,
+            @PathVariable("sesion") String idSesion) {
+        try {
+            SesionCarga sesion = obtenerSesion(nombre, idSesion);
+            if (sesion == null) return ResponseEntity.status(404).body(Map.of("error", "Sesión no encontrada"));
+
+            List<Integer> faltantes = SesionesCarga.faltantes(sesion);
+            if (!faltantes.isEmpty()) {
+                return ResponseEntity.status(409).body(Map.of("error", "Faltan trozos", "faltantes", faltantes));
+            }
+
+            // La sesión se toma antes de ensamblar: una cancelación o el barrido de
+            // vencidas no pueden liberar la reserva (ni borrar los trozos) mientras
+            // se confirma. Si la confirmación no se hace, se devuelve.
+            if (!SesionesCarga.reclamar(sesion.getId())) {
+                return ResponseEntity.status(404).body(Map.of("error", "Sesión no encontrada"));
+            }
+            ResponseEntity<?> respuesta = null;
+            try {
+                respuesta = confirmarReclamada(nombre, sesion);
+            } finally {
+                if (respuesta != null && respuesta.getStatusCode().is2xxSuccessful()) {
+                    SesionesCarga.eliminar(sesion.getId());
+                } else {
+                    SesionesCarga.devolver(sesion.getId());
+                }
+            }
+            return respuesta;
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al confirmar la subida: " + e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> confirmarReclamada(String nombre, SesionCarga sesion) throws IOException {
+        // Se ensambla fuera de la cola; el árbol solo recibe la referencia al blob
+        String blob = sesion.getTamano() == 0 ? null : SesionesCarga.ensamblar(sesion);
+        IndiceContenido.prepararPara(nombre, blob);
+
+        return ColaMutaciones.mutarPorId(sesion.getIdUsuario(), usuario -> {
+            Directorio dir = ResolutorRutas.resolver(usuario, sesion.getPath());
+            if (dir == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+            }
+            if (existeArchivo(dir, sesion.getNombre(), sesion.getExtension())) {
+                return ResponseEntity.status(409).body(Map.of(
+                        "error", "Ya existe un archivo con ese nombre en este directorio"
+                ));
+            }
+
+            // El espacio ya estaba reservado: la reserva pasa a ser espacio usado
+            Archivo nuevo = new Archivo(sesion.getNombre(), sesion.getExtension(), blob, sesion.getTamano());
+            usuario.liberarReserva(sesion.getTamano());
+            dir.agregarArchivo(nuevo);
+            AlmacenBlobs.retener(blob);
+            usuario.recalcularEspacioUsado();
+            return ResponseEntity.ok(VistaArbol.archivo(nuevo));
+        });
+    }
+
+    @DeleteMapping("/{sesion}")
+    public ResponseEntity<?> cancelar(
+            @PathVariable String nombre,
+            @PathVariable("sesion") String idSesion) {
+        try {
+            SesionCarga sesion = obtenerSesion(nombre, idSesion);
+            if (sesion == null) return ResponseEntity.status(404).body(Map.of("error", "Sesión no encontrada"));
+            SesionesCarga.descartar(sesion);
+            return ResponseEntity.ok(Map.of("mensaje", "Subida cancelada"));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al cancelar la subida: " + e.getMessage()));
+        }
+    }
+
+    // Una sesión reclamada ya no admite trozos: lo que se ensambla es lo que había
+    private static ResponseEntity<?> sesionConfirmandose() {
+        return ResponseEntity.status(409).body(Map.of("error", "La subida se está confirmando"));
+    }
+
+    // La sesión solo es visible para el usuario que la abrió
+    private SesionCarga obtenerSesion(String nombre, String idSesion) throws IOException {
+        SesionCarga sesion = SesionesCarga.obtener(idSesion);
+        if (sesion == null) return null;
+        String idUsuario = JsonUtil.buscarIdPorNombre(nombre);
+        return sesion.getIdUsuario().equals(idUsuario) ? sesion : null;
+    }
+
+    private Map<String, Object> describir(SesionCarga sesion) throws IOException {
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("id", sesion.getId());
+        resultado.put("path", sesion.getPath());
+        resultado.put("nombre", sesion.getNombre());
+        resultado.put("extension", sesion.getExtension());
+        resultado.put("tamano", sesion.getTamano());
+        resultado.put("tamanoTrozo", sesion.getTamanoTrozo());
+        resultado.put("totalTrozos", sesion.getTotalTrozos());
+        resultado.put("recibidos", SesionesCarga.recibidos(sesion));
+        resultado.put("faltantes", SesionesCarga.faltantes(sesion));
+        return resultado;
+    }
+}
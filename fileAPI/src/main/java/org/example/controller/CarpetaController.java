@@ -3,7 +3,13 @@ package org.example.controller;
 import org.example.model.Archivo;
 import org.example.model.Directorio;
 import org.example.model.Usuario;
-import org.example.util.JsonUtil;
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.Etiquetas;
+import org.example.util.IndiceNombres;
+import org.example.util.ListadoDirectorios;
+import org.example.util.ResolutorRutas;
+import org.example.util.VistaArbol;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,179 +30,180 @@ public class CarpetaController {
         String nombreNueva = request.get("nombre"); // Ejemplo: "fotos"
 
         try {
-            Usuario user = JsonUtil.buscarPorNombre(usuario);
-            Directorio destino = buscarDirectorioPorRuta(user.getDirectorioRaiz(), ruta);
+            return ColaMutaciones.mutar(usuario, user -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.crearCarpeta(user, tx, ruta, nombreNueva)));
 
-            for (Directorio sub : destino.getSubdirectorios()) {
-                if (sub.getNombre().equals(nombreNueva)) {
-                    return ResponseEntity.badRequest().body("Ya existe una carpeta con ese nombre en esta ruta.");
-                }
-            }
-
-            Directorio nueva = new Directorio(nombreNueva, destino);
-            destino.getSubdirectorios().add(nueva);
-            destino.setFechaModificacion(java.time.LocalDateTime.now());
-
-            JsonUtil.guardarUsuario(user);
-            return ResponseEntity.ok("Carpeta creada correctamente.");
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Error al cargar/guardar usuario.");
-        } catch (NoSuchElementException e) {
-            return ResponseEntity.badRequest().body("Ruta no encontrada.");
         }
     }
     @PostMapping("/{usuario}/listar")
     public ResponseEntity<?> listarContenido(
             @PathVariable String usuario,
-            @RequestBody Map<String, String> request) {
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         String ruta = request.get("ruta");
 
         try {
-            Usuario user = JsonUtil.buscarPorNombre(usuario);
-            Directorio dir = buscarDirectorioPorRutaAlterno(user, ruta);
+            return ColaMutaciones.leer(usuario, user -> {
+                Directorio dir = ResolutorRutas.resolver(user, ruta);
+                if (dir == null) return ResponseEntity.badRequest().body("Ruta no válida.");
+                String etag = Etiquetas.de(dir);
+                if (Etiquetas.noModificado(ifNoneMatch, etag)) {
+                    return ResponseEntity.status(304).eTag(etag).build();
+                }
 
-            Map<String, Object> contenido = new HashMap<>();
-            contenido.put("archivos", dir.getArchivos());
-            contenido.put("subdirectorios", dir.getSubdirectorios());
-            return ResponseEntity.ok(contenido);
+                Map<String, Object> contenido = new LinkedHashMap<>();
+                contenido.put("archivos", VistaArbol.archivos(dir.verArchivos()));
+                contenido.put("subdirectorios", VistaArbol.directorios(dir.verSubdirectorios()));
+                return ResponseEntity.ok().eTag(etag).body(contenido);
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Error al acceder a datos.");
-        } catch (NoSuchElementException e) {
-            return ResponseEntity.badRequest().body("Ruta no válida.");
         }
     }
 
+    private static final int MAX_LIMITE_LISTADO = 1000;
 
+    // Listado de un solo nivel: cada hijo con sus metadatos, sin lo que cuelga de
+    // él. Carpetas primero y luego por nombre; "siguiente" es el cursor de la
+    // próxima página (null en la última).
+    @GetMapping("/{nombre}/contenido")
+    public ResponseEntity<?> listarNivel(
+            @PathVariable String nombre,
+            @RequestParam String path,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limite,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
-    // Función auxiliar para navegar un path tipo "root/docs/proyectos"
-    private Directorio buscarDirectorioPorRuta(Directorio actual, String ruta) {
-        String[] partes = ruta.split("/");
-        for (String nombre : partes) {
-            if (nombre.equals(actual.getNombre())) continue;
-            Optional<Directorio> siguiente = actual.getSubdirectorios().stream()
-                    .filter(d -> d.getNombre().equals(nombre))
-                    .findFirst();
-            if (siguiente.isEmpty()) throw new NoSuchElementException("No se encontró: " + nombre);
-            actual = siguiente.get();
+        if (limite < 1 || limite > MAX_LIMITE_LISTADO) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limite debe estar entre 1 y " + MAX_LIMITE_LISTADO));
+        }
+
+        try {
+            return ColaMutaciones.leer(nombre, usuario -> listarNivel(usuario, path, cursor, limite, ifNoneMatch));
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al acceder a datos."));
         }
-        return actual;
     }
 
-    private Directorio buscarDirectorioPorRutaAlterno(Usuario user, String ruta) {
-        String[] partes = ruta.split("/");
-        Directorio actual;
-
-        // punto de partida según la raíz
-        if (partes[0].equals("root")) {
-            actual = user.getDirectorioRaiz();
-        } else if (partes[0].equals("compartidos")) {
-            actual = user.getDirectorioCompartidos();
-        } else {
-            throw new NoSuchElementException("La ruta debe iniciar con root o compartidos");
+    // Paquete y no private para poder probarlo sin la cola
+    ResponseEntity<?> listarNivel(Usuario usuario, String path, String cursor, int limite, String ifNoneMatch) {
+        Directorio dir = ResolutorRutas.resolver(usuario, path);
+        if (dir == null) return ResponseEntity.badRequest().body(Map.of("error", "Ruta no válida."));
+        // La versión cubre todo el subárbol, así que también los tamaños
+        String etag = Etiquetas.de(dir);
+        if (Etiquetas.noModificado(ifNoneMatch, etag)) {
+            return ResponseEntity.status(304).eTag(etag).build();
         }
 
-        for (int i = 1; i < partes.length; i++) {
-            String nombre = partes[i];
-            Optional<Directorio> siguiente = actual.getSubdirectorios().stream()
-                    .filter(d -> d.getNombre().equals(nombre))
-                    .findFirst();
-            if (siguiente.isEmpty()) {
-                throw new NoSuchElementException("No se encontró el directorio: " + nombre);
+        ListadoDirectorios.Pagina pagina = ListadoDirectorios.de(usuario).listar(dir, cursor, limite);
+        if (pagina == null) return ResponseEntity.badRequest().body(Map.of("error", "Cursor no válido"));
+
+        List<Map<String, Object>> entradas = new ArrayList<>();
+        for (ListadoDirectorios.Entrada e : pagina.entradas) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            if (e.carpeta != null) {
+                item.put("tipo", "carpeta");
+                item.put("nombre", e.carpeta.getNombre());
+                item.put("tamano", e.carpeta.getTamanoTotal());
+                // Sin desplegar: una página cuesta lo que sus entradas
+                item.put("archivos", e.carpeta.cuantosArchivos());
+                item.put("subdirectorios", e.carpeta.cuantosSubdirectorios());
+                item.put("fechaCreacion", e.carpeta.getFechaCreacion());
+                item.put("fechaModificacion", e.carpeta.getFechaModificacion());
+            } else {
+                item.put("tipo", "archivo");
+                item.put("nombre", e.archivo.getNombre());
+                item.put("extension", e.archivo.getExtension());
+                item.put("tamano", e.archivo.getTamano());
+                item.put("fechaCreacion", e.archivo.getFechaCreacion());
+                item.put("fechaModificacion", e.archivo.getFechaModificacion());
             }
-            actual = siguiente.get();
+            entradas.add(item);
+        }
+
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("path", path);
+        respuesta.put("total", pagina.total);
+        respuesta.put("entradas", entradas);
+        respuesta.put("siguiente", pagina.siguiente);
+        return ResponseEntity.ok().eTag(etag).body(respuesta);
+    }
+
+
+
+    // Tamaño de una carpeta con todo su contenido; lee el agregado, no recorre el árbol
+    @GetMapping("/{nombre}/tamano")
+    public ResponseEntity<?> tamanoCarpeta(
+            @PathVariable String nombre,
+            @RequestParam String path) {
+        try {
+            return ColaMutaciones.leer(nombre, usuario -> {
+                Directorio dir = ResolutorRutas.resolver(usuario, path);
+                if (dir == null) return ResponseEntity.badRequest().body(Map.of("error", "Ruta no válida."));
+                return ResponseEntity.ok(Map.of("path", path, "tamano", dir.getTamanoTotal()));
+            });
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al acceder a datos."));
         }
-        return actual;
     }
 
+    // Chequeo de consistencia: recorre todo el árbol y corrige los tamaños desfasados
+    @PostMapping("/{nombre}/verificar-espacio")
+    public ResponseEntity<?> verificarEspacio(@PathVariable String nombre) {
+        try {
+            return ColaMutaciones.mutar(nombre, usuario -> {
+                int corregidos = usuario.verificarEspacioUsado();
+                return ResponseEntity.ok(Map.of(
+                        "espacioUsado", usuario.getEspacioUsado(),
+                        "directoriosCorregidos", corregidos
+                ));
+            });
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al verificar el espacio"));
+        }
+    }
 
     @DeleteMapping("/{nombre}")
     public ResponseEntity<?> eliminarCarpeta(
             @PathVariable String nombre,
-            @RequestBody Map<String, String> body) {
+            @RequestBody Map<String, String> body,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
             String path = body.get("path");
             if (path == null || path.isBlank()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Path requerido"));
             }
 
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            Directorio raiz = usuario.getDirectorioRaiz();
-
-            // Separar el último segmento
-            String[] partes = path.split("/");
-            if (partes.length < 2) {
-                return ResponseEntity.badRequest().body(Map.of("error", "No se puede eliminar el directorio raíz"));
-            }
-
-            String nombreCarpeta = partes[partes.length - 1];
-            String pathPadre = String.join("/", Arrays.copyOf(partes, partes.length - 1));
-
-            Directorio padre = buscarDirectorio(usuario, pathPadre);
-            if (padre == null) {
-                return ResponseEntity.status(404).body(Map.of("error", "Directorio padre no encontrado"));
-            }
-
-            boolean eliminado = padre.eliminarSubdirectorio(nombreCarpeta);
-            if (!eliminado) {
-                return ResponseEntity.status(404).body(Map.of("error", "Subdirectorio no encontrado"));
-            }
-
-            usuario.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(usuario);
-            return ResponseEntity.ok(Map.of("mensaje", "Carpeta eliminada correctamente"));
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.eliminarCarpeta(usuario, tx, path, ifMatch)));
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al eliminar la carpeta"));
         }
     }
-    private Directorio buscarDirectorio(Usuario usuario, String path) {
-        if (path.equals("root")) return usuario.getDirectorioRaiz();
-        if (path.equals("compartidos")) return usuario.getDirectorioCompartidos();
-
-        String[] partes = path.split("/");
-        Directorio actual = usuario.getDirectorioRaiz();
-
-        for (int i = 1; i < partes.length; i++) {
-            String nombre = partes[i];
-            Optional<Directorio> sub = actual.getSubdirectorios().stream()
-                    .filter(d -> d.getNombre().equals(nombre))
-                    .findFirst();
-            if (sub.isEmpty()) return null;
-            actual = sub.get();
-        }
-
-        return actual;
-    }
-    private boolean buscarRutaDeCarpeta(Directorio actual, String nombreCarpeta, String rutaActual, List<String> resultado) {
-        if (actual.getNombre().equals(nombreCarpeta)) {
-            resultado.add(rutaActual);
-            return true;
-        }
-
-        for (Directorio sub : actual.getSubdirectorios()) {
-            boolean encontrada = buscarRutaDeCarpeta(sub, nombreCarpeta, rutaActual + "/" + sub.getNombre(), resultado);
-            if (encontrada) return true;
-        }
-
-        return false;
-    }
-
+    // Todas las carpetas con ese nombre en root y compartidos; "ruta" es la
+    // primera, por compatibilidad
     @GetMapping("/{nombre}/ruta")
     public ResponseEntity<?> obtenerRutaCarpeta(
             @PathVariable String nombre,
             @RequestParam String nombreCarpeta) {
         try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            List<String> ruta = new ArrayList<>();
-            boolean encontrada = buscarRutaDeCarpeta(usuario.getDirectorioRaiz(), nombreCarpeta, "root", ruta);
+            return ColaMutaciones.leer(nombre, usuario -> {
+                List<String> rutas = IndiceNombres.de(usuario).rutasDeCarpeta(nombreCarpeta);
 
-            if (!encontrada) {
-                return ResponseEntity.status(404).body(Map.of("error", "Carpeta no encontrada"));
-            }
+                if (rutas.isEmpty()) {
+                    return ResponseEntity.status(404).body(Map.of("error", "Carpeta no encontrada"));
+                }
 
-            return ResponseEntity.ok(Map.of("ruta", ruta.get(0)));
+                return ResponseEntity.ok(Map.of("ruta", rutas.get(0), "rutas", rutas));
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al buscar el usuario"));
@@ -206,7 +213,8 @@ public class CarpetaController {
     @PostMapping("/{nombre}/mover")
     public ResponseEntity<?> moverCarpeta(
             @PathVariable("nombre") String nombre,
-            @RequestBody Map<String, String> request) {
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
             String origenPath = request.get("origenPath");
             String destinoPath = request.get("destinoPath");
@@ -215,63 +223,34 @@ public class CarpetaController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Faltan rutas en el cuerpo de la solicitud"));
             }
 
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-
-            // separar el nombre de la carpeta a mover
-            String[] partesOrigen = origenPath.split("/");
-            String nombreCarpeta = partesOrigen[partesOrigen.length - 1];
-            String pathPadreOrigen = String.join("/", java.util.Arrays.copyOf(partesOrigen, partesOrigen.length - 1));
-
-            // obtener referencias
-            Directorio padreOrigen = buscarDirectorio(usuario, pathPadreOrigen);
-            Directorio destino = buscarDirectorio(usuario, destinoPath);
-
-            if (padreOrigen == null || destino == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
-            }
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.moverCarpeta(usuario, tx, origenPath, destinoPath, ifMatch)));
 
-            // buscar el subdirectorio a mover
-            Directorio dirAMover = padreOrigen.getSubdirectorios().stream()
-                    .filter(d -> d.getNombre().equals(nombreCarpeta))
-                    .findFirst()
-                    .orElse(null);
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error procesando el movimiento: " + e.getMessage()));
+        }
+    }
 
-            if (dirAMover == null) {
-                return ResponseEntity.status(404).body(Map.of("error", "Carpeta de origen no encontrada"));
-            }
+    // Copia una carpeta (con todo su subárbol) dentro del mismo usuario; "nombre"
+    // es opcional y por defecto es el del original
+    @PostMapping("/{nombre}/copiar")
+    public ResponseEntity<?> copiarCarpeta(
+            @PathVariable("nombre") String nombre,
+            @RequestBody Map<String, String> request) {
+        try {
+            String origenPath = request.get("origenPath");
+            String destinoPath = request.get("destinoPath");
+            String nombreNuevo = request.get("nombre");
 
-            // verificar si ya existe en destino
-            boolean existe = destino.getSubdirectorios().stream()
-                    .anyMatch(d -> d.getNombre().equals(nombreCarpeta));
-            if (existe) {
-                return ResponseEntity.status(409).body(Map.of("error", "Ya existe una carpeta con ese nombre en el destino"));
+            if (origenPath == null || destinoPath == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Faltan rutas en el cuerpo de la solicitud"));
             }
 
-            // mover: eliminar del padre original
-            padreOrigen.getSubdirectorios().remove(dirAMover);
-
-            // actualizar referencia de padre
-            dirAMover.setPadre(destino);
-
-            // agregar al destino
-            destino.getSubdirectorios().add(dirAMover);
-
-            // actualizar fechas
-            dirAMover.setFechaModificacion(java.time.LocalDateTime.now());
-            padreOrigen.setFechaModificacion(java.time.LocalDateTime.now());
-            destino.setFechaModificacion(java.time.LocalDateTime.now());
-
-            // recalcular espacio
-            usuario.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(usuario);
-
-            return ResponseEntity.ok(Map.of(
-                    "mensaje", "Carpeta movida correctamente",
-                    "nuevoPath", destinoPath + "/" + nombreCarpeta
-            ));
+            return ColaMutaciones.mutar(nombre, usuario -> OperacionesArbol.sola(tx ->
+                    OperacionesArbol.copiarCarpeta(usuario, tx, origenPath, destinoPath, nombreNuevo)));
 
         } catch (IOException e) {
-            return ResponseEntity.internalServerError().body(Map.of("error", "Error procesando el movimiento: " + e.getMessage()));
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al copiar la carpeta: " + e.getMessage()));
         }
     }
 
@@ -283,50 +262,50 @@ public class CarpetaController {
             String path = request.get("path");  // ruta completa de la carpeta a compartir
             String destinatario = request.get("destinatario");
 
-            Usuario emisor = JsonUtil.buscarPorNombre(nombre);
-            Usuario receptor = JsonUtil.buscarPorNombre(destinatario);
-
-            // localizar la carpeta origen
-            Directorio carpetaOriginal = buscarDirectorio(emisor, path);
-            if (carpetaOriginal == null) {
+            // clonar la carpeta completa recursivamente en la cola del emisor
+            Directorio copia = ColaMutaciones.leer(nombre, emisor -> {
+                Directorio carpetaOriginal = ResolutorRutas.resolver(emisor, path);
+                return carpetaOriginal == null ? null : clonarDirectorio(carpetaOriginal, null);
+            });
+            if (copia == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "Carpeta no encontrada"));
             }
 
-            // verificar si ya existe en el destino (compartidos)
-            boolean yaExiste = receptor.getDirectorioCompartidos().getSubdirectorios().stream()
-                    .anyMatch(d -> d.getNombre().equals(carpetaOriginal.getNombre()));
+            return ColaMutaciones.mutar(destinatario, receptor -> {
+                // verificar si ya existe en el destino (compartidos)
+                boolean yaExiste = receptor.getDirectorioCompartidos().contieneSubdirectorio(copia.getNombre());
 
-            if (yaExiste) {
-                return ResponseEntity.status(409).body(Map.of(
-                        "error", "Ya existe una carpeta con ese nombre en la carpeta de compartidos del destinatario"
-                ));
-            }
-
-            // clonar la carpeta completa recursivamente
-            Directorio copia = clonarDirectorio(carpetaOriginal, null);
+                if (yaExiste) {
+                    return ResponseEntity.status(409).body(Map.of(
+                            "error", "Ya existe una carpeta con ese nombre en la carpeta de compartidos del destinatario"
+                    ));
+                }
 
-            receptor.getDirectorioCompartidos().getSubdirectorios().add(copia);
-            receptor.recalcularEspacioUsado();
-            JsonUtil.guardarUsuario(receptor);
+                receptor.getDirectorioCompartidos().agregarSubdirectorio(copia);
+                // la copia comparte los blobs del original: solo se suman referencias
+                AlmacenBlobs.retenerArbol(copia);
+                receptor.recalcularEspacioUsado();
 
-            return ResponseEntity.ok(Map.of("mensaje", "Carpeta compartida correctamente"));
+                return ResponseEntity.ok(Map.of("mensaje", "Carpeta compartida correctamente"));
+            });
 
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al compartir carpeta: " + e.getMessage()));
         }
     }
 
-    private Directorio clonarDirectorio(Directorio original, Directorio padre) {
+    // Paquete y no private para poder medirlo desde los benchmarks
+    static Directorio clonarDirectorio(Directorio original, Directorio padre) {
         Directorio copia = new Directorio(original.getNombre(), padre);
 
         // clonar archivos
-        for (Archivo a : original.getArchivos()) {
-            copia.getArchivos().add(new Archivo(a.getNombre(), a.getExtension(), a.getContenido()));
+        for (Archivo a : original.verArchivos()) {
+            copia.agregarArchivo(new Archivo(a.getNombre(), a.getExtension(), a.getBlob(), a.getTamano()));
         }
 
         // clonar subdirectorios
-        for (Directorio sub : original.getSubdirectorios()) {
-            copia.getSubdirectorios().add(clonarDirectorio(sub, copia));
+        for (Directorio sub : original.verSubdirectorios()) {
+            copia.agregarSubdirectorio(clonarDirectorio(sub, null));
         }
 
         return copia;
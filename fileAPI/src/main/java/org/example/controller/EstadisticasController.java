@@ -0,0 +1,39 @@
+package org.example.controller;
+
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.DiarioUsuarios;
+import org.example.util.JsonUtil;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/estadisticas")
+public class EstadisticasController {
+
+    // Aciertos, fallos y desalojos de la cache de usuarios
+    @GetMapping("/cache")
+    public ResponseEntity<?> cache() {
+        return ResponseEntity.ok(JsonUtil.estadisticasCache());
+    }
+
+    // Referencias a blobs y resultado del recolector
+    @GetMapping("/blobs")
+    public ResponseEntity<?> blobs() {
+        return ResponseEntity.ok(AlmacenBlobs.estadisticas());
+    }
+
+    // Operaciones por lote y escrituras de la cola de mutaciones
+    @GetMapping("/mutaciones")
+    public ResponseEntity<?> mutaciones() {
+        return ResponseEntity.ok(ColaMutaciones.estadisticas());
+    }
+
+    // Registros anotados, fsyncs y compactaciones del diario de usuarios
+    @GetMapping("/diario")
+    public ResponseEntity<?> diario() {
+        return ResponseEntity.ok(DiarioUsuarios.estadisticas());
+    }
+}
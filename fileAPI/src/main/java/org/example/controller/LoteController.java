@@ -0,0 +1,273 @@
+package org.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.model.Usuario;
+import org.example.util.AlmacenBlobs;
+import org.example.util.ColaMutaciones;
+import org.example.util.IndiceContenido;
+import org.example.util.Transaccion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Varias operaciones sobre archivos y carpetas de un usuario en una sola petición.
+// Se aplican en orden sobre el mismo árbol, dentro de una única operación de la
+// cola del usuario, y se guardan con una sola escritura.
+//   POST /usuarios/{nombre}/lote
+//   {"modo": "todoONada" | "mejorEsfuerzo",
+//    "operaciones": [{"op": "crearArchivo", "path": "root", "nombre": "a", ...}, ...]}
+// Cada operación lleva los mismos campos que su endpoint suelto (y "ifMatch" en
+// lugar de la cabecera If-Match):
+//   crearArchivo      path, nombre, extension, contenido
+//   borrarArchivo     path, nombre, extension
+//   modificarArchivo  path, nombreArchivo, nuevoContenido
+//   moverArchivo      origenPath, destinoPath, nombre, extension
+//   crearCarpeta      path, nombre
+//   borrarCarpeta     path
+//   moverCarpeta      origenPath, destinoPath
+//   copiarCarpeta     origenPath, destinoPath (y "nombre" opcional)
+// En todoONada la primera operación que falla deshace las anteriores y las
+// siguientes no se ejecutan; en mejorEsfuerzo cada operación queda o no por su
+// cuenta. La respuesta trae el resultado de cada una.
+@RestController
+@RequestMapping("/usuarios/{nombre}/lote")
+public class LoteController {
+
+    private static final String TODO_O_NADA = "todoONada";
+    private static final String MEJOR_ESFUERZO = "mejorEsfuerzo";
+
+    @Value("${fileapi.lotes.max-operaciones:1000}")
+    private int maxOperaciones;
+
+    private final ObjectMapper mapper;
+
+    public LoteController(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    // Una operación ya validada, lista para aplicarse dentro de la cola
+    interface Operacion {
+        ResponseEntity<?> aplicar(Usuario usuario, Transaccion tx) throws IOException;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> ejecutarLote(
+            @PathVariable String nombre,
+            @RequestBody Map<String, Object> request) {
+
+        String modo = texto(request, "modo");
+        if (modo == null) modo = TODO_O_NADA;
+        if (!modo.equals(TODO_O_NADA) && !modo.equals(MEJOR_ESFUERZO)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Modo desconocido: " + modo));
+        }
+        if (!(request.get("operaciones") instanceof List<?> lista) || lista.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Falta la lista de operaciones"));
+        }
+        if (lista.size() > maxOperaciones) {
+            return ResponseEntity.status(413).body(Map.of(
+                    "error", "Demasiadas operaciones en el lote (máximo " + maxOperaciones + ")"));
+        }
+
+        try {
+            // Se valida todo y se guarda el contenido en el almacén de blobs antes
+            // de entrar a la cola, igual que en los endpoints sueltos
+            List<String> tipos = new ArrayList<>();
+            List<Operacion> operaciones = new ArrayList<>();
+            for (int i = 0; i < lista.size(); i++) {
+                if (!(lista.get(i) instanceof Map<?, ?> datos)) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Operación " + i + " inválida"));
+                }
+                String tipo = texto(datos, "op");
+                String faltante = faltante(tipo, datos);
+                if (faltante != null) {
+                    return ResponseEntity.badRequest().body(Map.of(
+                            "error", "Operación " + i + ": " + faltante, "indice", i));
+                }
+                tipos.add(tipo);
+                operaciones.add(preparar(nombre, tipo, datos));
+            }
+
+            boolean todoONada = modo.equals(TODO_O_NADA);
+            String modoLote = modo;
+            return ColaMutaciones.mutar(nombre, usuario -> todoONada
+                    ? todoONada(usuario, tipos, operaciones, modoLote)
+                    : mejorEsfuerzo(usuario, tipos, operaciones, modoLote));
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al ejecutar el lote: " + e.getMessage()));
+        }
+    }
+
+    // Una sola transacción: al primer fallo se revierte todo lo aplicado.
+    // Paquete y no private para poder probarlo sin la cola
+    ResponseEntity<?> todoONada(Usuario usuario, List<String> tipos, List<Operacion> operaciones, String modo) {
+        Transaccion tx = new Transaccion();
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        for (int i = 0; i < operaciones.size(); i++) {
+            ResponseEntity<?> respuesta = aplicar(operaciones.get(i), usuario, tx);
+            resultados.add(resultado(i, tipos.get(i), respuesta));
+            if (!respuesta.getStatusCode().is2xxSuccessful()) {
+                tx.revertir();
+                for (int j = 0; j < i; j++) {
+                    resultados.get(j).put("revertida", true);
+                }
+                for (int j = i + 1; j < operaciones.size(); j++) {
+                    resultados.add(noEjecutada(j, tipos.get(j)));
+                }
+                return ResponseEntity.status(respuesta.getStatusCode())
+                        .body(respuestaLote(modo, false, i, resultados));
+            }
+        }
+        tx.confirmar();
+        return ResponseEntity.ok(respuestaLote(modo, true, null, resultados));
+    }
+
+    // Una transacción por operación: cada una queda aplicada o no por su cuenta
+    private ResponseEntity<?> mejorEsfuerzo(Usuario usuario, List<String> tipos, List<Operacion> operaciones, String modo) {
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        for (int i = 0; i < operaciones.size(); i++) {
+            Transaccion tx = new Transaccion();
+            ResponseEntity<?> respuesta = aplicar(operaciones.get(i), usuario, tx);
+            if (respuesta.getStatusCode().is2xxSuccessful()) tx.confirmar();
+            else tx.revertir();
+            resultados.add(resultado(i, tipos.get(i), respuesta));
+        }
+        return ResponseEntity.ok(respuestaLote(modo, true, null, resultados));
+    }
+
+    // Un error inesperado en una operación no debe dejar el árbol a medias:
+    // se revierte lo que alcanzó a hacer y se informa como un 500 de esa operación
+    private ResponseEntity<?> aplicar(Operacion operacion, Usuario usuario, Transaccion tx) {
+        try {
+            return operacion.aplicar(usuario, tx);
+        } catch (IOException | RuntimeException e) {
+            tx.revertir();
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al aplicar la operación: " + e.getMessage()));
+        }
+    }
+
+    // Los contenidos se guardan como blobs aquí, fuera de la cola. Los de un lote
+    // rechazado o revertido nunca llegan a retenerse: quedan huérfanos y el
+    // recolector los borra pasada la gracia
+    private Operacion preparar(String nombre, String tipo, Map<?, ?> datos) throws IOException {
+        String ifMatch = texto(datos, "ifMatch");
+        switch (tipo) {
+            case "crearArchivo": {
+                String path = texto(datos, "path");
+                String nombreArchivo = texto(datos, "nombre");
+                String extension = texto(datos, "extension");
+                String contenido = texto(datos, "contenido");
+                long tamano = AlmacenBlobs.tamano(contenido);
+                String blob = AlmacenBlobs.guardar(contenido);
+                IndiceContenido.prepararPara(nombre, blob);
+                return (usuario, tx) -> OperacionesArbol.crearArchivo(usuario, tx, path, nombreArchivo, extension, blob, tamano);
+            }
+            case "borrarArchivo": {
+                String path = texto(datos, "path");
+                String nombreArchivo = texto(datos, "nombre");
+                String extension = texto(datos, "extension");
+                return (usuario, tx) -> OperacionesArbol.borrarArchivo(usuario, tx, path, nombreArchivo, extension, ifMatch);
+            }
+            case "modificarArchivo": {
+                String path = texto(datos, "path");
+                String nombreArchivo = texto(datos, "nombreArchivo");
+                String nuevoContenido = texto(datos, "nuevoContenido");
+                long tamano = AlmacenBlobs.tamano(nuevoContenido);
+                String blob = AlmacenBlobs.guardar(nuevoContenido);
+                IndiceContenido.prepararPara(nombre, blob);
+                return (usuario, tx) -> OperacionesArbol.modificarArchivo(usuario, tx, path, nombreArchivo, blob, tamano, ifMatch);
+            }
+            case "moverArchivo": {
+                String origenPath = texto(datos, "origenPath");
+                String destinoPath = texto(datos, "destinoPath");
+                String nombreArchivo = texto(datos, "nombre");
+                String extension = texto(datos, "extension");
+                return (usuario, tx) -> OperacionesArbol.moverArchivo(usuario, tx, origenPath, destinoPath, nombreArchivo, extension, ifMatch);
+            }
+            case "crearCarpeta": {
+                String path = texto(datos, "path");
+                String nombreNueva = texto(datos, "nombre");
+                return (usuario, tx) -> OperacionesArbol.crearCarpeta(usuario, tx, path, nombreNueva);
+            }
+            case "borrarCarpeta": {
+                String path = texto(datos, "path");
+                return (usuario, tx) -> OperacionesArbol.eliminarCarpeta(usuario, tx, path, ifMatch);
+            }
+            case "moverCarpeta": {
+                String origenPath = texto(datos, "origenPath");
+                String destinoPath = texto(datos, "destinoPath");
+                return (usuario, tx) -> OperacionesArbol.moverCarpeta(usuario, tx, origenPath, destinoPath, ifMatch);
+            }
+            case "copiarCarpeta": {
+                String origenPath = texto(datos, "origenPath");
+                String destinoPath = texto(datos, "destinoPath");
+                String nombreNuevo = texto(datos, "nombre");
+                return (usuario, tx) -> OperacionesArbol.copiarCarpeta(usuario, tx, origenPath, destinoPath, nombreNuevo);
+            }
+            default:
+                throw new IllegalArgumentException("Operación desconocida: " + tipo);
+        }
+    }
+
+    // Devuelve qué le falta a la operación, o null si está completa
+    private static String faltante(String tipo, Map<?, ?> datos) {
+        if (tipo == null) return "falta el campo op";
+        String[] campos = switch (tipo) {
+            case "crearArchivo" -> new String[]{"path", "nombre", "extension", "contenido"};
+            case "borrarArchivo" -> new String[]{"path", "nombre", "extension"};
+            case "modificarArchivo" -> new String[]{"path", "nombreArchivo", "nuevoContenido"};
+            case "moverArchivo" -> new String[]{"origenPath", "destinoPath", "nombre", "extension"};
+            case "crearCarpeta" -> new String[]{"path", "nombre"};
+            case "borrarCarpeta" -> new String[]{"path"};
+            case "moverCarpeta", "copiarCarpeta" -> new String[]{"origenPath", "destinoPath"};
+            default -> null;
+        };
+        if (campos == null) return "operación desconocida: " + tipo;
+        for (String campo : campos) {
+            if (texto(datos, campo) == null) return "falta el campo " + campo;
+        }
+        return null;
+    }
+
+    private static String texto(Map<?, ?> datos, String clave) {
+        Object valor = datos.get(clave);
+        return valor == null ? null : valor.toString();
+    }
+
+    // El cuerpo se convierte en el momento: si es un nodo del árbol, una operación
+    // posterior del lote podría cambiarlo antes de escribir la respuesta
+    private Map<String, Object> resultado(int indice, String tipo, ResponseEntity<?> respuesta) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("indice", indice);
+        r.put("op", tipo);
+        r.put("estado", respuesta.getStatusCode().value());
+        if (respuesta.getHeaders().getETag() != null) r.put("etag", respuesta.getHeaders().getETag());
+        r.put("cuerpo", mapper.valueToTree(respuesta.getBody()));
+        return r;
+    }
+
+    private static Map<String, Object> noEjecutada(int indice, String tipo) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("indice", indice);
+        r.put("op", tipo);
+        r.put("estado", 424);
+        r.put("cuerpo", Map.of("error", "No se ejecutó porque falló una operación anterior del lote"));
+        return r;
+    }
+
+    private static Map<String, Object> respuestaLote(String modo, boolean confirmado, Integer fallida,
+                                                     List<Map<String, Object>> resultados) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("modo", modo);
+        r.put("confirmado", confirmado);
+        if (fallida != null) r.put("fallida", fallida);
+        r.put("resultados", resultados);
+        return r;
+    }
+}
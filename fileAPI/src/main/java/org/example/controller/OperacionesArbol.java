@@ -0,0 +1,349 @@
+package org.example.controller;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.AlmacenBlobs;
+import org.example.util.Etiquetas;
+import org.example.util.ResolutorRutas;
+import org.example.util.Transaccion;
+import org.example.util.VistaArbol;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Las operaciones que modifican el árbol, compartidas por los endpoints sueltos
+// y por el de lotes. Corren dentro de la cola del usuario: validan, cambian el
+// árbol y devuelven la respuesta. Cada cambio anota su inversa en la transacción
+// y las referencias a blobs se ajustan recién al confirmarla.
+// El contenido de los archivos ya debe estar en el almacén de blobs.
+class OperacionesArbol {
+
+    interface Paso {
+        ResponseEntity<?> aplicar(Transaccion tx) throws IOException;
+    }
+
+    // Una operación suelta: se confirma apenas termina. Si falla a mitad de
+    // camino se deshace lo que alcanzó a hacer, igual que en un lote
+    static ResponseEntity<?> sola(Paso paso) throws IOException {
+        Transaccion tx = new Transaccion();
+        ResponseEntity<?> respuesta;
+        try {
+            respuesta = paso.aplicar(tx);
+        } catch (IOException | RuntimeException e) {
+            tx.revertir();
+            throw e;
+        }
+        tx.confirmar();
+        return respuesta;
+    }
+
+    static ResponseEntity<?> crearArchivo(Usuario usuario, Transaccion tx, String path, String nombreArchivo,
+                                          String extension, String blob, long tamano) {
+        // Verificar ruta válida
+        Directorio dir = ResolutorRutas.resolver(usuario, path);
+        if (dir == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+        }
+
+        // Verificar duplicado
+        if (dir.contieneArchivo(nombreArchivo, extension)) {
+            return ResponseEntity.status(409).body(Map.of(
+                    "error", "Ya existe un archivo con ese nombre en este directorio"
+            ));
+        }
+
+        // Verificar espacio
+        Archivo nuevo = new Archivo(nombreArchivo, extension, blob, tamano);
+        if (!usuario.puedeAgregarArchivo(nuevo.getTamano())) {
+            return ResponseEntity.status(413).body(Map.of("error", "No hay suficiente espacio disponible"));
+        }
+
+        // Crear archivo
+        dir.agregarArchivo(nuevo);
+        tx.deshacer(() -> {
+            dir.quitarArchivo(nuevo);
+            usuario.recalcularEspacioUsado();
+        });
+        tx.alConfirmar(() -> AlmacenBlobs.retener(blob));
+        usuario.recalcularEspacioUsado();
+        return ResponseEntity.ok(VistaArbol.archivo(nuevo));
+    }
+
+    static ResponseEntity<?> borrarArchivo(Usuario usuario, Transaccion tx, String path, String nombreArchivo,
+                                           String extension, String ifMatch) {
+        Directorio dir = ResolutorRutas.resolver(usuario, path);
+        if (dir == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+        }
+
+        Archivo objetivo = dir.buscarArchivo(nombreArchivo, extension);
+        if (objetivo == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+        }
+        if (!Etiquetas.cumplePrecondicion(ifMatch, Etiquetas.de(objetivo))) {
+            return precondicionFallida(objetivo);
+        }
+
+        // Puede estar en una subcarpeta: se vuelve a poner donde estaba
+        Directorio contenedor = objetivo.getDirectorio();
+        Archivo eliminado = dir.quitarArchivo(nombreArchivo, extension);
+        tx.deshacer(() -> {
+            contenedor.agregarArchivo(eliminado);
+            usuario.recalcularEspacioUsado();
+        });
+        tx.alConfirmar(() -> AlmacenBlobs.liberar(eliminado.getBlob()));
+
+        usuario.recalcularEspacioUsado();
+        return ResponseEntity.ok(Map.of("mensaje", "Archivo eliminado correctamente"));
+    }
+
+    static ResponseEntity<?> modificarArchivo(Usuario usuario, Transaccion tx, String path, String nombreArchivo,
+                                              String blob, long tamano, String ifMatch) {
+        Directorio dir = ResolutorRutas.resolver(usuario, path);
+        if (dir == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio no encontrado"));
+        }
+
+        Archivo archivo = dir.getArchivoPorNombreCompleto(nombreArchivo);
+
+        if (archivo == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Archivo no encontrado"));
+        }
+        if (!Etiquetas.cumplePrecondicion(ifMatch, Etiquetas.de(archivo))) {
+            return precondicionFallida(archivo);
+        }
+
+        String anterior = archivo.getBlob();
+        long tamanoAnterior = archivo.getTamano();
+        dir.actualizarContenido(archivo, blob, tamano);
+        tx.deshacer(() -> {
+            dir.actualizarContenido(archivo, anterior, tamanoAnterior);
+            usuario.recalcularEspacioUsado();
+        });
+        tx.alConfirmar(() -> {
+            AlmacenBlobs.retener(blob);
+            AlmacenBlobs.liberar(anterior);
+        });
+        usuario.recalcularEspacioUsado();
+
+        return ResponseEntity.ok().eTag(Etiquetas.de(archivo)).body(Map.of(
+                "mensaje", "Archivo modificado correctamente",
+                "tamanoActual", archivo.getTamano(),
+                "fechaModificacion", archivo.getFechaModificacion()
+        ));
+    }
+
+    static ResponseEntity<?> moverArchivo(Usuario usuario, Transaccion tx, String origenPath, String destinoPath,
+                                          String nombreArchivo, String extension, String ifMatch) {
+        Directorio origenDir = ResolutorRutas.resolver(usuario, origenPath);
+        Directorio destinoDir = ResolutorRutas.resolver(usuario, destinoPath);
+
+        if (origenDir == null || destinoDir == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
+        }
+
+        // buscar archivo en origen
+        Archivo archivoMovido = origenDir.getArchivo(nombreArchivo, extension);
+
+        if (archivoMovido == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Archivo de origen no encontrado"));
+        }
+        if (!Etiquetas.cumplePrecondicion(ifMatch, Etiquetas.de(archivoMovido))) {
+            return precondicionFallida(archivoMovido);
+        }
+
+        // verificar si ya existe en destino
+        if (destinoDir.contieneArchivo(nombreArchivo, extension)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Ya existe un archivo con ese nombre en el destino"));
+        }
+
+        // mover significa: cambiar de referencia sin clonar; quitar del origen y
+        // agregar al destino (también actualiza las fechas)
+        origenDir.moverArchivo(archivoMovido, destinoDir);
+        tx.deshacer(() -> destinoDir.moverArchivo(archivoMovido, origenDir));
+
+        // recalcular espacio (opcional pero consistente)
+        usuario.recalcularEspacioUsado();
+
+        return ResponseEntity.ok().eTag(Etiquetas.de(archivoMovido)).body(Map.of(
+                "mensaje", "Archivo movido correctamente",
+                "nuevoPath", destinoPath + "/" + nombreArchivo + "." + extension
+        ));
+    }
+
+    static ResponseEntity<?> crearCarpeta(Usuario usuario, Transaccion tx, String ruta, String nombreNueva) {
+        Directorio destino = ResolutorRutas.resolver(usuario, ruta);
+        if (destino == null) {
+            return ResponseEntity.badRequest().body("Ruta no encontrada.");
+        }
+
+        if (destino.contieneSubdirectorio(nombreNueva)) {
+            return ResponseEntity.badRequest().body("Ya existe una carpeta con ese nombre en esta ruta.");
+        }
+
+        Directorio nueva = new Directorio(nombreNueva, destino);
+        destino.agregarSubdirectorio(nueva);
+        tx.deshacer(() -> {
+            destino.quitarSubdirectorio(nueva);
+            ResolutorRutas.invalidar(usuario, ruta + "/" + nombreNueva);
+        });
+
+        return ResponseEntity.ok("Carpeta creada correctamente.");
+    }
+
+    static ResponseEntity<?> eliminarCarpeta(Usuario usuario, Transaccion tx, String path, String ifMatch) {
+        // Separar el último segmento
+        String[] partes = path.split("/");
+        if (partes.length < 2) {
+            return ResponseEntity.badRequest().body(Map.of("error", "No se puede eliminar el directorio raíz"));
+        }
+
+        String nombreCarpeta = partes[partes.length - 1];
+        String pathPadre = String.join("/", Arrays.copyOf(partes, partes.length - 1));
+
+        Directorio padre = ResolutorRutas.resolver(usuario, pathPadre);
+        if (padre == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Directorio padre no encontrado"));
+        }
+
+        Directorio carpeta = padre.getSubdirectorioPorNombre(nombreCarpeta);
+        if (carpeta == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Subdirectorio no encontrado"));
+        }
+        if (!Etiquetas.cumplePrecondicion(ifMatch, Etiquetas.de(carpeta))) {
+            return precondicionFallida(carpeta);
+        }
+        if (!padre.eliminarSubdirectorio(nombreCarpeta)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Subdirectorio no encontrado"));
+        }
+        ResolutorRutas.invalidar(usuario, path);
+        // Vuelve el subárbol entero, con los mismos ids
+        tx.deshacer(() -> {
+            padre.agregarSubdirectorio(carpeta);
+            usuario.recalcularEspacioUsado();
+        });
+        // Se anotan ahora: fuera del árbol, sus copias pendientes ya no se
+        // despliegan si otra operación del lote cambia su origen
+        List<String> blobs = AlmacenBlobs.blobsDe(carpeta);
+        tx.alConfirmar(() -> blobs.forEach(AlmacenBlobs::liberar));
+
+        usuario.recalcularEspacioUsado();
+        return ResponseEntity.ok(Map.of("mensaje", "Carpeta eliminada correctamente"));
+    }
+
+    static ResponseEntity<?> moverCarpeta(Usuario usuario, Transaccion tx, String origenPath, String destinoPath,
+                                          String ifMatch) {
+        // separar el nombre de la carpeta a mover
+        String[] partesOrigen = origenPath.split("/");
+        String nombreCarpeta = partesOrigen[partesOrigen.length - 1];
+        String pathPadreOrigen = String.join("/", Arrays.copyOf(partesOrigen, partesOrigen.length - 1));
+
+        // obtener referencias
+        Directorio padreOrigen = ResolutorRutas.resolver(usuario, pathPadreOrigen);
+        Directorio destino = ResolutorRutas.resolver(usuario, destinoPath);
+
+        if (padreOrigen == null || destino == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio origen o destino no encontrado"));
+        }
+
+        // buscar el subdirectorio a mover
+        Directorio dirAMover = padreOrigen.getSubdirectorioPorNombre(nombreCarpeta);
+
+        if (dirAMover == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Carpeta de origen no encontrada"));
+        }
+        if (!Etiquetas.cumplePrecondicion(ifMatch, Etiquetas.de(dirAMover))) {
+            return precondicionFallida(dirAMover);
+        }
+
+        // una carpeta no puede moverse dentro de sí misma (subiendo por los padres)
+        for (Directorio d = destino; d != null; d = d.getPadre()) {
+            if (d == dirAMover) {
+                return ResponseEntity.badRequest().body(Map.of("error", "No se puede mover una carpeta dentro de sí misma"));
+            }
+        }
+
+        // verificar si ya existe en destino
+        if (destino.contieneSubdirectorio(nombreCarpeta)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Ya existe una carpeta con ese nombre en el destino"));
+        }
+
+        // mover: quitar del padre original y agregar al destino
+        // (también actualiza la referencia al padre y las fechas)
+        padreOrigen.moverSubdirectorio(dirAMover, destino);
+        ResolutorRutas.invalidar(usuario, origenPath);
+        String nuevoPath = destinoPath + "/" + nombreCarpeta;
+        tx.deshacer(() -> {
+            destino.moverSubdirectorio(dirAMover, padreOrigen);
+            ResolutorRutas.invalidar(usuario, nuevoPath);
+        });
+
+        // recalcular espacio
+        usuario.recalcularEspacioUsado();
+
+        return ResponseEntity.ok(Map.of(
+                "mensaje", "Carpeta movida correctamente",
+                "nuevoPath", nuevoPath
+        ));
+    }
+
+    // Copia diferida: la carpeta nueva solo apunta al original y se despliega por
+    // niveles al mirarla o al cambiar el original; el contenido nunca se copia
+    // (los archivos comparten blob). Puede copiarse dentro de sí misma.
+    static ResponseEntity<?> copiarCarpeta(Usuario usuario, Transaccion tx, String origenPath, String destinoPath,
+                                           String nombreNuevo) {
+        Directorio original = ResolutorRutas.resolver(usuario, origenPath);
+        Directorio destino = ResolutorRutas.resolver(usuario, destinoPath);
+
+        if (destino == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Directorio destino no encontrado"));
+        }
+        if (original == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Carpeta de origen no encontrada"));
+        }
+
+        String nombre = nombreNuevo != null && !nombreNuevo.isBlank() ? nombreNuevo : original.getNombre();
+        if (destino.contieneSubdirectorio(nombre)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Ya existe una carpeta con ese nombre en el destino"));
+        }
+        // la copia ocupa lo mismo que el original en la cuota del usuario
+        if (!usuario.puedeAgregarArchivo(original.getTamanoTotal())) {
+            return ResponseEntity.status(413).body(Map.of("error", "No hay suficiente espacio disponible"));
+        }
+
+        Directorio copia = original.copiaDiferida(nombre);
+        destino.agregarCopia(copia);
+        String nuevoPath = destinoPath + "/" + nombre;
+        tx.deshacer(() -> {
+            destino.quitarSubdirectorio(copia);
+            ResolutorRutas.invalidar(usuario, nuevoPath);
+            usuario.recalcularEspacioUsado();
+        });
+        // La copia retiene una vez todo lo que se ve en ella; desplegarla después,
+        // ahora o tras recargar el usuario, no suma más referencias
+        List<String> blobs = AlmacenBlobs.blobsDe(copia);
+        tx.alConfirmar(() -> blobs.forEach(AlmacenBlobs::retener));
+
+        usuario.recalcularEspacioUsado();
+        return ResponseEntity.ok().eTag(Etiquetas.de(copia)).body(Map.of(
+                "mensaje", "Carpeta copiada correctamente",
+                "nuevoPath", nuevoPath
+        ));
+    }
+
+    // If-Match no coincide: se devuelve la versión actual para que el cliente
+    // pueda volver a leer y reintentar
+    static ResponseEntity<?> precondicionFallida(Archivo actual) {
+        return ResponseEntity.status(412).eTag(Etiquetas.de(actual))
+                .body(Map.of("error", "El archivo cambió desde la versión indicada en If-Match"));
+    }
+
+    static ResponseEntity<?> precondicionFallida(Directorio actual) {
+        return ResponseEntity.status(412).eTag(Etiquetas.de(actual))
+                .body(Map.of("error", "La carpeta cambió desde la versión indicada en If-Match"));
+    }
+}
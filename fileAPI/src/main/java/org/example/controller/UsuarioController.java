@@ -2,34 +2,35 @@ package org.example.controller;
 
 import org.example.model.Usuario;
 import org.example.model.Directorio;
+import org.example.util.ColaMutaciones;
+import org.example.util.Etiquetas;
 import org.example.util.JsonUtil;
+import org.example.util.ProyeccionUsuario;
+import org.example.util.VistaArbol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/usuarios")
 public class UsuarioController {
-    // Mapa en memoria solo para referencia rápida
-    private static final Map<String, Usuario> usuarios = new HashMap<>();
-
+    private static final Logger log = LoggerFactory.getLogger(UsuarioController.class);
 
     @PostMapping
     public ResponseEntity<?> crearUsuario(@RequestBody Map<String, Object> request) {
-        String nombre = (String) request.get("nombre");
-        long espacioMaximo = Long.parseLong(request.get("espacioMaximo").toString());
-
-        try {
-            // Verificar si ya existe un usuario con ese nombre
-            Usuario existente = JsonUtil.buscarPorNombre(nombre);
-            return ResponseEntity.status(409).body(Map.of("error", "Ya existe un usuario con ese nombre"));
-        } catch (IOException e) {
-            // No encontrado: se permite crear
+        // Sin nombre no hay qué reservar en el índice
+        if (!(request.get("nombre") instanceof String nombre) || nombre.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Falta el nombre del usuario"));
         }
+        long espacioMaximo = Long.parseLong(request.get("espacioMaximo").toString());
 
         Usuario usuario = new Usuario(nombre, espacioMaximo);
         Directorio root = new Directorio("root", null);
@@ -38,23 +39,57 @@ public class UsuarioController {
         usuario.setDirectorioCompartidos(compartidos);
 
         try {
+            // Verificar si ya existe un usuario con ese nombre (reserva atómica en el índice)
+            if (!JsonUtil.reservarNombre(nombre, usuario.getId())) {
+                return ResponseEntity.status(409).body(Map.of("error", "Ya existe un usuario con ese nombre"));
+            }
+        } catch (IOException e) {
+            log.error("Error al leer el índice de usuarios", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "Error al leer el índice de usuarios"));
+        }
+
+        try {
+            // La respuesta se arma antes: una vez guardado, el usuario queda en la
+            // caché y su cola puede empezar a cambiarlo
+            Map<String, Object> vista = VistaArbol.usuario(usuario);
             JsonUtil.guardarUsuario(usuario);
-            usuarios.put(usuario.getId(), usuario);
-            return ResponseEntity.ok(usuario);
+            return ResponseEntity.ok(vista);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Error al guardar el usuario {}", nombre, e);
+            try {
+                JsonUtil.liberarNombre(nombre, usuario.getId());
+            } catch (IOException ignored) {
+            }
             return ResponseEntity.internalServerError().body(Map.of("error", "Error al guardar el usuario"));
         }
     }
 
 
-    // Login de usuario por nombre en la ruta
+    // Login de usuario por nombre en la ruta. Admite los mismos parámetros de
+    // proyección que GET /usuarios/{id}
     @PostMapping("/login/{nombre}")
-    public ResponseEntity<?> login(@PathVariable String nombre) {
+    public ResponseEntity<?> login(
+            @PathVariable String nombre,
+            @RequestParam(required = false) String campos,
+            @RequestParam(required = false) Integer profundidad,
+            @RequestParam(defaultValue = "true") boolean contenido,
+            HttpServletResponse response) {
+        String id = null;
         try {
-            Usuario usuario = JsonUtil.buscarPorNombre(nombre);
-            usuarios.put(usuario.getId(), usuario);
-            return ResponseEntity.ok(usuario);
+            id = JsonUtil.buscarIdPorNombre(nombre);
+            if (id == null) return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+            // Se carga en su cola, como cualquier otro acceso; allí se comprueba
+            // también que el índice no apunte a otro usuario
+            ResponseEntity<?> respuesta = proyectar(id, nombre, campos, profundidad, contenido, null, response);
+            if (respuesta != null && respuesta.getStatusCode().value() == 404) JsonUtil.liberarNombre(nombre, id);
+            return respuesta;
+        } catch (FileNotFoundException e) {
+            // El archivo desapareció: se corrige el índice
+            try {
+                JsonUtil.liberarNombre(nombre, id);
+            } catch (IOException ignored) {
+            }
+            return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
         } catch (IOException e) {
             return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
         }
@@ -62,14 +97,73 @@ public class UsuarioController {
 
 
 
-    // Endpoint para obtener usuario por ID
+    // Endpoint para obtener usuario por ID.
+    // campos: lista separada por comas de campos de primer nivel (por defecto todos)
+    // profundidad: niveles del árbol a incluir (0 = solo las raíces; por defecto todo)
+    // contenido: incluir el contenido de cada archivo (por defecto sí, como antes)
     @GetMapping("/{id}")
-    public ResponseEntity<Usuario> getUsuario(@PathVariable String id) {
+    public ResponseEntity<?> getUsuario(
+            @PathVariable String id,
+            @RequestParam(required = false) String campos,
+            @RequestParam(required = false) Integer profundidad,
+            @RequestParam(defaultValue = "true") boolean contenido,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            HttpServletResponse response) {
         try {
-            Usuario usuario = JsonUtil.cargarUsuario(id);
-            return ResponseEntity.ok(usuario);
+            // Si no existe, la carga dentro de la cola falla y se responde 404
+            return proyectar(id, null, campos, profundidad, contenido, ifNoneMatch, response);
         } catch (IOException e) {
             return ResponseEntity.notFound().build();
         }
     }
-} 
\ No newline at end of file
+
+    // Dentro de la cola del usuario solo se toma la foto de lo pedido, para no
+    // leer el árbol a medio modificar; el JSON (y el contenido de los archivos)
+    // se escribe después directo sobre la respuesta, ya fuera de la cola.
+    // Con nombre, el usuario de ese id tiene que llamarse así (si no, 404)
+    private ResponseEntity<?> proyectar(String id, String nombre, String campos, Integer profundidad,
+                                        boolean contenido, String ifNoneMatch,
+                                        HttpServletResponse response) throws IOException {
+        ProyeccionUsuario proyeccion;
+        try {
+            proyeccion = ProyeccionUsuario.de(campos, profundidad, contenido);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", e.getMessage(),
+                    "camposValidos", ProyeccionUsuario.CAMPOS));
+        }
+
+        Proyectado proyectado = ColaMutaciones.leerPorId(id, usuario -> {
+            if (nombre != null && !nombre.equals(usuario.getNombre())) return null;
+            String etag = Etiquetas.de(usuario, proyeccion.variante());
+            if (Etiquetas.noModificado(ifNoneMatch, etag)) return new Proyectado(etag, null);
+            return new Proyectado(etag, proyeccion.tomar(usuario));
+        });
+        if (proyectado == null) return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+        if (proyectado.foto() == null) return ResponseEntity.status(304).eTag(proyectado.etag()).build();
+
+        response.setHeader("ETag", proyectado.etag());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        proyeccion.escribir(proyectado.foto(), response.getOutputStream());
+        return null; // la respuesta ya se escribió
+    }
+
+    // Lo que sale de la cola para proyectar: el ETag y, si hace falta, la foto
+    private record Proyectado(String etag, ProyeccionUsuario.Foto foto) {
+    }
+
+    // Copia del usuario en JSON legible; en disco se guarda en binario (Smile)
+    @GetMapping("/{id}/exportar")
+    public ResponseEntity<?> exportarUsuario(@PathVariable String id) {
+        try {
+            byte[] json = ColaMutaciones.leerPorId(id, JsonUtil::exportarJson);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("Content-Disposition", "attachment; filename=\"usuario_" + id + ".json\"")
+                    .body(json);
+        } catch (IOException e) {
+            return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+        }
+    }
+}
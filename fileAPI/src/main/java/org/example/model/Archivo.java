@@ -1,6 +1,7 @@
 package org.example.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -9,10 +10,21 @@ public class Archivo {
     private String id;
     private String nombre;
     private String extension;
-    private String contenido;
+    private String blob; // hash del contenido en el almacén de blobs (null = vacío)
     private LocalDateTime fechaCreacion;
     private LocalDateTime fechaModificacion;
     private long tamano;
+    // Sube al cambiar el contenido o moverlo; junto con el id da su ETag
+    private long version;
+
+    // Contenido embebido de documentos guardados antes del almacén de blobs;
+    // se migra al cargar el usuario y nunca se vuelve a escribir en el JSON
+    @JsonIgnore
+    private String contenidoLegado;
+
+    // Directorio que lo contiene; lo mantiene Directorio, no se serializa
+    @JsonIgnore
+    private Directorio directorio;
 
     public Archivo() {
         this.id = UUID.randomUUID().toString();
@@ -20,11 +32,12 @@ public class Archivo {
         this.fechaModificacion = LocalDateTime.now();
     }
 
-    public Archivo(String nombre, String extension, String contenido) {
+    public Archivo(String nombre, String extension, String blob, long tamano) {
         this();
         this.nombre = nombre;
         this.extension = extension;
-        setContenido(contenido); // Llama al setter que actualiza tamano y fecha
+        this.blob = blob;
+        this.tamano = tamano;
     }
 
     public String getId() { return id; }
@@ -33,12 +46,35 @@ public class Archivo {
     public void setNombre(String nombre) { this.nombre = nombre; }
     public String getExtension() { return extension; }
     public void setExtension(String extension) { this.extension = extension; }
-    public String getContenido() { return contenido; }
+    public String getBlob() { return blob; }
+    public void setBlob(String blob) { this.blob = blob; }
 
-    public void setContenido(String contenido) {
-        this.contenido = contenido;
-        this.tamano = contenido != null ? contenido.getBytes().length : 0;
+    // Reemplaza el contenido por otro blob ya guardado
+    public void actualizarContenido(String blob, long tamano) {
+        this.blob = blob;
+        this.tamano = tamano;
         this.fechaModificacion = LocalDateTime.now(); // Actualiza automáticamente
+        this.version++;
+    }
+
+    // Otro archivo con el mismo contenido (comparten el blob), para las copias de carpetas
+    Archivo copiar(String id, LocalDateTime fecha) {
+        Archivo copia = new Archivo(nombre, extension, blob, tamano);
+        copia.id = id;
+        copia.fechaCreacion = fecha;
+        copia.fechaModificacion = fecha;
+        return copia;
+    }
+
+    @JsonIgnore
+    public String getContenidoLegado() { return contenidoLegado; }
+
+    @JsonProperty("contenido")
+    private void setContenidoLegado(String contenido) { this.contenidoLegado = contenido; }
+
+    public void migrarContenido(String blob) {
+        this.blob = blob;
+        this.contenidoLegado = null;
     }
 
     public LocalDateTime getFechaCreacion() { return fechaCreacion; }
@@ -47,6 +83,16 @@ public class Archivo {
     public void setFechaModificacion(LocalDateTime fechaModificacion) { this.fechaModificacion = fechaModificacion; }
     public long getTamano() { return tamano; }
     public void setTamano(long tamano) { this.tamano = tamano; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    void nuevaVersion() {
+        version++;
+    }
+
+    @JsonIgnore
+    public Directorio getDirectorio() { return directorio; }
+    void setDirectorio(Directorio directorio) { this.directorio = directorio; }
 
     @JsonIgnore
     public String getNombreCompleto() {
@@ -0,0 +1,133 @@
+package org.example.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+// Registro de una modificación del árbol de un usuario, tal como se anota en su
+// diario (una línea JSON por cambio). Los nodos se identifican por id, así cada
+// registro ocupa lo que ocupa el cambio y no el documento entero.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Cambio {
+    public static final String AGREGAR_ARCHIVO = "AF";
+    public static final String ELIMINAR_ARCHIVO = "EA";
+    public static final String MODIFICAR_ARCHIVO = "MA";
+    public static final String MOVER_ARCHIVO = "MF";
+    public static final String AGREGAR_DIRECTORIO = "AD";
+    public static final String ELIMINAR_DIRECTORIO = "ED";
+    public static final String MOVER_DIRECTORIO = "MD";
+    // Como AGREGAR_DIRECTORIO, pero la carpeta es una copia diferida: el registro
+    // solo lleva la referencia a su origen
+    public static final String COPIAR_DIRECTORIO = "CD";
+    public static final String RESERVA = "RE";
+
+    private long secuencia;
+    private String tipo;
+    private String dir;      // directorio afectado (el de origen en los movimientos)
+    private String id;       // archivo o directorio afectado
+    private String destino;  // directorio de destino en los movimientos
+    private Archivo archivo;
+    private Directorio directorio;
+    private String blob;
+    private Long tamano;
+    private Long reservado;
+    private LocalDateTime fecha;
+
+    // El subárbol quitado, para quien mantiene índices en memoria; no va al diario
+    @JsonIgnore
+    private Directorio quitado;
+
+    public Cambio() {
+    }
+
+    private Cambio(String tipo, String dir, LocalDateTime fecha) {
+        this.tipo = tipo;
+        this.dir = dir;
+        this.fecha = fecha;
+    }
+
+    public static Cambio agregarArchivo(Directorio dir, Archivo archivo, LocalDateTime fecha) {
+        Cambio c = new Cambio(AGREGAR_ARCHIVO, dir.getId(), fecha);
+        c.archivo = archivo;
+        return c;
+    }
+
+    public static Cambio eliminarArchivo(Directorio dir, Archivo archivo, LocalDateTime fecha) {
+        Cambio c = new Cambio(ELIMINAR_ARCHIVO, dir.getId(), fecha);
+        c.id = archivo.getId();
+        return c;
+    }
+
+    public static Cambio modificarArchivo(Directorio dir, Archivo archivo, LocalDateTime fecha) {
+        Cambio c = new Cambio(MODIFICAR_ARCHIVO, dir.getId(), fecha);
+        c.id = archivo.getId();
+        c.blob = archivo.getBlob();
+        c.tamano = archivo.getTamano();
+        return c;
+    }
+
+    public static Cambio moverArchivo(Directorio origen, Archivo archivo, Directorio destino, LocalDateTime fecha) {
+        Cambio c = new Cambio(MOVER_ARCHIVO, origen.getId(), fecha);
+        c.id = archivo.getId();
+        c.destino = destino.getId();
+        return c;
+    }
+
+    public static Cambio agregarDirectorio(Directorio dir, Directorio sub, LocalDateTime fecha) {
+        Cambio c = new Cambio(AGREGAR_DIRECTORIO, dir.getId(), fecha);
+        c.directorio = sub;
+        return c;
+    }
+
+    public static Cambio copiarDirectorio(Directorio dir, Directorio copia, LocalDateTime fecha) {
+        Cambio c = new Cambio(COPIAR_DIRECTORIO, dir.getId(), fecha);
+        c.directorio = copia;
+        return c;
+    }
+
+    public static Cambio eliminarDirectorio(Directorio dir, Directorio sub, LocalDateTime fecha) {
+        Cambio c = new Cambio(ELIMINAR_DIRECTORIO, dir.getId(), fecha);
+        c.id = sub.getId();
+        c.quitado = sub;
+        return c;
+    }
+
+    public static Cambio moverDirectorio(Directorio origen, Directorio sub, Directorio destino, LocalDateTime fecha) {
+        Cambio c = new Cambio(MOVER_DIRECTORIO, origen.getId(), fecha);
+        c.id = sub.getId();
+        c.destino = destino.getId();
+        return c;
+    }
+
+    public static Cambio reserva(long reservado) {
+        Cambio c = new Cambio(RESERVA, null, LocalDateTime.now());
+        c.reservado = reservado;
+        return c;
+    }
+
+    public long getSecuencia() { return secuencia; }
+    public void setSecuencia(long secuencia) { this.secuencia = secuencia; }
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+    public String getDir() { return dir; }
+    public void setDir(String dir) { this.dir = dir; }
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getDestino() { return destino; }
+    public void setDestino(String destino) { this.destino = destino; }
+    public Archivo getArchivo() { return archivo; }
+    public void setArchivo(Archivo archivo) { this.archivo = archivo; }
+    public Directorio getDirectorio() { return directorio; }
+    public void setDirectorio(Directorio directorio) { this.directorio = directorio; }
+    public String getBlob() { return blob; }
+    public void setBlob(String blob) { this.blob = blob; }
+    public Long getTamano() { return tamano; }
+    public void setTamano(Long tamano) { this.tamano = tamano; }
+    public Long getReservado() { return reservado; }
+    public void setReservado(Long reservado) { this.reservado = reservado; }
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+    @JsonIgnore
+    public Directorio getQuitado() { return quitado; }
+}
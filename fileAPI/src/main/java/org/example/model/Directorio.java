@@ -1,12 +1,19 @@
 package org.example.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class Directorio {
     private String id;
@@ -15,10 +22,59 @@ public class Directorio {
     private LocalDateTime fechaModificacion;
     private List<Archivo> archivos;
     private List<Directorio> subdirectorios;
+    // Sube con cada cambio en el subárbol (se propaga por los padres); junto con
+    // el id identifica el estado de la carpeta para los ETag
+    private long version;
 
     @JsonIgnore
     private Directorio padre;
 
+    // Suma de los tamaños de todo el subárbol. Se mantiene al agregar, quitar o
+    // modificar a través de los métodos de esta clase, propagando la diferencia
+    // hacia arriba por la cadena de padres; al deserializar se arma de abajo arriba.
+    @JsonIgnore
+    private long tamanoTotal;
+
+    // Nodos del subárbol que hay en memoria (esta carpeta incluida), mantenidos
+    // igual que tamanoTotal. Una copia pendiente cuenta solo ella misma. Con esto
+    // la caché estima lo que ocupa el árbol sin recorrerlo.
+    @JsonIgnore
+    private long archivosEnMemoria;
+    @JsonIgnore
+    private long carpetasEnMemoria = 1;
+
+    // Índices por nombre ("nombre.extension" para archivos) que acompañan a las
+    // listas; las listas conservan el orden de inserción para los listados y el JSON.
+    // Si un documento viejo trae nombres repetidos, el índice apunta al primero.
+    @JsonIgnore
+    private final Map<String, Archivo> archivosPorNombre = new HashMap<>();
+    @JsonIgnore
+    private final Map<String, Directorio> subdirectoriosPorNombre = new HashMap<>();
+
+    // Recibe los cambios del árbol; solo se usa en las raíces
+    @JsonIgnore
+    private Consumer<Cambio> observador;
+
+    // Copia diferida: mientras no se despliega, la carpeta no tiene hijos propios
+    // y su contenido es el de origen, que nunca es a su vez una copia pendiente.
+    // Al desplegarse toma los archivos de origen (comparten blob) y por cada
+    // subcarpeta otra copia pendiente; antes de cambiar el origen, o cualquier
+    // carpeta de debajo, se despliegan las copias que leen de él. Todo esto pasa
+    // bajo el cerrojo del usuario (en su franja de la cola): una copia solo lee
+    // de carpetas del mismo usuario, así que no hace falta otro monitor.
+    @JsonIgnore
+    private Directorio origen;
+    // La referencia leída del disco, hasta que se enlaza con su origen al cargar
+    @JsonIgnore
+    private Copia copiaLeida;
+    // Copias pendientes cuyo origen es esta carpeta
+    @JsonIgnore
+    private Set<Directorio> copias;
+
+    // Lo que se guarda de una copia pendiente: el id de su origen y su tamaño
+    public record Copia(String origen, long tamano) {
+    }
+
     public Directorio() {
         this.id = UUID.randomUUID().toString();
         this.fechaCreacion = LocalDateTime.now();
@@ -45,79 +101,575 @@ public class Directorio {
     public LocalDateTime getFechaModificacion() { return fechaModificacion; }
     public void setFechaModificacion(LocalDateTime fechaModificacion) { this.fechaModificacion = fechaModificacion; }
 
-    public List<Archivo> getArchivos() { return archivos; }
-    public void setArchivos(List<Archivo> archivos) { this.archivos = archivos; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    // Vistas de solo lectura: los cambios pasan por los métodos de abajo, que
+    // mantienen los índices y los tamaños. Los getters no despliegan nada: en una
+    // copia pendiente vienen vacíos (ver verArchivos y verSubdirectorios)
+    public List<Archivo> getArchivos() {
+        return Collections.unmodifiableList(archivos);
+    }
+    public void setArchivos(List<Archivo> archivos) {
+        if (copiaLeida != null) return;
+        this.archivos = new ArrayList<>(archivos);
+        archivosPorNombre.clear();
+        for (Archivo a : this.archivos) {
+            a.setDirectorio(this);
+            archivosPorNombre.putIfAbsent(a.getNombreCompleto(), a);
+        }
+        recalcularLocal();
+    }
+
+    // Jackson entrega los hijos ya construidos, así que aquí se enlazan y se suman
+    public List<Directorio> getSubdirectorios() {
+        return Collections.unmodifiableList(subdirectorios);
+    }
+    public void setSubdirectorios(List<Directorio> subdirectorios) {
+        if (copiaLeida != null) return;
+        this.subdirectorios = new ArrayList<>(subdirectorios);
+        subdirectoriosPorNombre.clear();
+        for (Directorio sub : this.subdirectorios) {
+            sub.padre = this;
+            subdirectoriosPorNombre.putIfAbsent(sub.getNombre(), sub);
+        }
+        recalcularLocal();
+    }
+
+    // Lo que se guarda en disco: una copia pendiente solo lleva la referencia a su
+    // origen y no sus listas (ver el mixin de util.DirectorioGuardado)
+    @JsonIgnore
+    public Copia getCopia() {
+        Directorio o = origen;
+        return o != null ? new Copia(o.id, tamanoTotal) : copiaLeida;
+    }
+
+    // Si al guardar se cruzó un despliegue y vienen también las listas, manda la copia
+    @JsonProperty("copia")
+    private void setCopia(Copia copia) {
+        this.copiaLeida = copia;
+        this.archivos = new ArrayList<>();
+        this.subdirectorios = new ArrayList<>();
+        archivosPorNombre.clear();
+        subdirectoriosPorNombre.clear();
+        propagarTamano(copia.tamano() - tamanoTotal);
+        propagarNodos(-archivosEnMemoria, 1 - carpetasEnMemoria);
+    }
+
+    @JsonIgnore
+    public List<Archivo> getArchivosGuardados() {
+        return esCopiaPendiente() ? null : Collections.unmodifiableList(archivos);
+    }
+
+    @JsonIgnore
+    public List<Directorio> getSubdirectoriosGuardados() {
+        return esCopiaPendiente() ? null : Collections.unmodifiableList(subdirectorios);
+    }
+
+    // El contenido tal como se ve: una copia pendiente se despliega antes. Solo
+    // desde la franja del usuario, con su cerrojo tomado
+    public List<Archivo> verArchivos() {
+        desplegar();
+        return getArchivos();
+    }
 
-    public List<Directorio> getSubdirectorios() { return subdirectorios; }
-    public void setSubdirectorios(List<Directorio> subdirectorios) { this.subdirectorios = subdirectorios; }
+    public List<Directorio> verSubdirectorios() {
+        desplegar();
+        return getSubdirectorios();
+    }
+
+    // Lo que darían verArchivos().size() y verSubdirectorios().size(), pero sin
+    // desplegar: una copia pendiente tiene los de su origen, que nunca es otra
+    // copia pendiente
+    public int cuantosArchivos() {
+        Directorio o = origen;
+        return o != null ? o.archivos.size() : archivos.size();
+    }
+
+    public int cuantosSubdirectorios() {
+        Directorio o = origen;
+        return o != null ? o.subdirectorios.size() : subdirectorios.size();
+    }
+
+    public void setObservador(Consumer<Cambio> observador) { this.observador = observador; }
 
     public Directorio getPadre() { return padre; }
     public void setPadre(Directorio padre) { this.padre = padre; }
 
+    // Ruta desde la raíz ("root/a/b"), subiendo por los padres
+    @JsonIgnore
+    public String getRuta() {
+        if (padre == null) return nombre;
+        return padre.getRuta() + "/" + nombre;
+    }
+
+    public Archivo getArchivo(String nombre, String extension) {
+        desplegar();
+        return archivosPorNombre.get(nombre + "." + extension);
+    }
+
+    public Archivo getArchivoPorNombreCompleto(String nombreCompleto) {
+        desplegar();
+        return archivosPorNombre.get(nombreCompleto);
+    }
+
+    public boolean contieneArchivo(String nombre, String extension) {
+        desplegar();
+        return archivosPorNombre.containsKey(nombre + "." + extension);
+    }
+
+    public boolean contieneSubdirectorio(String nombre) {
+        desplegar();
+        return subdirectoriosPorNombre.containsKey(nombre);
+    }
+
     public void agregarArchivo(Archivo archivo) {
+        LocalDateTime ahora = LocalDateTime.now();
+        enlazarArchivo(archivo, ahora);
+        anotar(Cambio.agregarArchivo(this, archivo, ahora));
+    }
+
+    // Quita este archivo concreto (no busca en subdirectorios)
+    public boolean quitarArchivo(Archivo archivo) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!desenlazarArchivo(archivo, ahora)) return false;
+        anotar(Cambio.eliminarArchivo(this, archivo, ahora));
+        return true;
+    }
+
+    // Cambia el contenido de un archivo de este directorio y ajusta los tamaños
+    public void actualizarContenido(Archivo archivo, String blob, long tamano) {
+        separarCopias();
+        long diferencia = tamano - archivo.getTamano();
+        archivo.actualizarContenido(blob, tamano);
+        propagarTamano(diferencia);
+        nuevaVersion();
+        anotar(Cambio.modificarArchivo(this, archivo, archivo.getFechaModificacion()));
+    }
+
+    // Mueve un archivo de este directorio a otro del mismo árbol (un solo cambio)
+    public boolean moverArchivo(Archivo archivo, Directorio destino) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!desenlazarArchivo(archivo, ahora)) return false;
+        destino.enlazarArchivo(archivo, ahora);
+        archivo.setFechaModificacion(ahora);
+        archivo.nuevaVersion();
+        anotar(Cambio.moverArchivo(this, archivo, destino, ahora));
+        return true;
+    }
+
+    public void agregarSubdirectorio(Directorio sub) {
+        LocalDateTime ahora = LocalDateTime.now();
+        registrarCopias(sub);
+        enlazarSubdirectorio(sub, ahora);
+        anotar(Cambio.agregarDirectorio(this, sub, ahora));
+    }
+
+    // Agrega una copia hecha con copiaDiferida. Se registra antes de enlazarla:
+    // si el destino está dentro del origen, la copia se despliega hasta el destino
+    // y nunca se contiene a sí misma.
+    public void agregarCopia(Directorio copia) {
+        LocalDateTime ahora = LocalDateTime.now();
+        registrarCopias(copia);
+        enlazarSubdirectorio(copia, ahora);
+        anotar(Cambio.copiarDirectorio(this, copia, ahora));
+    }
+
+    public boolean quitarSubdirectorio(Directorio sub) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!desenlazarSubdirectorio(sub, ahora)) return false;
+        soltarCopias(sub);
+        anotar(Cambio.eliminarDirectorio(this, sub, ahora));
+        return true;
+    }
+
+    public boolean moverSubdirectorio(Directorio sub, Directorio destino) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!desenlazarSubdirectorio(sub, ahora)) return false;
+        destino.enlazarSubdirectorio(sub, ahora);
+        sub.fechaModificacion = ahora;
+        anotar(Cambio.moverDirectorio(this, sub, destino, ahora));
+        return true;
+    }
+
+    // Las operaciones de abajo cambian la estructura sin anotar nada
+
+    private void enlazarArchivo(Archivo archivo, LocalDateTime fecha) {
+        antesDeCambiar();
         this.archivos.add(archivo);
-        this.fechaModificacion = LocalDateTime.now();
+        archivo.setDirectorio(this);
+        archivosPorNombre.putIfAbsent(archivo.getNombreCompleto(), archivo);
+        this.fechaModificacion = fecha;
+        propagarTamano(archivo.getTamano());
+        propagarNodos(1, 0);
+        nuevaVersion();
+    }
+
+    private boolean desenlazarArchivo(Archivo archivo, LocalDateTime fecha) {
+        antesDeCambiar();
+        if (!archivos.remove(archivo)) return false;
+        desindexar(archivo);
+        archivo.setDirectorio(null);
+        this.fechaModificacion = fecha;
+        propagarTamano(-archivo.getTamano());
+        propagarNodos(-1, 0);
+        nuevaVersion();
+        return true;
+    }
+
+    private void enlazarSubdirectorio(Directorio sub, LocalDateTime fecha) {
+        antesDeCambiar();
+        this.subdirectorios.add(sub);
+        subdirectoriosPorNombre.putIfAbsent(sub.getNombre(), sub);
+        sub.padre = this;
+        this.fechaModificacion = fecha;
+        propagarTamano(sub.tamanoTotal);
+        propagarNodos(sub.archivosEnMemoria, sub.carpetasEnMemoria);
+        nuevaVersion();
+    }
+
+    private boolean desenlazarSubdirectorio(Directorio sub, LocalDateTime fecha) {
+        antesDeCambiar();
+        if (!subdirectorios.remove(sub)) return false;
+        desindexar(sub);
+        sub.padre = null;
+        this.fechaModificacion = fecha;
+        propagarTamano(-sub.tamanoTotal);
+        propagarNodos(-sub.archivosEnMemoria, -sub.carpetasEnMemoria);
+        nuevaVersion();
+        return true;
+    }
+
+    // El observador solo lo tiene la raíz del árbol (lo pone Usuario); los
+    // subárboles sueltos, como una copia en construcción, no anotan nada
+    private void anotar(Cambio cambio) {
+        Directorio raiz = this;
+        while (raiz.padre != null) raiz = raiz.padre;
+        if (raiz.observador != null) raiz.observador.accept(cambio);
     }
 
     public Directorio getSubdirectorioPorNombre(String nombre) {
-        return subdirectorios.stream()
-                .filter(d -> d.getNombre().equals(nombre))
-                .findFirst()
-                .orElse(null);
+        desplegar();
+        return subdirectoriosPorNombre.get(nombre);
     }
 
+    // Si había otro con el mismo nombre (documentos viejos), pasa a ser el indexado
+    private void desindexar(Archivo archivo) {
+        String clave = archivo.getNombreCompleto();
+        if (archivosPorNombre.get(clave) != archivo) return;
+        archivosPorNombre.remove(clave);
+        for (Archivo a : archivos) {
+            if (a.getNombreCompleto().equals(clave)) {
+                archivosPorNombre.put(clave, a);
+                break;
+            }
+        }
+    }
+
+    private void desindexar(Directorio sub) {
+        String clave = sub.getNombre();
+        if (subdirectoriosPorNombre.get(clave) != sub) return;
+        subdirectoriosPorNombre.remove(clave);
+        for (Directorio d : subdirectorios) {
+            if (d.getNombre().equals(clave)) {
+                subdirectoriosPorNombre.put(clave, d);
+                break;
+            }
+        }
+    }
+
+    // O(1): lee el agregado mantenido
     @JsonIgnore
     public long getTamanoTotal() {
-        long total = archivos.stream().mapToLong(Archivo::getTamano).sum();
+        return tamanoTotal;
+    }
+
+    @JsonIgnore
+    public long getArchivosEnMemoria() {
+        return archivosEnMemoria;
+    }
+
+    @JsonIgnore
+    public long getCarpetasEnMemoria() {
+        return carpetasEnMemoria;
+    }
+
+    // Recorre todo el subárbol sumando los archivos, sin mirar los agregados.
+    // Solo para verificar la consistencia; corrige los agregados que no cuadren
+    // y devuelve cuántos directorios estaban mal.
+    public int verificarTamanos() {
+        if (esCopiaPendiente()) return 0;
+        int errores = 0;
+        long total = 0;
+        for (Archivo a : archivos) total += a.getTamano();
         for (Directorio sub : subdirectorios) {
-            total += sub.getTamanoTotal();
+            errores += sub.verificarTamanos();
+            total += sub.tamanoTotal;
+            sub.padre = this;
         }
-        return total;
+        if (total != tamanoTotal) {
+            tamanoTotal = total;
+            errores++;
+        }
+        return errores;
     }
-    public boolean eliminarArchivo(String nombre, String extension) {
-        Iterator<Archivo> iterator = archivos.iterator();
-        while (iterator.hasNext()) {
-            Archivo archivo = iterator.next();
-            if (archivo.getNombre().equals(nombre) && archivo.getExtension().equals(extension)) {
-                iterator.remove();
-                this.fechaModificacion = LocalDateTime.now();
-                return true;
+
+    private void recalcularLocal() {
+        long total = 0;
+        long nArchivos = 0;
+        long nCarpetas = 1;
+        if (archivos != null) {
+            for (Archivo a : archivos) total += a.getTamano();
+            nArchivos += archivos.size();
+        }
+        if (subdirectorios != null) {
+            for (Directorio sub : subdirectorios) {
+                total += sub.tamanoTotal;
+                nArchivos += sub.archivosEnMemoria;
+                nCarpetas += sub.carpetasEnMemoria;
             }
         }
+        propagarTamano(total - tamanoTotal);
+        propagarNodos(nArchivos - archivosEnMemoria, nCarpetas - carpetasEnMemoria);
+    }
+
+    // Un cambio en el subárbol cambia lo que devuelve listar cualquiera de los
+    // ancestros, así que la versión sube en toda la cadena
+    private void nuevaVersion() {
+        for (Directorio d = this; d != null; d = d.padre) {
+            d.version++;
+        }
+    }
+
+    private void propagarTamano(long diferencia) {
+        if (diferencia == 0) return;
+        for (Directorio d = this; d != null; d = d.padre) {
+            d.tamanoTotal += diferencia;
+        }
+    }
+
+    private void propagarNodos(long archivos, long carpetas) {
+        if (archivos == 0 && carpetas == 0) return;
+        for (Directorio d = this; d != null; d = d.padre) {
+            d.archivosEnMemoria += archivos;
+            d.carpetasEnMemoria += carpetas;
+        }
+    }
+
+    // Recorre todos los archivos del subárbol
+    public void paraCadaArchivo(Consumer<Archivo> accion) {
+        desplegar();
+        archivos.forEach(accion);
+        for (Directorio sub : subdirectorios) {
+            sub.paraCadaArchivo(accion);
+        }
+    }
+
+    // Igual, pero sin desplegar: las copias pendientes no tienen archivos propios
+    public void paraCadaArchivoDesplegado(Consumer<Archivo> accion) {
+        if (esCopiaPendiente()) return;
+        archivos.forEach(accion);
+        for (Directorio sub : subdirectorios) {
+            sub.paraCadaArchivoDesplegado(accion);
+        }
+    }
+
+    // Cada archivo tal como se ve, también sin desplegar nada: una copia pendiente
+    // recorre su origen (la que todavía no está enlazada no tiene qué recorrer)
+    public void paraCadaArchivoVisible(Consumer<Archivo> accion) {
+        Directorio o = origen;
+        if (o != null) {
+            o.paraCadaArchivoVisible(accion);
+            return;
+        }
+        if (copiaLeida != null) return;
+        archivos.forEach(accion);
+        for (Directorio sub : subdirectorios) {
+            sub.paraCadaArchivoVisible(accion);
+        }
+    }
+
+    // Busca como quitarArchivo: primero aquí y luego en los subdirectorios, en orden
+    public Archivo buscarArchivo(String nombre, String extension) {
+        Archivo archivo = getArchivo(nombre, extension);
+        if (archivo != null) return archivo;
+        for (Directorio sub : subdirectorios) {
+            Archivo encontrado = sub.buscarArchivo(nombre, extension);
+            if (encontrado != null) return encontrado;
+        }
+        return null;
+    }
+
+    public boolean eliminarArchivo(String nombre, String extension) {
+        return quitarArchivo(nombre, extension) != null;
+    }
+
+    // Igual que eliminarArchivo, pero devuelve el archivo quitado (o null)
+    public Archivo quitarArchivo(String nombre, String extension) {
+        Archivo archivo = getArchivo(nombre, extension);
+        if (archivo != null) {
+            quitarArchivo(archivo);
+            return archivo;
+        }
 
-        // Intentar eliminar en subdirectorios
+        // Intentar eliminar en subdirectorios (getArchivo ya desplegó esta carpeta)
         for (Directorio sub : subdirectorios) {
-            if (sub.eliminarArchivo(nombre, extension)) {
+            Archivo quitado = sub.quitarArchivo(nombre, extension);
+            if (quitado != null) {
                 this.fechaModificacion = LocalDateTime.now();
-                return true;
+                return quitado;
             }
         }
 
-        return false; // No encontrado
+        return null; // No encontrado
     }
     public boolean eliminarSubdirectorio(String path) {
         String[] partes = path.split("/", 2);
-        String nombreActual = partes[0];
-
-        for (Iterator<Directorio> it = subdirectorios.iterator(); it.hasNext(); ) {
-            Directorio sub = it.next();
-            if (sub.getNombre().equals(nombreActual)) {
-                if (partes.length == 1) {
-                    // Es el directorio a eliminar
-                    it.remove();
-                    this.fechaModificacion = LocalDateTime.now();
-                    return true;
-                } else {
-                    // Profundizar en la ruta
-                    boolean eliminado = sub.eliminarSubdirectorio(partes[1]);
-                    if (eliminado) {
-                        this.fechaModificacion = LocalDateTime.now();
-                    }
-                    return eliminado;
-                }
-            }
+        Directorio sub = getSubdirectorioPorNombre(partes[0]);
+        if (sub == null) return false;
+
+        if (partes.length == 1) {
+            // Es el directorio a eliminar
+            return quitarSubdirectorio(sub);
+        }
+
+        // Profundizar en la ruta
+        boolean eliminado = sub.eliminarSubdirectorio(partes[1]);
+        if (eliminado) {
+            this.fechaModificacion = LocalDateTime.now();
         }
-        return false;
+        return eliminado;
+    }
+
+
+    // --- Copias diferidas ---
+
+    // Una copia de esta carpeta con otro nombre, todavía sin hijos propios: no
+    // cuesta nada hasta que alguien mire dentro o cambie el origen
+    public Directorio copiaDiferida(String nombreCopia) {
+        Directorio copia = new Directorio(nombreCopia, null);
+        copia.origen = origen != null ? origen : this;
+        copia.tamanoTotal = tamanoTotal;
+        return copia;
+    }
+
+    public boolean esCopiaPendiente() {
+        return origen != null || copiaLeida != null;
+    }
+
+    // Leída del disco y todavía sin enlazar con su origen
+    public boolean esCopiaSinEnlazar() {
+        return copiaLeida != null;
     }
 
+    // Al cargar: la referencia leída del disco pasa a apuntar a su origen
+    public void enlazarOrigen(Directorio o) {
+        origen = o;
+        copiaLeida = null;
+        o.registrar(this);
+    }
+
+    // Al cargar, si el origen ya no existe: queda como carpeta vacía
+    public void descartarCopia() {
+        copiaLeida = null;
+        propagarTamano(-tamanoTotal);
+    }
+
+    // Lo que toca una carpeta antes de cambiarla
+    private void antesDeCambiar() {
+        desplegar();
+        separarCopias();
+    }
+
+    // Toma el contenido de origen: los archivos se copian (comparten blob) y cada
+    // subcarpeta pasa a ser otra copia pendiente. Los ids salen del id de la copia
+    // y del original, así el mismo despliegue da los mismos ids al reproducir el
+    // diario. No retiene blobs: la copia los retuvo al crearse (ver
+    // AlmacenBlobs.retenerArbol), y desplegarla otra vez tras una recarga no
+    // debe volver a contarlos.
+    private void desplegar() {
+        Directorio o = origen;
+        if (o == null) return;
+        List<Archivo> nuevos = new ArrayList<>(o.archivos.size());
+        for (Archivo a : o.archivos) {
+            nuevos.add(a.copiar(idCopia(a.getId()), fechaCreacion));
+        }
+        List<Directorio> subs = new ArrayList<>(o.subdirectorios.size());
+        for (Directorio sub : o.subdirectorios) {
+            Directorio copia = new Directorio(sub.nombre, this);
+            copia.id = idCopia(sub.id);
+            copia.fechaCreacion = fechaCreacion;
+            copia.fechaModificacion = fechaCreacion;
+            copia.tamanoTotal = sub.tamanoTotal;
+            copia.origen = sub.origen != null ? sub.origen : sub;
+            copia.origen.registrar(copia);
+            subs.add(copia);
+        }
+
+        archivos = nuevos;
+        for (Archivo a : nuevos) {
+            a.setDirectorio(this);
+            archivosPorNombre.putIfAbsent(a.getNombreCompleto(), a);
+        }
+        subdirectorios = subs;
+        for (Directorio sub : subs) subdirectoriosPorNombre.putIfAbsent(sub.nombre, sub);
+        propagarNodos(nuevos.size(), subs.size());
+        o.desregistrar(this);
+        origen = null;
+    }
+
+    private String idCopia(String idOriginal) {
+        return UUID.nameUUIDFromBytes((id + "/" + idOriginal).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    // Las copias pendientes de esta carpeta o de un ancestro todavía leen el
+    // contenido de ahora: se despliegan de la raíz hacia abajo, y cada nivel deja
+    // copias nuevas registradas en el siguiente de la cadena
+    private void separarCopias() {
+        List<Directorio> cadena = new ArrayList<>();
+        for (Directorio d = this; d != null; d = d.padre) cadena.add(d);
+        for (int i = cadena.size() - 1; i >= 0; i--) {
+            Directorio d = cadena.get(i);
+            if (d.copias == null || d.copias.isEmpty()) continue;
+            for (Directorio copia : new ArrayList<>(d.copias)) copia.desplegar();
+        }
+    }
+
+    // Un subárbol que entra al árbol: sus copias pendientes vuelven a seguir a su
+    // origen (las de un subárbol quitado y vuelto a poner, o las leídas del diario)
+    private static void registrarCopias(Directorio sub) {
+        sub.recorrer(d -> {
+            if (d.origen != null) d.origen.registrar(d);
+        });
+    }
+
+    // Un subárbol que sale del árbol: sus copias pendientes dejan de seguir a su
+    // origen, y las que leen de él se despliegan enteras, porque su contenido se
+    // va a liberar. El recorrido es en preorden, así cada despliegue deja las
+    // copias nuevas en carpetas que todavía no se visitaron.
+    private static void soltarCopias(Directorio sub) {
+        sub.recorrer(d -> {
+            if (d.origen != null) d.origen.desregistrar(d);
+        });
+        sub.recorrer(d -> {
+            if (d.copias == null) return;
+            for (Directorio copia : new ArrayList<>(d.copias)) copia.desplegar();
+        });
+    }
+
+    // Preorden por las carpetas desplegadas (y las pendientes, sin entrar en ellas)
+    private void recorrer(Consumer<Directorio> accion) {
+        accion.accept(this);
+        if (esCopiaPendiente()) return;
+        for (Directorio sub : subdirectorios) sub.recorrer(accion);
+    }
+
+    private void registrar(Directorio copia) {
+        if (copias == null) copias = new HashSet<>();
+        copias.add(copia);
+    }
+
+    private void desregistrar(Directorio copia) {
+        if (copias != null) copias.remove(copia);
+    }
 }
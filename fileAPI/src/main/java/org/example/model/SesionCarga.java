@@ -0,0 +1,64 @@
+package org.example.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Subida de un archivo grande en trozos numerados. Los trozos se escriben en disco
+// a medida que llegan; al confirmar se juntan en un blob y se crea el Archivo.
+// El espacio del archivo queda reservado en el usuario desde que se abre la sesión.
+public class SesionCarga {
+    private String id;
+    private String idUsuario;
+    private String path;
+    private String nombre;
+    private String extension;
+    private long tamano;
+    private long tamanoTrozo;
+    private LocalDateTime fechaCreacion;
+
+    public SesionCarga() {
+        this.id = UUID.randomUUID().toString();
+        this.fechaCreacion = LocalDateTime.now();
+    }
+
+    public SesionCarga(String idUsuario, String path, String nombre, String extension, long tamano, long tamanoTrozo) {
+        this();
+        this.idUsuario = idUsuario;
+        this.path = path;
+        this.nombre = nombre;
+        this.extension = extension;
+        this.tamano = tamano;
+        this.tamanoTrozo = tamanoTrozo;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getIdUsuario() { return idUsuario; }
+    public void setIdUsuario(String idUsuario) { this.idUsuario = idUsuario; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public String getNombre() { return nombre; }
+    public void setNombre(String nombre) { this.nombre = nombre; }
+    public String getExtension() { return extension; }
+    public void setExtension(String extension) { this.extension = extension; }
+    public long getTamano() { return tamano; }
+    public void setTamano(long tamano) { this.tamano = tamano; }
+    public long getTamanoTrozo() { return tamanoTrozo; }
+    public void setTamanoTrozo(long tamanoTrozo) { this.tamanoTrozo = tamanoTrozo; }
+    public LocalDateTime getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(LocalDateTime fechaCreacion) { this.fechaCreacion = fechaCreacion; }
+
+    @JsonIgnore
+    public int getTotalTrozos() {
+        if (tamano == 0) return 1;
+        return (int) ((tamano + tamanoTrozo - 1) / tamanoTrozo);
+    }
+
+    // Todos los trozos miden tamanoTrozo salvo el último, que lleva el resto
+    public long tamanoEsperado(int numero) {
+        if (numero < getTotalTrozos() - 1) return tamanoTrozo;
+        return tamano - (long) (getTotalTrozos() - 1) * tamanoTrozo;
+    }
+}
@@ -1,14 +1,38 @@
 package org.example.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Usuario {
     private String id;
     private String nombre;
     private long espacioMaximo;
     private long espacioUsado;
+    private long espacioReservado; // subidas por trozos en curso
     private Directorio directorioRaiz;
     private Directorio directorioCompartidos;
+    // Último cambio anotado en el diario que ya está incluido en este documento
+    private long secuencia;
+
+    // Destino de los cambios (el diario del usuario); null mientras se reproduce
+    @JsonIgnore
+    private Consumer<Cambio> observador;
+
+    // Estructuras derivadas del árbol (rutas resueltas, índices de búsqueda).
+    // Viven lo que vive esta instancia en memoria y se arman de nuevo al volver a
+    // cargar el usuario; los oyentes las mantienen al día con cada cambio.
+    // Solo se tocan desde la cola del usuario.
+    @JsonIgnore
+    private final Map<Class<?>, Object> derivados = new HashMap<>();
+    @JsonIgnore
+    private final List<Consumer<Cambio>> oyentes = new ArrayList<>();
 
     public Usuario() {
         this.id = UUID.randomUUID().toString();
@@ -29,11 +53,51 @@ public class Usuario {
     public void setEspacioMaximo(long espacioMaximo) { this.espacioMaximo = espacioMaximo; }
     public long getEspacioUsado() { return espacioUsado; }
     public void setEspacioUsado(long espacioUsado) { this.espacioUsado = espacioUsado; }
+    public long getEspacioReservado() { return espacioReservado; }
+    public void setEspacioReservado(long espacioReservado) { this.espacioReservado = espacioReservado; }
     public Directorio getDirectorioRaiz() { return directorioRaiz; }
-    public void setDirectorioRaiz(Directorio directorioRaiz) { this.directorioRaiz = directorioRaiz; }
+    public void setDirectorioRaiz(Directorio directorioRaiz) {
+        this.directorioRaiz = directorioRaiz;
+        if (directorioRaiz != null) directorioRaiz.setObservador(this::anotar);
+    }
     public Directorio getDirectorioCompartidos() { return directorioCompartidos; }
-    public void setDirectorioCompartidos(Directorio directorioCompartidos) { this.directorioCompartidos = directorioCompartidos; }
+    public void setDirectorioCompartidos(Directorio directorioCompartidos) {
+        this.directorioCompartidos = directorioCompartidos;
+        if (directorioCompartidos != null) directorioCompartidos.setObservador(this::anotar);
+    }
+    public long getSecuencia() { return secuencia; }
+    public void setSecuencia(long secuencia) { this.secuencia = secuencia; }
+
+    @JsonIgnore
+    public Consumer<Cambio> getObservador() { return observador; }
+    public void setObservador(Consumer<Cambio> observador) { this.observador = observador; }
+
+    // La estructura derivada de ese tipo; se crea la primera vez que se pide
+    public <T> T derivado(Class<T> tipo, Function<Usuario, T> crear) {
+        Object actual = derivados.get(tipo);
+        if (actual == null) {
+            actual = crear.apply(this);
+            derivados.put(tipo, actual);
+        }
+        return tipo.cast(actual);
+    }
+
+    public boolean tieneDerivado(Class<?> tipo) {
+        return derivados.containsKey(tipo);
+    }
 
+    public void agregarOyente(Consumer<Cambio> oyente) {
+        oyentes.add(oyente);
+    }
+
+    // Numera el cambio y lo pasa al diario y a los oyentes
+    void anotar(Cambio cambio) {
+        cambio.setSecuencia(++secuencia);
+        if (observador != null) observador.accept(cambio);
+        for (Consumer<Cambio> oyente : oyentes) oyente.accept(cambio);
+    }
+
+    // Lee los agregados de las dos raíces, no recorre el árbol
     public void recalcularEspacioUsado() {
         long total = 0;
         if (directorioRaiz != null) total += directorioRaiz.getTamanoTotal();
@@ -41,7 +105,30 @@ public class Usuario {
         this.espacioUsado = total;
     }
 
+    // Recorrido completo de los dos árboles para comprobar los agregados;
+    // devuelve cuántos directorios tenían el tamaño desfasado (ya corregidos)
+    public int verificarEspacioUsado() {
+        int errores = 0;
+        if (directorioRaiz != null) errores += directorioRaiz.verificarTamanos();
+        if (directorioCompartidos != null) errores += directorioCompartidos.verificarTamanos();
+        recalcularEspacioUsado();
+        return errores;
+    }
+
     public boolean puedeAgregarArchivo(long tamanoArchivo) {
-        return (espacioUsado + tamanoArchivo) <= espacioMaximo;
+        return (espacioUsado + espacioReservado + tamanoArchivo) <= espacioMaximo;
+    }
+
+    // Aparta espacio para una subida; false si no cabe
+    public boolean reservarEspacio(long tamano) {
+        if (!puedeAgregarArchivo(tamano)) return false;
+        espacioReservado += tamano;
+        anotar(Cambio.reserva(espacioReservado));
+        return true;
+    }
+
+    public void liberarReserva(long tamano) {
+        espacioReservado = Math.max(0, espacioReservado - tamano);
+        anotar(Cambio.reserva(espacioReservado));
     }
 }
@@ -0,0 +1,463 @@
+package org.example.util;
+
+import org.example.model.Directorio;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Contenido de los archivos, guardado aparte del documento del usuario.
+// Cada blob se identifica por el SHA-256 de sus bytes y vive en blobs/ab/abcdef...,
+// así el árbol del usuario solo guarda metadatos y una referencia.
+// El mismo contenido se guarda una sola vez aunque lo referencien muchos archivos
+// (copias, compartidos); un conteo de referencias en memoria decide qué blobs
+// puede borrar el recolector.
+// Los blobs que comprimen bien se guardan en gzip (abcdef....gz); el hash y los
+// tamaños del árbol son siempre los del contenido sin comprimir.
+// Un blob se escribe en un temporal que se fuerza a disco, se renombra a su
+// sitio y se sincroniza el directorio antes de devolver el hash: el árbol nunca
+// referencia un blob que una caída pueda dejar vacío o sin nombre.
+public class AlmacenBlobs {
+    private static volatile Path directorio = Paths.get("blobs");
+
+    static final String GZIP = ".gz";
+    // Por debajo de esto no vale la pena; la muestra decide si se intenta
+    private static final long MIN_COMPRIMIR = 512;
+    private static final int MUESTRA = 64 * 1024;
+    // Se comprime solo si ahorra al menos un 10%
+    private static final double RELACION_MAXIMA = 0.9;
+
+    private static final Map<String, AtomicLong> referencias = new ConcurrentHashMap<>();
+    // Momento en que un blob se quedó sin referencias
+    private static final Map<String, Long> sinReferenciasDesde = new ConcurrentHashMap<>();
+    private static volatile boolean referenciasListas = false;
+
+    // Cerrojos por hash (repartidos en franjas) para que guardar y recolectar
+    // no se crucen sobre el mismo blob
+    private static final ReentrantLock[] cerrojos = new ReentrantLock[64];
+    static {
+        for (int i = 0; i < cerrojos.length; i++) cerrojos[i] = new ReentrantLock();
+    }
+
+    private static final AtomicLong blobsBorrados = new AtomicLong();
+    private static final AtomicLong bytesLiberados = new AtomicLong();
+    private static final AtomicLong blobsComprimidos = new AtomicLong();
+    private static final AtomicLong blobsSinComprimir = new AtomicLong();
+    private static final AtomicLong bytesAhorrados = new AtomicLong();
+
+    public static void inicializar(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        directorio = dir;
+    }
+
+    public static String guardar(String contenido) throws IOException {
+        if (contenido == null) return null;
+        return guardar(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String guardar(byte[] datos) throws IOException {
+        String hash = hash(datos);
+        if (tocarSiExiste(hash)) return hash;
+
+        Path temporal = temporal();
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(datos);
+            while (buffer.hasRemaining()) canal.write(buffer);
+            canal.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+        publicar(temporal, hash);
+        return hash;
+    }
+
+    // Copia el flujo a disco calculando el hash sobre la marcha, sin cargarlo en memoria
+    public static String guardar(InputStream entrada) throws IOException {
+        MessageDigest digest = sha256();
+        Path temporal = temporal();
+        try (DigestInputStream in = new DigestInputStream(entrada, digest);
+             FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            in.transferTo(Channels.newOutputStream(canal));
+            canal.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        publicar(temporal, hash);
+        return hash;
+    }
+
+    // Si el blob ya existe se renueva su fecha para que el recolector no lo
+    // borre entre que se guarda y que el árbol del usuario lo referencia
+    private static boolean tocarSiExiste(String hash) throws IOException {
+        ReentrantLock cerrojo = cerrojo(hash);
+        cerrojo.lock();
+        try {
+            Path destino = ubicar(hash);
+            if (destino == null) return false;
+            Files.setLastModifiedTime(destino, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private static void publicar(Path temporal, String hash) throws IOException {
+        // La compresión (lo caro) se hace fuera del cerrojo; si mientras tanto otro
+        // guardó el mismo contenido, abajo se descarta
+        if (!tocarSiExiste(hash)) {
+            temporal = comprimirSiConviene(temporal);
+        }
+
+        ReentrantLock cerrojo = cerrojo(hash);
+        cerrojo.lock();
+        try {
+            Path existente = ubicar(hash);
+            if (existente != null) {
+                Files.delete(temporal);
+                Files.setLastModifiedTime(existente, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                boolean comprimido = temporal.getFileName().toString().endsWith(GZIP);
+                long bytes = Files.size(temporal);
+                mover(temporal, comprimido ? rutaComprimida(hash) : ruta(hash));
+                Medidas.BLOB.escritos(bytes);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Prueba a comprimir una muestra del principio; si promete, comprime todo y se
+    // queda con el gzip solo si de verdad ahorra. Devuelve el temporal a publicar.
+    private static Path comprimirSiConviene(Path temporal) throws IOException {
+        long tamano = Files.size(temporal);
+        if (tamano < MIN_COMPRIMIR) return temporal;
+
+        byte[] muestra;
+        try (InputStream in = Files.newInputStream(temporal)) {
+            muestra = in.readNBytes(MUESTRA);
+        }
+        if (comprimirMuestra(muestra) > muestra.length * RELACION_MAXIMA) {
+            blobsSinComprimir.incrementAndGet();
+            return temporal;
+        }
+
+        Path comprimido = temporal.resolveSibling(temporal.getFileName() + GZIP);
+        try (InputStream in = Files.newInputStream(temporal);
+             FileChannel canal = FileChannel.open(comprimido, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(canal), 64 * 1024)) {
+            in.transferTo(out);
+            out.finish();
+            canal.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(comprimido);
+            throw e;
+        }
+
+        long tamanoComprimido = Files.size(comprimido);
+        if (tamanoComprimido > tamano * RELACION_MAXIMA) {
+            Files.delete(comprimido);
+            blobsSinComprimir.incrementAndGet();
+            return temporal;
+        }
+        Files.delete(temporal);
+        blobsComprimidos.incrementAndGet();
+        bytesAhorrados.addAndGet(tamano - tamanoComprimido);
+        return comprimido;
+    }
+
+    private static int comprimirMuestra(byte[] muestra) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(muestra);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            while (!deflater.finished()) {
+                total += deflater.deflate(buffer);
+            }
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static void retener(String hash) {
+        if (hash == null) return;
+        referencias.computeIfAbsent(hash, k -> new AtomicLong()).incrementAndGet();
+        sinReferenciasDesde.remove(hash);
+    }
+
+    public static void liberar(String hash) {
+        if (hash == null) return;
+        AtomicLong conteo = referencias.get(hash);
+        if (conteo != null && conteo.decrementAndGet() <= 0) {
+            sinReferenciasDesde.put(hash, System.currentTimeMillis());
+        }
+    }
+
+    // Una sola regla para contar: cada archivo del árbol tal como se ve es una
+    // referencia, también los que una copia pendiente todavía lee de su origen.
+    // La copia retiene el contenido de su origen al crearse y desplegarla no
+    // cambia nada; el recuento al arrancar sigue la misma regla, así que da lo
+    // mismo que el proceso en marcha aunque el usuario se recargue muchas veces.
+    public static void retenerArbol(Directorio dir) {
+        dir.paraCadaArchivoVisible(a -> retener(a.getBlob()));
+    }
+
+    public static void liberarArbol(Directorio dir) {
+        dir.paraCadaArchivoVisible(a -> liberar(a.getBlob()));
+    }
+
+    // Los blobs del árbol en este momento, para retenerlos o liberarlos al
+    // confirmar aunque el árbol cambie antes
+    public static List<String> blobsDe(Directorio dir) {
+        List<String> blobs = new ArrayList<>();
+        dir.paraCadaArchivoVisible(a -> {
+            if (a.getBlob() != null) blobs.add(a.getBlob());
+        });
+        return blobs;
+    }
+
+    // Suma las referencias que hay en los documentos en disco. Puede correr mientras
+    // se atienden peticiones: en el peor caso algo queda contado de más (y no se
+    // recolecta), nunca de menos. Hasta que termina, el recolector no borra nada.
+    public static void reconstruirReferencias(Iterable<String> blobs) {
+        for (String hash : blobs) {
+            retener(hash);
+        }
+        referenciasListas = true;
+    }
+
+    public static long referenciasDe(String hash) {
+        AtomicLong conteo = referencias.get(hash);
+        return conteo == null ? 0 : conteo.get();
+    }
+
+    // Borra los blobs sin referencias que llevan así más que el período de gracia.
+    // El llamador debe haber escrito antes los usuarios con cambios pendientes.
+    public static int recolectar(long graciaMs) throws IOException {
+        if (!referenciasListas || !Files.isDirectory(directorio)) return 0;
+        long limite = System.currentTimeMillis() - graciaMs;
+        int borrados = 0;
+        long inicio = Medidas.inicio();
+
+        try (DirectoryStream<Path> prefijos = Files.newDirectoryStream(directorio)) {
+            for (Path prefijo : prefijos) {
+                if (!Files.isDirectory(prefijo)) continue;
+                boolean temporales = prefijo.getFileName().toString().equals("tmp");
+                try (DirectoryStream<Path> blobs = Files.newDirectoryStream(prefijo)) {
+                    for (Path blob : blobs) {
+                        if (temporales) {
+                            // Escrituras interrumpidas
+                            if (Files.getLastModifiedTime(blob).toMillis() < limite) Files.deleteIfExists(blob);
+                        } else if (borrarSiHuerfano(blob, limite)) {
+                            borrados++;
+                        }
+                    }
+                }
+            }
+        }
+        Medidas.fin(Medidas.RECOLECTAR, inicio);
+        return borrados;
+    }
+
+    private static boolean borrarSiHuerfano(Path ruta, long limite) throws IOException {
+        String nombre = ruta.getFileName().toString();
+        String hash = nombre.endsWith(GZIP) ? nombre.substring(0, nombre.length() - GZIP.length()) : nombre;
+        ReentrantLock cerrojo = cerrojo(hash);
+        cerrojo.lock();
+        try {
+            if (referenciasDe(hash) > 0) return false;
+            long ultimoUso = Math.max(Files.getLastModifiedTime(ruta).toMillis(),
+                    sinReferenciasDesde.getOrDefault(hash, 0L));
+            if (ultimoUso >= limite) return false;
+
+            long bytes = Files.size(ruta);
+            Files.delete(ruta);
+            referencias.remove(hash);
+            sinReferenciasDesde.remove(hash);
+            blobsBorrados.incrementAndGet();
+            bytesLiberados.addAndGet(bytes);
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public static Map<String, Object> estadisticas() {
+        return Map.of(
+                "blobsReferenciados", referencias.values().stream().filter(c -> c.get() > 0).count(),
+                "referencias", referencias.values().stream().mapToLong(AtomicLong::get).sum(),
+                "pendientesDeRecolectar", sinReferenciasDesde.size(),
+                "blobsBorrados", blobsBorrados.get(),
+                "bytesLiberados", bytesLiberados.get(),
+                "blobsComprimidos", blobsComprimidos.get(),
+                "blobsSinComprimir", blobsSinComprimir.get(),
+                "bytesAhorradosPorCompresion", bytesAhorrados.get()
+        );
+    }
+
+    private static ReentrantLock cerrojo(String hash) {
+        return cerrojos[Math.floorMod(hash.hashCode(), cerrojos.length)];
+    }
+
+    public static byte[] leer(String hash) throws IOException {
+        if (hash == null) return new byte[0];
+        try (InputStream in = abrir(hash)) {
+            return in.readAllBytes();
+        }
+    }
+
+    // El contenido sin comprimir, se guarde como se guarde
+    public static InputStream abrir(String hash) throws IOException {
+        if (hash == null) return InputStream.nullInputStream();
+        Path archivo = ubicar(hash);
+        if (archivo == null) throw new NoSuchFileException(ruta(hash).toString());
+        InputStream in = new Contado(Files.newInputStream(archivo));
+        return esComprimido(archivo) ? new GZIPInputStream(in, 64 * 1024) : new BufferedInputStream(in);
+    }
+
+    // Cuenta los bytes leídos de disco y los suma a la métrica al cerrar
+    private static class Contado extends FilterInputStream {
+        private long leidos;
+
+        Contado(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) leidos++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) leidos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Medidas.BLOB.leidos(leidos);
+            leidos = 0;
+            super.close();
+        }
+    }
+
+    public static String leerTexto(String hash) throws IOException {
+        return new String(leer(hash), StandardCharsets.UTF_8);
+    }
+
+    // Dónde estaría el blob sin comprimir
+    public static Path ruta(String hash) {
+        return directorio.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    public static Path rutaComprimida(String hash) {
+        return directorio.resolve(hash.substring(0, 2)).resolve(hash + GZIP);
+    }
+
+    // El archivo que guarda el blob (comprimido o no); null si no está
+    public static Path ubicar(String hash) {
+        Path plano = ruta(hash);
+        if (Files.exists(plano)) return plano;
+        Path comprimido = rutaComprimida(hash);
+        return Files.exists(comprimido) ? comprimido : null;
+    }
+
+    public static boolean esComprimido(Path archivo) {
+        return archivo.getFileName().toString().endsWith(GZIP);
+    }
+
+    public static boolean existe(String hash) {
+        return hash != null && ubicar(hash) != null;
+    }
+
+    public static long tamano(String contenido) {
+        return contenido == null ? 0 : contenido.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static Path temporal() throws IOException {
+        Path tmp = directorio.resolve("tmp");
+        Files.createDirectories(tmp);
+        return tmp.resolve(UUID.randomUUID() + ".part");
+    }
+
+    // El temporal ya está forzado a disco; el renombrado (y la subcarpeta, si es
+    // nueva) no es durable hasta sincronizar el directorio que lo contiene
+    private static void mover(Path temporal, Path destino) throws IOException {
+        Path carpeta = destino.getParent();
+        if (!Files.isDirectory(carpeta)) {
+            Files.createDirectories(carpeta);
+            sincronizarDirectorio(carpeta.getParent());
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Otro hilo guardó el mismo contenido al mismo tiempo
+            Files.deleteIfExists(temporal);
+            return;
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+        sincronizarDirectorio(carpeta);
+    }
+
+    // Donde no se puede abrir un directorio (Windows) no hay nada que sincronizar
+    private static void sincronizarDirectorio(Path carpeta) throws IOException {
+        try (FileChannel canal = FileChannel.open(carpeta, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            // el sistema no lo permite
+        }
+    }
+
+    static String hash(byte[] datos) {
+        return HexFormat.of().formatHex(sha256().digest(datos));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
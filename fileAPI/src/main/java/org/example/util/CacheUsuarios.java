@@ -0,0 +1,211 @@
+package org.example.util;
+
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cache LRU de árboles Usuario ya cargados, acotada por el tamaño estimado en heap.
+// Los usuarios modificados quedan marcados como sucios hasta que se escriben a disco;
+// si se desaloja uno sucio, se entrega al llamador para que lo escriba antes de perderlo.
+public class CacheUsuarios {
+
+    private static class Entrada {
+        final Usuario usuario;
+        long bytes;
+        boolean sucio;
+
+        Entrada(Usuario usuario, long bytes) {
+            this.usuario = usuario;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long capacidadBytes;
+    // accessOrder = true: el primer elemento es siempre el menos usado recientemente
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    // Desalojados sucios que todavía no terminaron de escribirse
+    private final Map<String, Usuario> enEscritura = new HashMap<>();
+    private final List<Usuario> desalojadosSucios = new ArrayList<>();
+    private long bytesTotales;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+    private final AtomicLong escrituras = new AtomicLong();
+
+    public CacheUsuarios(long capacidadBytes) {
+        this.capacidadBytes = capacidadBytes;
+    }
+
+    public synchronized Usuario obtener(String id) {
+        Entrada entrada = entradas.get(id);
+        if (entrada != null) {
+            aciertos.incrementAndGet();
+            return entrada.usuario;
+        }
+        Usuario pendiente = enEscritura.get(id);
+        if (pendiente != null) {
+            aciertos.incrementAndGet();
+            return pendiente;
+        }
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    // Inserta un usuario recién leído de disco. Si otro hilo ya lo cargó, se
+    // devuelve la instancia existente para que todos trabajen sobre el mismo árbol.
+    public Usuario ponerCargado(Usuario usuario) {
+        long bytes = estimarBytes(usuario);
+        synchronized (this) {
+            Entrada existente = entradas.get(usuario.getId());
+            if (existente != null) return existente.usuario;
+            Usuario pendiente = enEscritura.get(usuario.getId());
+            if (pendiente != null) return pendiente;
+            poner(usuario, bytes, false);
+            return usuario;
+        }
+    }
+
+    // Inserta o actualiza un usuario que se acaba de modificar
+    public void ponerModificado(Usuario usuario, boolean sucio) {
+        long bytes = estimarBytes(usuario);
+        synchronized (this) {
+            poner(usuario, bytes, sucio);
+        }
+    }
+
+    private void poner(Usuario usuario, long bytes, boolean sucio) {
+        Entrada entrada = entradas.get(usuario.getId());
+        if (entrada == null || entrada.usuario != usuario) {
+            if (entrada != null) bytesTotales -= entrada.bytes;
+            entrada = new Entrada(usuario, bytes);
+            entradas.put(usuario.getId(), entrada);
+        } else {
+            bytesTotales -= entrada.bytes;
+            entrada.bytes = bytes;
+        }
+        bytesTotales += bytes;
+        entrada.sucio |= sucio;
+        desalojar(usuario.getId());
+    }
+
+    private void desalojar(String protegido) {
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (bytesTotales > capacidadBytes && it.hasNext()) {
+            Map.Entry<String, Entrada> e = it.next();
+            if (e.getKey().equals(protegido)) continue;
+            Entrada victima = e.getValue();
+            it.remove();
+            bytesTotales -= victima.bytes;
+            desalojos.incrementAndGet();
+            if (victima.sucio) {
+                enEscritura.put(e.getKey(), victima.usuario);
+                desalojadosSucios.add(victima.usuario);
+            }
+        }
+    }
+
+    // Desalojados con cambios sin guardar; el llamador los escribe y confirma con escrito()
+    public synchronized List<Usuario> tomarDesalojados() {
+        if (desalojadosSucios.isEmpty()) return List.of();
+        List<Usuario> lista = new ArrayList<>(desalojadosSucios);
+        desalojadosSucios.clear();
+        return lista;
+    }
+
+    // Quita y devuelve los usuarios sucios para escribirlos fuera del lock
+    public synchronized List<Usuario> tomarSucios() {
+        List<Usuario> sucios = new ArrayList<>();
+        for (Entrada entrada : entradas.values()) {
+            if (entrada.sucio) {
+                entrada.sucio = false;
+                sucios.add(entrada.usuario);
+            }
+        }
+        return sucios;
+    }
+
+    // Llamar tras escribir un usuario devuelto por tomarDesalojados() o tomarSucios()
+    public synchronized void escrito(Usuario usuario) {
+        escrituras.incrementAndGet();
+        enEscritura.remove(usuario.getId(), usuario);
+    }
+
+    // Si la escritura falló, se vuelve a marcar para reintentar en el próximo vaciado
+    public synchronized void fallo(Usuario usuario) {
+        enEscritura.remove(usuario.getId(), usuario);
+        Entrada entrada = entradas.get(usuario.getId());
+        if (entrada == null) {
+            // Se había desalojado: vuelve a la cache para no perder los cambios
+            entrada = new Entrada(usuario, estimarBytes(usuario));
+            entradas.put(usuario.getId(), entrada);
+            bytesTotales += entrada.bytes;
+        }
+        if (entrada.usuario == usuario) {
+            entrada.sucio = true;
+        }
+    }
+
+    // Saca un usuario cuya escritura falló, sin escribirlo: la próxima carga lo
+    // vuelve a leer de disco
+    public synchronized void descartar(Usuario usuario) {
+        Entrada entrada = entradas.get(usuario.getId());
+        if (entrada != null && entrada.usuario == usuario) {
+            entradas.remove(usuario.getId());
+            bytesTotales -= entrada.bytes;
+        }
+        enEscritura.remove(usuario.getId(), usuario);
+    }
+
+    public synchronized Map<String, Object> estadisticas() {
+        long a = aciertos.get();
+        long f = fallos.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("usuarios", entradas.size());
+        stats.put("bytesEstimados", bytesTotales);
+        stats.put("capacidadBytes", capacidadBytes);
+        stats.put("aciertos", a);
+        stats.put("fallos", f);
+        stats.put("tasaAciertos", a + f == 0 ? 0.0 : (double) a / (a + f));
+        stats.put("desalojos", desalojos.get());
+        stats.put("escrituras", escrituras.get());
+        stats.put("sucios", entradas.values().stream().filter(e -> e.sucio).count());
+        return stats;
+    }
+
+    // Estimación aproximada de lo que ocupa el árbol en heap: cabeceras de objeto,
+    // listas y cadenas (2 bytes por carácter, más su propia cabecera). Los nodos
+    // se cuentan con los conteos que mantiene el árbol, sin recorrerlo; cada uno
+    // pesa lo de sus cadenas típicas: ids UUID, blob SHA-256 en hex y nombres
+    // cortos.
+    private static final long BYTES_CARPETA = 160 + bytesCadena(36) + bytesCadena(16);
+    private static final long BYTES_ARCHIVO = 120 + bytesCadena(36) + bytesCadena(16)
+            + bytesCadena(4) + bytesCadena(64);
+
+    static long estimarBytes(Usuario usuario) {
+        long total = 64 + bytesCadena(usuario.getId()) + bytesCadena(usuario.getNombre());
+        total += estimarBytes(usuario.getDirectorioRaiz());
+        total += estimarBytes(usuario.getDirectorioCompartidos());
+        return total;
+    }
+
+    private static long estimarBytes(Directorio dir) {
+        if (dir == null) return 0;
+        return dir.getCarpetasEnMemoria() * BYTES_CARPETA + dir.getArchivosEnMemoria() * BYTES_ARCHIVO;
+    }
+
+    private static long bytesCadena(String s) {
+        return s == null ? 0 : bytesCadena(s.length());
+    }
+
+    private static long bytesCadena(int caracteres) {
+        return 40 + 2L * caracteres;
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.util;
+
+import org.example.model.Usuario;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serializa las operaciones sobre cada usuario: todas las de un mismo usuario se
+// ejecutan en un único hilo (franja elegida por su id) y las que llegan mientras
+// tanto se aplican en lote sobre el mismo árbol y se guardan con una sola escritura.
+// Usuarios distintos caen en franjas distintas y avanzan en paralelo.
+public class ColaMutaciones {
+
+    public interface Operacion<T> {
+        T aplicar(Usuario usuario) throws IOException;
+    }
+
+    private static class Pendiente<T> {
+        final Operacion<T> operacion;
+        final boolean escritura;
+        final CompletableFuture<T> resultado = new CompletableFuture<>();
+        T valor;
+        Throwable error;
+
+        Pendiente(Operacion<T> operacion, boolean escritura) {
+            this.operacion = operacion;
+            this.escritura = escritura;
+        }
+
+        void ejecutar(Usuario usuario) {
+            try {
+                valor = operacion.aplicar(usuario);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        void completar() {
+            if (error != null) resultado.completeExceptionally(error);
+            else resultado.complete(valor);
+        }
+    }
+
+    private static class Cola {
+        final ConcurrentLinkedQueue<Pendiente<?>> pendientes = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean programada = new AtomicBoolean();
+    }
+
+    private static final int MAX_LOTE = 128;
+
+    private static volatile ExecutorService[] franjas = crearFranjas(Runtime.getRuntime().availableProcessors());
+    private static final Map<String, Cola> colas = new ConcurrentHashMap<>();
+
+    private static final AtomicLong operaciones = new AtomicLong();
+    private static final AtomicLong lotes = new AtomicLong();
+    private static final AtomicLong escrituras = new AtomicLong();
+
+    public static synchronized void configurar(int numeroFranjas) {
+        ExecutorService[] anteriores = franjas;
+        franjas = crearFranjas(Math.max(1, numeroFranjas));
+        for (ExecutorService e : anteriores) e.shutdown();
+    }
+
+    private static ExecutorService[] crearFranjas(int n) {
+        ExecutorService[] resultado = new ExecutorService[n];
+        for (int i = 0; i < n; i++) {
+            String nombre = "mutaciones-" + i;
+            resultado[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, nombre);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return resultado;
+    }
+
+    // Aplica una operación que modifica el usuario; se guarda junto con su lote
+    public static <T> T mutar(String nombreUsuario, Operacion<T> operacion) throws IOException {
+        return ejecutar(resolverId(nombreUsuario), operacion, true);
+    }
+
+    // Lee el árbol del usuario sin competir con las escrituras en curso
+    public static <T> T leer(String nombreUsuario, Operacion<T> operacion) throws IOException {
+        return ejecutar(resolverId(nombreUsuario), operacion, false);
+    }
+
+    public static <T> T mutarPorId(String id, Operacion<T> operacion) throws IOException {
+        return ejecutar(id, operacion, true);
+    }
+
+    public static <T> T leerPorId(String id, Operacion<T> operacion) throws IOException {
+        return ejecutar(id, operacion, false);
+    }
+
+    private static String resolverId(String nombreUsuario) throws IOException {
+        String id = JsonUtil.buscarIdPorNombre(nombreUsuario);
+        if (id == null) {
+            throw new IOException("Usuario no encontrado por nombre: " + nombreUsuario);
+        }
+        return id;
+    }
+
+    private static <T> T ejecutar(String id, Operacion<T> operacion, boolean escritura) throws IOException {
+        Pendiente<T> pendiente = new Pendiente<>(operacion, escritura);
+        Cola cola = colas.computeIfAbsent(id, k -> new Cola());
+        cola.pendientes.add(pendiente);
+        if (cola.programada.compareAndSet(false, true)) {
+            ExecutorService[] actuales = franjas;
+            ExecutorService franja = actuales[Math.floorMod(id.hashCode(), actuales.length)];
+            franja.execute(() -> drenar(id, cola, franja));
+        }
+
+        try {
+            return pendiente.resultado.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Operación interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) throw io;
+            if (causa instanceof RuntimeException re) throw re;
+            if (causa instanceof Error err) throw err;
+            throw new IOException(causa);
+        }
+    }
+
+    // Procesa un lote y, si quedan operaciones, se vuelve a encolar en la franja
+    // para no acaparar el hilo frente a otros usuarios que comparten la franja
+    private static void drenar(String id, Cola cola, ExecutorService franja) {
+        List<Pendiente<?>> lote = new ArrayList<>();
+        Pendiente<?> p;
+        while (lote.size() < MAX_LOTE && (p = cola.pendientes.poll()) != null) {
+            lote.add(p);
+        }
+        if (!lote.isEmpty()) {
+            procesarLote(id, lote);
+        }
+
+        if (cola.pendientes.isEmpty()) {
+            cola.programada.set(false);
+            // Alguien pudo encolar justo después del último poll
+            if (cola.pendientes.isEmpty() || !cola.programada.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        franja.execute(() -> drenar(id, cola, franja));
+    }
+
+    private static void procesarLote(String id, List<Pendiente<?>> lote) {
+        lotes.incrementAndGet();
+        operaciones.addAndGet(lote.size());
+
+        Usuario usuario;
+        try {
+            usuario = JsonUtil.cargarUsuario(id);
+        } catch (Throwable t) {
+            for (Pendiente<?> p : lote) {
+                p.error = t;
+                p.completar();
+            }
+            return;
+        }
+
+        boolean hayEscrituras = false;
+        ReentrantLock cerrojo = JsonUtil.cerrojo(id);
+        cerrojo.lock();
+        try {
+            for (Pendiente<?> p : lote) {
+                p.ejecutar(usuario);
+                hayEscrituras |= p.escritura;
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+
+        // Una sola escritura para todo el lote, y nadie recibe respuesta antes de
+        // que termine. Si falla, todo el lote recibe el error: también las
+        // lecturas, que pudieron ver cambios que no llegaron a disco (el usuario
+        // se vuelve a leer de disco, ver JsonUtil.guardarUsuario). Con escritura
+        // diferida aquí solo se marca como sucio y el vaciado periódico lo persiste.
+        try {
+            if (hayEscrituras) {
+                JsonUtil.guardarUsuario(usuario);
+                escrituras.incrementAndGet();
+            }
+        } catch (Throwable t) {
+            for (Pendiente<?> p : lote) {
+                if (p.error == null) p.error = t;
+            }
+        } finally {
+            for (Pendiente<?> p : lote) {
+                p.completar();
+            }
+        }
+    }
+
+    public static Map<String, Object> estadisticas() {
+        long l = lotes.get();
+        return Map.of(
+                "franjas", franjas.length,
+                "operaciones", operaciones.get(),
+                "lotes", l,
+                "escrituras", escrituras.get(),
+                "operacionesPorLote", l == 0 ? 0.0 : (double) operaciones.get() / l
+        );
+    }
+}
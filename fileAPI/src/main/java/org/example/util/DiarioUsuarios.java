@@ -0,0 +1,327 @@
+package org.example.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Diario de cambios por usuario: usuario_<id>.journal, una línea JSON compacta por
+// cambio, siempre añadida al final. Cada lote de la cola se vuelca con un único
+// fsync. El documento completo (la instantánea) solo se reescribe al compactar,
+// cuando el diario pasa del umbral; al cargar se lee la instantánea y se
+// reproducen encima los cambios con secuencia posterior a la suya.
+public class DiarioUsuarios {
+    private static final Logger log = LoggerFactory.getLogger(DiarioUsuarios.class);
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .addMixIn(Directorio.class, DirectorioGuardado.class);
+
+    // Cambios anotados que todavía no se escribieron, por id de usuario. Se tocan
+    // siempre con el cerrojo del usuario tomado.
+    private static final Map<String, ByteArrayOutputStream> pendientes = new ConcurrentHashMap<>();
+
+    private static volatile long umbralCompactacion = 1024 * 1024;
+
+    private static final AtomicLong registros = new AtomicLong();
+    private static final AtomicLong bytesEscritos = new AtomicLong();
+    private static final AtomicLong sincronizaciones = new AtomicLong();
+    private static final AtomicLong compactaciones = new AtomicLong();
+    private static final AtomicLong reproducidos = new AtomicLong();
+    private static final AtomicLong lineasCortadas = new AtomicLong();
+
+    public static void configurar(long umbralBytes) {
+        umbralCompactacion = umbralBytes;
+    }
+
+    public static long getUmbralCompactacion() {
+        return umbralCompactacion;
+    }
+
+    // Se serializa en el momento: si el nodo cambia después, el registro no
+    public static void anotar(String id, Cambio cambio) {
+        try {
+            byte[] linea = mapper.writeValueAsBytes(cambio);
+            ByteArrayOutputStream buffer = pendientes.computeIfAbsent(id, k -> new ByteArrayOutputStream());
+            buffer.write(linea);
+            buffer.write('\n');
+            registros.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Añade lo pendiente al final del diario y fuerza a disco. Si la escritura
+    // falla se recorta lo que haya quedado a medias, para no dejar una línea rota
+    // delante de la que se reintente, y lo pendiente se conserva: el vaciado de la
+    // escritura diferida lo reintenta. Una escritura síncrona fallida, en cambio,
+    // lo tira con olvidarPendientes. Devuelve el tamaño del diario.
+    public static long volcar(Path diario, String id) throws IOException {
+        ByteArrayOutputStream buffer = pendientes.get(id);
+        if (buffer == null || buffer.size() == 0) {
+            return Files.exists(diario) ? Files.size(diario) : 0;
+        }
+
+        try (FileChannel canal = FileChannel.open(diario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long inicio = canal.size();
+            ByteBuffer datos = ByteBuffer.wrap(buffer.toByteArray());
+            try {
+                while (datos.hasRemaining()) canal.write(datos);
+                canal.force(false);
+            } catch (IOException e) {
+                canal.truncate(inicio);
+                throw e;
+            }
+            sincronizaciones.incrementAndGet();
+            bytesEscritos.addAndGet(buffer.size());
+            Medidas.DIARIO.escritos(buffer.size());
+            buffer.reset();
+            return canal.size();
+        }
+    }
+
+    // Tras escribir una instantánea: todo lo pendiente ya está incluido en ella
+    public static void descartarPendientes(String id) {
+        pendientes.remove(id);
+        compactaciones.incrementAndGet();
+    }
+
+    // Tras una escritura fallida cuyos cambios se descartan: no llegaron a disco
+    // y no deben colarse en el próximo volcado
+    public static void olvidarPendientes(String id) {
+        pendientes.remove(id);
+    }
+
+    // Lee los registros del diario. Si la última línea quedó incompleta (caída a
+    // mitad de una escritura) o hay una línea ilegible, el archivo se corta ahí.
+    public static List<Cambio> leer(Path diario) throws IOException {
+        return leer(diario, true);
+    }
+
+    // Igual pero sin tocar el archivo, para leer el diario de un usuario que la
+    // cola puede estar escribiendo a la vez: lo que no se lee entero se ignora
+    public static List<Cambio> leerSinCortar(Path diario) throws IOException {
+        return leer(diario, false);
+    }
+
+    private static List<Cambio> leer(Path diario, boolean cortar) throws IOException {
+        List<Cambio> cambios = new ArrayList<>();
+        if (!Files.exists(diario)) return cambios;
+
+        byte[] datos = Files.readAllBytes(diario);
+        Medidas.DIARIO.leidos(datos.length);
+        int inicio = 0;
+        while (inicio < datos.length) {
+            int fin = inicio;
+            while (fin < datos.length && datos[fin] != '\n') fin++;
+            if (fin == datos.length) break; // sin salto de línea: escritura interrumpida
+            try {
+                cambios.add(mapper.readValue(datos, inicio, fin - inicio, Cambio.class));
+            } catch (IOException e) {
+                log.warn("Línea ilegible en {}: {}", diario.getFileName(), e.getMessage());
+                break;
+            }
+            inicio = fin + 1;
+        }
+
+        if (cortar && inicio < datos.length) {
+            try (FileChannel canal = FileChannel.open(diario, StandardOpenOption.WRITE)) {
+                canal.truncate(inicio);
+                canal.force(false);
+            }
+            lineasCortadas.incrementAndGet();
+        }
+        return cambios;
+    }
+
+    // Aplica sobre el usuario recién leído los cambios que su instantánea no tiene.
+    // Se llama antes de conectar el diario, así lo reproducido no se vuelve a anotar.
+    // Antes enlaza las copias pendientes de la instantánea con su carpeta de
+    // origen, que los cambios pueden modificar.
+    public static void reproducir(Usuario usuario, List<Cambio> cambios) {
+        Nodos nodos = new Nodos(usuario);
+        nodos.enlazarPendientes(usuario);
+
+        long ultimo = usuario.getSecuencia();
+        if (cambios.isEmpty() || cambios.get(cambios.size() - 1).getSecuencia() <= ultimo) return;
+
+        for (Cambio c : cambios) {
+            if (c.getSecuencia() <= ultimo) continue;
+            if (!aplicar(usuario, c, nodos)) {
+                log.warn("Cambio {} ({}) no aplicable al usuario {}", c.getSecuencia(), c.getTipo(), usuario.getId());
+            }
+            ultimo = c.getSecuencia();
+            reproducidos.incrementAndGet();
+        }
+        usuario.setSecuencia(ultimo);
+        usuario.recalcularEspacioUsado();
+    }
+
+    private static boolean aplicar(Usuario usuario, Cambio c, Nodos nodos) {
+        Directorio dir = nodos.directorio(c.getDir());
+        switch (c.getTipo()) {
+            case Cambio.RESERVA -> {
+                usuario.setEspacioReservado(c.getReservado());
+                return true;
+            }
+            case Cambio.AGREGAR_ARCHIVO -> {
+                if (dir == null) return false;
+                dir.agregarArchivo(c.getArchivo());
+                nodos.archivos.put(c.getArchivo().getId(), c.getArchivo());
+            }
+            case Cambio.ELIMINAR_ARCHIVO -> {
+                Archivo archivo = nodos.archivo(c.getId());
+                nodos.archivos.remove(c.getId());
+                if (dir == null || archivo == null) return false;
+                dir.quitarArchivo(archivo);
+            }
+            case Cambio.MODIFICAR_ARCHIVO -> {
+                Archivo archivo = nodos.archivo(c.getId());
+                if (dir == null || archivo == null) return false;
+                dir.actualizarContenido(archivo, c.getBlob(), c.getTamano());
+                archivo.setFechaModificacion(c.getFecha());
+            }
+            case Cambio.MOVER_ARCHIVO -> {
+                Archivo archivo = nodos.archivo(c.getId());
+                Directorio destino = nodos.directorio(c.getDestino());
+                if (dir == null || archivo == null || destino == null) return false;
+                dir.moverArchivo(archivo, destino);
+                archivo.setFechaModificacion(c.getFecha());
+                destino.setFechaModificacion(c.getFecha());
+            }
+            case Cambio.AGREGAR_DIRECTORIO, Cambio.COPIAR_DIRECTORIO -> {
+                if (dir == null) return false;
+                // Las copias pendientes que trae se enlazan antes de agregarla:
+                // si el destino está dentro de su origen, agregarla lo cambia
+                nodos.indexar(c.getDirectorio());
+                nodos.enlazarPendientes(usuario);
+                dir.agregarSubdirectorio(c.getDirectorio());
+            }
+            case Cambio.ELIMINAR_DIRECTORIO -> {
+                Directorio sub = nodos.directorio(c.getId());
+                nodos.directorios.remove(c.getId());
+                if (dir == null || sub == null) return false;
+                dir.quitarSubdirectorio(sub);
+            }
+            case Cambio.MOVER_DIRECTORIO -> {
+                Directorio sub = nodos.directorio(c.getId());
+                Directorio destino = nodos.directorio(c.getDestino());
+                if (dir == null || sub == null || destino == null) return false;
+                dir.moverSubdirectorio(sub, destino);
+                sub.setFechaModificacion(c.getFecha());
+                destino.setFechaModificacion(c.getFecha());
+            }
+            default -> {
+                return false;
+            }
+        }
+        dir.setFechaModificacion(c.getFecha());
+        return true;
+    }
+
+    // Los nodos del usuario por id. Las copias pendientes no se recorren: si un
+    // cambio nombra algo que no está, se despliegan de a un nivel hasta dar con
+    // él (desplegar da los mismos ids que cuando se anotó el cambio).
+    private static class Nodos {
+        final Map<String, Directorio> directorios = new HashMap<>();
+        final Map<String, Archivo> archivos = new HashMap<>();
+        final List<Directorio> pendientes = new ArrayList<>();
+
+        Nodos(Usuario usuario) {
+            indexar(usuario.getDirectorioRaiz());
+            indexar(usuario.getDirectorioCompartidos());
+        }
+
+        void indexar(Directorio dir) {
+            if (dir == null) return;
+            directorios.put(dir.getId(), dir);
+            if (dir.esCopiaPendiente()) {
+                pendientes.add(dir);
+                return;
+            }
+            for (Archivo a : dir.getArchivos()) archivos.put(a.getId(), a);
+            for (Directorio sub : dir.getSubdirectorios()) indexar(sub);
+        }
+
+        Directorio directorio(String id) {
+            if (id == null) return null;
+            while (!directorios.containsKey(id) && desplegarPendientes()) {
+                // un nivel más
+            }
+            return directorios.get(id);
+        }
+
+        Archivo archivo(String id) {
+            if (id == null) return null;
+            while (!archivos.containsKey(id) && desplegarPendientes()) {
+                // un nivel más
+            }
+            return archivos.get(id);
+        }
+
+        // Las que todavía no están enlazadas esperan: sin origen no hay qué desplegar
+        private boolean desplegarPendientes() {
+            List<Directorio> nivel = new ArrayList<>();
+            List<Directorio> sinEnlazar = new ArrayList<>();
+            for (Directorio d : pendientes) {
+                (d.esCopiaSinEnlazar() ? sinEnlazar : nivel).add(d);
+            }
+            if (nivel.isEmpty()) return false;
+            pendientes.retainAll(sinEnlazar);
+            for (Directorio d : nivel) {
+                for (Archivo a : d.verArchivos()) archivos.put(a.getId(), a);
+                for (Directorio sub : d.verSubdirectorios()) indexar(sub);
+            }
+            return true;
+        }
+
+        // Un origen que no aparece deja la copia vacía
+        void enlazarPendientes(Usuario usuario) {
+            for (Directorio copia : new ArrayList<>(pendientes)) {
+                if (!copia.esCopiaSinEnlazar()) continue;
+                Directorio origen = directorio(copia.getCopia().origen());
+                if (origen == null || origen.esCopiaSinEnlazar()) {
+                    log.warn("Copia {} del usuario {} sin su carpeta de origen {}",
+                            copia.getId(), usuario.getId(), copia.getCopia().origen());
+                    copia.descartarCopia();
+                    usuario.recalcularEspacioUsado();
+                    continue;
+                }
+                // Si el origen es a su vez una copia pendiente, se despliega: una
+                // copia nunca lee de otra
+                origen.verArchivos();
+                copia.enlazarOrigen(origen);
+            }
+        }
+    }
+
+    public static Map<String, Object> estadisticas() {
+        return Map.of(
+                "registros", registros.get(),
+                "bytesEscritos", bytesEscritos.get(),
+                "sincronizaciones", sincronizaciones.get(),
+                "compactaciones", compactaciones.get(),
+                "reproducidos", reproducidos.get(),
+                "lineasCortadas", lineasCortadas.get(),
+                "umbralCompactacion", umbralCompactacion
+        );
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+
+import java.util.List;
+
+// Cómo se guarda un Directorio en la instantánea y en el diario (mixin de Jackson).
+// Una copia pendiente se escribe como {"copia": {"origen": id, "tamano": n}} sin
+// sus listas, y se lee igual; así guardar no despliega nada. Las respuestas de
+// la API no usan este mixin y muestran la copia con su contenido.
+@JsonPropertyOrder({"copia"})
+abstract class DirectorioGuardado {
+
+    @JsonIgnore(false)
+    @JsonProperty("copia")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    abstract Directorio.Copia getCopia();
+
+    @JsonIgnore
+    abstract List<Archivo> getArchivos();
+
+    @JsonIgnore
+    abstract List<Directorio> getSubdirectorios();
+
+    @JsonIgnore(false)
+    @JsonProperty("archivos")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    abstract List<Archivo> getArchivosGuardados();
+
+    @JsonIgnore(false)
+    @JsonProperty("subdirectorios")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    abstract List<Directorio> getSubdirectoriosGuardados();
+
+    @JsonProperty("archivos")
+    abstract void setArchivos(List<Archivo> archivos);
+
+    @JsonProperty("subdirectorios")
+    abstract void setSubdirectorios(List<Directorio> subdirectorios);
+}
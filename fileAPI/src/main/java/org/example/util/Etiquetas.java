@@ -0,0 +1,48 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+// ETag fuertes a partir del id y la versión que mantienen Directorio y Archivo,
+// sin calcular hashes al leer, y comprobación de If-None-Match / If-Match.
+public class Etiquetas {
+
+    public static String de(Directorio dir) {
+        return "\"" + dir.getId() + "-" + dir.getVersion() + "\"";
+    }
+
+    public static String de(Archivo archivo) {
+        return "\"" + archivo.getId() + "-" + archivo.getVersion() + "\"";
+    }
+
+    // Todo cambio del árbol sube la secuencia del usuario. Cada proyección es
+    // una representación distinta, así que entra en la etiqueta
+    public static String de(Usuario usuario, String variante) {
+        return "\"" + usuario.getId() + "-" + usuario.getSecuencia() + "-"
+                + Integer.toHexString(variante.hashCode()) + "\"";
+    }
+
+    // If-None-Match usa comparación débil: "W/" no cuenta
+    public static boolean noModificado(String ifNoneMatch, String etag) {
+        return ifNoneMatch != null && contiene(ifNoneMatch, etag, true);
+    }
+
+    // If-Match usa comparación fuerte; sin cabecera no hay condición
+    public static boolean cumplePrecondicion(String ifMatch, String etag) {
+        return ifMatch == null || contiene(ifMatch, etag, false);
+    }
+
+    private static boolean contiene(String cabecera, String etag, boolean debil) {
+        for (String parte : cabecera.split(",")) {
+            String valor = parte.trim();
+            if (valor.equals("*")) return true;
+            if (valor.startsWith("W/")) {
+                if (!debil) continue;
+                valor = valor.substring(2);
+            }
+            if (valor.equals(etag)) return true;
+        }
+        return false;
+    }
+}
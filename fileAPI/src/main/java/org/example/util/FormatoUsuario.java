@@ -0,0 +1,93 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Formatos de la instantánea de un usuario en disco.
+// La actual es Smile (JSON binario de Jackson): usuario_<id>.smile. Los nombres de
+// campo y los valores cortos repetidos (extensiones, nombres) se guardan una vez y
+// luego se referencian, y los números van en binario. Los usuario_<id>.json de
+// antes se siguen leyendo y se pasan a Smile la primera vez que se cargan.
+public class FormatoUsuario {
+    public static final String SMILE = ".smile";
+    public static final String JSON = ".json";
+    private static final String PREFIJO = "usuario_";
+
+    private static final ObjectMapper smile = new ObjectMapper(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build())
+            .registerModule(new JavaTimeModule())
+            .addMixIn(Directorio.class, DirectorioGuardado.class);
+
+    private static final ObjectMapper json = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .addMixIn(Directorio.class, DirectorioGuardado.class);
+
+    // Para exportar y depurar
+    private static final ObjectMapper jsonLegible = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static Path instantanea(Path directorio, String id) {
+        return directorio.resolve(PREFIJO + id + SMILE);
+    }
+
+    public static Path instantaneaLegada(Path directorio, String id) {
+        return directorio.resolve(PREFIJO + id + JSON);
+    }
+
+    public static boolean esInstantanea(String nombreArchivo) {
+        return nombreArchivo.startsWith(PREFIJO)
+                && (nombreArchivo.endsWith(SMILE) || nombreArchivo.endsWith(JSON));
+    }
+
+    public static String idDe(String nombreArchivo) {
+        int punto = nombreArchivo.lastIndexOf('.');
+        return nombreArchivo.substring(PREFIJO.length(), punto);
+    }
+
+    // Parser en streaming según la extensión (para leer campos sueltos sin
+    // deserializar el árbol)
+    public static JsonParser crearParser(File archivo) throws IOException {
+        ObjectMapper m = archivo.getName().endsWith(SMILE) ? smile : json;
+        return m.getFactory().createParser(archivo);
+    }
+
+    public static Usuario leer(File archivo) throws IOException {
+        ObjectMapper m = archivo.getName().endsWith(SMILE) ? smile : json;
+        return m.readValue(archivo, Usuario.class);
+    }
+
+    public static byte[] serializar(Usuario usuario) throws IOException {
+        return smile.writeValueAsBytes(usuario);
+    }
+
+    // Dentro de la cola del usuario: los getters del árbol no despliegan las
+    // copias pendientes, así que se exporta la vista, que sí las muestra con su
+    // contenido
+    public static byte[] exportarJson(Usuario usuario) throws IOException {
+        return jsonLegible.writeValueAsBytes(VistaArbol.usuario(usuario));
+    }
+
+    // La instantánea vigente de un usuario: la Smile si existe, si no la JSON
+    // antigua; null si no hay ninguna
+    public static File buscar(Path directorio, String id) {
+        Path actual = instantanea(directorio, id);
+        if (Files.exists(actual)) return actual.toFile();
+        Path legada = instantaneaLegada(directorio, id);
+        if (Files.exists(legada)) return legada.toFile();
+        return null;
+    }
+}
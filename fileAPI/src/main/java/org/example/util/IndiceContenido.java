@@ -0,0 +1,334 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Índice invertido por usuario: término -> (id de archivo -> frecuencia), sobre el
+// nombre, la extensión y el contenido de texto de cada archivo. Se arma la
+// primera vez que se busca y después se mantiene con los cambios del árbol; los
+// movimientos no lo tocan porque la ruta se saca de los enlaces al padre.
+// Una búsqueda solo recorre las listas de los términos pedidos.
+// Dentro de la cola no se lee ningún blob: los términos del contenido salen de
+// la caché por blob, que se llena antes de encolar (al escribir y en la primera
+// búsqueda). Lo que no esté ahí se indexa por el nombre y un hilo aparte lee el
+// blob y completa el índice después, otra vez desde la cola del usuario.
+public class IndiceContenido implements Consumer<Cambio> {
+    private static final Logger log = LoggerFactory.getLogger(IndiceContenido.class);
+    // Contenido más grande que esto solo se indexa por el nombre
+    private static final long MAX_CONTENIDO = 1024 * 1024;
+    private static final int MAX_TERMINO = 64;
+    // Aparecer en el nombre pesa como varias apariciones en el contenido
+    private static final int PESO_NOMBRE = 5;
+    public static final int MAX_POR_PAGINA = 100;
+
+    // Los blobs no cambian, así que sus términos se pueden reutilizar entre
+    // archivos y usuarios que comparten el mismo contenido
+    private static final int MAX_BLOBS_EN_CACHE = 4096;
+    private static final Map<String, Map<String, Integer>> terminosPorBlob =
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, Integer>> mayor) {
+                    return size() > MAX_BLOBS_EN_CACHE;
+                }
+            };
+
+    // Lee y tokeniza los blobs que faltaban al indexar, fuera de las franjas
+    private static final ExecutorService indexador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "indice-contenido");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Nombres de usuario con el índice armado. Solo es una pista para adelantar
+    // los términos de lo que escriben: uno de más cuesta una tokenización de más
+    private static final Set<String> conIndice = ConcurrentHashMap.newKeySet();
+
+    private final String idUsuario;
+    private final Map<String, Map<String, Integer>> indice = new HashMap<>();
+    private final Map<String, Archivo> archivos = new HashMap<>();
+    private final Map<String, Map<String, Integer>> terminosPorArchivo = new HashMap<>();
+    // Indexados solo por el nombre, a la espera de los términos de su blob (id -> blob)
+    private final Map<String, String> sinContenido = new HashMap<>();
+    private boolean completando;
+
+    private IndiceContenido(String idUsuario) {
+        this.idUsuario = idUsuario;
+    }
+
+    private static final Medidas.Accesos accesos = new Medidas.Accesos("indiceContenido");
+
+    public static IndiceContenido de(Usuario usuario) {
+        accesos.registrar(usuario, IndiceContenido.class);
+        return usuario.derivado(IndiceContenido.class, u -> {
+            IndiceContenido nuevo = new IndiceContenido(u.getId());
+            if (u.getDirectorioRaiz() != null) u.getDirectorioRaiz().paraCadaArchivo(nuevo::agregar);
+            if (u.getDirectorioCompartidos() != null) u.getDirectorioCompartidos().paraCadaArchivo(nuevo::agregar);
+            u.agregarOyente(nuevo);
+            conIndice.add(u.getNombre());
+            return nuevo;
+        });
+    }
+
+    // Antes de armar el índice, fuera de la cola: los blobs del usuario cuyos
+    // términos no se conocen, sin repetir y sin pasar de lo que cabe en la caché
+    public static List<String> blobsPorPreparar(Usuario u) {
+        if (u.tieneDerivado(IndiceContenido.class)) return List.of();
+        Set<String> blobs = new LinkedHashSet<>();
+        Consumer<Archivo> anotar = a -> {
+            if (blobs.size() < MAX_BLOBS_EN_CACHE && terminosConocidos(a.getBlob()) == null) blobs.add(a.getBlob());
+        };
+        if (u.getDirectorioRaiz() != null) u.getDirectorioRaiz().paraCadaArchivo(anotar);
+        if (u.getDirectorioCompartidos() != null) u.getDirectorioCompartidos().paraCadaArchivo(anotar);
+        return new ArrayList<>(blobs);
+    }
+
+    // Al escribir contenido nuevo, antes de encolar la operación: si el usuario
+    // tiene índice, sus términos ya van a estar cuando llegue el cambio
+    public static void prepararPara(String nombreUsuario, String blob) {
+        if (blob != null && conIndice.contains(nombreUsuario)) prepararContenido(blob);
+    }
+
+    @Override
+    public void accept(Cambio cambio) {
+        switch (cambio.getTipo()) {
+            case Cambio.AGREGAR_ARCHIVO -> agregar(cambio.getArchivo());
+            case Cambio.ELIMINAR_ARCHIVO -> quitar(cambio.getId());
+            case Cambio.MODIFICAR_ARCHIVO -> {
+                Archivo archivo = archivos.get(cambio.getId());
+                if (archivo != null) {
+                    quitar(archivo.getId());
+                    agregar(archivo);
+                }
+            }
+            case Cambio.AGREGAR_DIRECTORIO, Cambio.COPIAR_DIRECTORIO -> cambio.getDirectorio().paraCadaArchivo(this::agregar);
+            case Cambio.ELIMINAR_DIRECTORIO -> {
+                Directorio quitado = cambio.getQuitado();
+                if (quitado != null) quitado.paraCadaArchivoDesplegado(a -> quitar(a.getId()));
+            }
+            default -> {
+                // movimientos y reservas no cambian lo indexado
+            }
+        }
+    }
+
+    public static class Resultado {
+        public final Archivo archivo;
+        public final double puntuacion;
+
+        Resultado(Archivo archivo, double puntuacion) {
+            this.archivo = archivo;
+            this.puntuacion = puntuacion;
+        }
+    }
+
+    public static class Pagina {
+        public final int total;
+        public final List<Resultado> resultados;
+
+        Pagina(int total, List<Resultado> resultados) {
+            this.total = total;
+            this.resultados = resultados;
+        }
+    }
+
+    // Puntuación tf-idf sumada por término, multiplicada por la fracción de
+    // términos de la consulta que aparecen en el archivo
+    public Pagina buscar(String consulta, int pagina, int tamanoPagina) {
+        Set<String> terminos = new LinkedHashSet<>(tokenizar(consulta).keySet());
+        Map<String, Double> puntuaciones = new HashMap<>();
+        Map<String, Integer> coincidencias = new HashMap<>();
+        int n = archivos.size();
+
+        for (String termino : terminos) {
+            Map<String, Integer> lista = indice.get(termino);
+            if (lista == null) continue;
+            double idf = Math.log(1 + (double) n / lista.size());
+            for (Map.Entry<String, Integer> e : lista.entrySet()) {
+                puntuaciones.merge(e.getKey(), (1 + Math.log(e.getValue())) * idf, Double::sum);
+                coincidencias.merge(e.getKey(), 1, Integer::sum);
+            }
+        }
+
+        // Solo se ordena lo necesario para llegar a la página pedida
+        long hasta = (long) (pagina + 1) * tamanoPagina;
+        if (hasta > puntuaciones.size()) hasta = puntuaciones.size();
+        Comparator<Resultado> orden = Comparator.<Resultado>comparingDouble(r -> r.puntuacion)
+                .thenComparing(r -> r.archivo.getId(), Comparator.reverseOrder());
+        PriorityQueue<Resultado> mejores = new PriorityQueue<>(orden);
+        for (Map.Entry<String, Double> e : puntuaciones.entrySet()) {
+            double puntuacion = e.getValue() * coincidencias.get(e.getKey()) / terminos.size();
+            Resultado r = new Resultado(archivos.get(e.getKey()), puntuacion);
+            if (mejores.size() < hasta) {
+                mejores.add(r);
+            } else if (hasta > 0 && orden.compare(r, mejores.peek()) > 0) {
+                mejores.poll();
+                mejores.add(r);
+            }
+        }
+
+        List<Resultado> ordenados = new ArrayList<>(mejores);
+        ordenados.sort(orden.reversed());
+        int desde = (int) Math.min((long) pagina * tamanoPagina, ordenados.size());
+        return new Pagina(puntuaciones.size(), ordenados.subList(desde, ordenados.size()));
+    }
+
+    public int getArchivosIndexados() {
+        return archivos.size();
+    }
+
+    public int getTerminos() {
+        return indice.size();
+    }
+
+    private void agregar(Archivo archivo) {
+        Map<String, Integer> contenido = terminosConocidos(archivo.getBlob());
+        if (contenido == null) {
+            indexar(archivo, Map.of());
+            sinContenido.put(archivo.getId(), archivo.getBlob());
+            programarCompletar();
+        } else {
+            indexar(archivo, contenido);
+        }
+    }
+
+    private void indexar(Archivo archivo, Map<String, Integer> contenido) {
+        if (archivos.containsKey(archivo.getId())) quitar(archivo.getId());
+
+        Map<String, Integer> terminos = new HashMap<>(contenido);
+        String nombre = archivo.getNombre() + " " + (archivo.getExtension() == null ? "" : archivo.getExtension());
+        tokenizar(nombre).forEach((t, f) -> terminos.merge(t, f * PESO_NOMBRE, Integer::sum));
+
+        archivos.put(archivo.getId(), archivo);
+        terminosPorArchivo.put(archivo.getId(), terminos);
+        terminos.forEach((t, f) -> indice.computeIfAbsent(t, k -> new HashMap<>()).put(archivo.getId(), f));
+    }
+
+    private void quitar(String id) {
+        archivos.remove(id);
+        sinContenido.remove(id);
+        Map<String, Integer> terminos = terminosPorArchivo.remove(id);
+        if (terminos == null) return;
+        for (String t : terminos.keySet()) {
+            Map<String, Integer> lista = indice.get(t);
+            if (lista == null) continue;
+            lista.remove(id);
+            if (lista.isEmpty()) indice.remove(t);
+        }
+    }
+
+    // Una vuelta del hilo indexador: toma de la cola los blobs pendientes, los lee
+    // y tokeniza fuera de ella y vuelve a la cola a completar el índice
+    private void programarCompletar() {
+        if (completando) return;
+        completando = true;
+        indexador.execute(() -> {
+            try {
+                List<String> blobs = ColaMutaciones.leerPorId(idUsuario,
+                        u -> new ArrayList<>(new LinkedHashSet<>(sinContenido.values())));
+                Map<String, Map<String, Integer>> leidos = new HashMap<>();
+                for (String blob : blobs) leidos.put(blob, prepararContenido(blob));
+                ColaMutaciones.leerPorId(idUsuario, u -> {
+                    completar(leidos);
+                    return null;
+                });
+            } catch (IOException | RuntimeException e) {
+                // El usuario ya no existe: su índice tampoco
+                log.warn("No se pudo completar el índice de contenido de {}: {}", idUsuario, e.getMessage());
+            }
+        });
+    }
+
+    private void completar(Map<String, Map<String, Integer>> leidos) {
+        completando = false;
+        for (Map.Entry<String, String> e : new ArrayList<>(sinContenido.entrySet())) {
+            Map<String, Integer> contenido = leidos.get(e.getValue());
+            if (contenido == null) continue; // llegó después de tomar la lista
+            Archivo archivo = archivos.get(e.getKey());
+            if (archivo != null) indexar(archivo, contenido);
+        }
+        if (!sinContenido.isEmpty()) programarCompletar();
+    }
+
+    // null si todavía no se leyó ese blob
+    private static Map<String, Integer> terminosConocidos(String blob) {
+        if (blob == null) return Map.of();
+        synchronized (terminosPorBlob) {
+            return terminosPorBlob.get(blob);
+        }
+    }
+
+    // Lee y tokeniza el blob (hasta MAX_CONTENIDO) y lo deja en la caché. Nunca
+    // desde la cola de un usuario
+    public static Map<String, Integer> prepararContenido(String blob) {
+        Map<String, Integer> conocidos = terminosConocidos(blob);
+        if (conocidos != null) return conocidos;
+
+        Map<String, Integer> terminos = Map.of();
+        try {
+            // Puede estar comprimido, así que el tamaño se ve leyendo hasta pasarse
+            if (AlmacenBlobs.existe(blob)) {
+                byte[] datos;
+                try (InputStream in = AlmacenBlobs.abrir(blob)) {
+                    datos = in.readNBytes((int) MAX_CONTENIDO + 1);
+                }
+                if (datos.length <= MAX_CONTENIDO && esTexto(datos)) {
+                    terminos = Collections.unmodifiableMap(tokenizar(new String(datos, StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo indexar el blob {}: {}", blob, e.getMessage());
+            return Map.of();
+        }
+
+        synchronized (terminosPorBlob) {
+            terminosPorBlob.put(blob, terminos);
+        }
+        return terminos;
+    }
+
+    // Un byte 0 al principio indica contenido binario
+    private static boolean esTexto(byte[] datos) {
+        int limite = Math.min(datos.length, 8192);
+        for (int i = 0; i < limite; i++) {
+            if (datos[i] == 0) return false;
+        }
+        return true;
+    }
+
+    // Minúsculas, sin tildes, partiendo por todo lo que no sea letra o dígito
+    static Map<String, Integer> tokenizar(String texto) {
+        Map<String, Integer> frecuencias = new HashMap<>();
+        if (texto == null) return frecuencias;
+        String normalizado = Normalizer.normalize(texto, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase();
+        for (String t : normalizado.split("[^\\p{L}\\p{N}]+")) {
+            if (t.isEmpty() || t.length() > MAX_TERMINO) continue;
+            frecuencias.merge(t, 1, Integer::sum);
+        }
+        return frecuencias;
+    }
+}
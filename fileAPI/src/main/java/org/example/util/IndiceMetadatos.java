@@ -0,0 +1,208 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// Índices secundarios por usuario sobre los metadatos de los archivos: hash por
+// extensión y mapas ordenados por tamaño y por fechas, de modo que un filtro por
+// rango cueste O(log n + k). Igual que IndiceContenido, se arma en la primera
+// consulta y se mantiene con los cambios del árbol.
+public class IndiceMetadatos implements Consumer<Cambio> {
+
+    // Los valores con que quedó indexado cada archivo, para poder sacarlo aunque
+    // el archivo ya haya cambiado
+    private static class Entrada {
+        final Archivo archivo;
+        final String extension;
+        final long tamano;
+        final LocalDateTime creado;
+        final LocalDateTime modificado;
+
+        Entrada(Archivo archivo) {
+            this.archivo = archivo;
+            this.extension = normalizarExtension(archivo.getExtension());
+            this.tamano = archivo.getTamano();
+            // documentos viejos pueden no traer fechas
+            this.creado = Objects.requireNonNullElse(archivo.getFechaCreacion(), LocalDateTime.MIN);
+            this.modificado = Objects.requireNonNullElse(archivo.getFechaModificacion(), LocalDateTime.MIN);
+        }
+    }
+
+    // Filtros de una consulta; los null no filtran
+    public static class Filtro {
+        public String extension;
+        public Long tamanoMin;
+        public Long tamanoMax;
+        public LocalDateTime creadoDesde;
+        public LocalDateTime creadoHasta;
+        public LocalDateTime modificadoDesde;
+        public LocalDateTime modificadoHasta;
+        public Directorio dentroDe;
+    }
+
+    private final Map<String, Entrada> entradas = new HashMap<>();
+    private final Map<String, Set<Archivo>> porExtension = new HashMap<>();
+    private final NavigableMap<Long, Set<Archivo>> porTamano = new TreeMap<>();
+    private final NavigableMap<LocalDateTime, Set<Archivo>> porCreacion = new TreeMap<>();
+    private final NavigableMap<LocalDateTime, Set<Archivo>> porModificacion = new TreeMap<>();
+
+    private static final Medidas.Accesos accesos = new Medidas.Accesos("indiceMetadatos");
+
+    public static IndiceMetadatos de(Usuario usuario) {
+        accesos.registrar(usuario, IndiceMetadatos.class);
+        return usuario.derivado(IndiceMetadatos.class, u -> {
+            IndiceMetadatos nuevo = new IndiceMetadatos();
+            if (u.getDirectorioRaiz() != null) u.getDirectorioRaiz().paraCadaArchivo(nuevo::agregar);
+            if (u.getDirectorioCompartidos() != null) u.getDirectorioCompartidos().paraCadaArchivo(nuevo::agregar);
+            u.agregarOyente(nuevo);
+            return nuevo;
+        });
+    }
+
+    @Override
+    public void accept(Cambio cambio) {
+        switch (cambio.getTipo()) {
+            case Cambio.AGREGAR_ARCHIVO -> agregar(cambio.getArchivo());
+            case Cambio.ELIMINAR_ARCHIVO -> quitar(cambio.getId());
+            // cambian el tamaño o la fecha de modificación
+            case Cambio.MODIFICAR_ARCHIVO, Cambio.MOVER_ARCHIVO -> {
+                Entrada e = entradas.get(cambio.getId());
+                if (e != null) agregar(e.archivo);
+            }
+            case Cambio.AGREGAR_DIRECTORIO, Cambio.COPIAR_DIRECTORIO -> cambio.getDirectorio().paraCadaArchivo(this::agregar);
+            case Cambio.ELIMINAR_DIRECTORIO -> {
+                Directorio quitado = cambio.getQuitado();
+                if (quitado != null) quitado.paraCadaArchivoDesplegado(a -> quitar(a.getId()));
+            }
+            default -> {
+                // mover carpetas y reservar espacio no cambian los metadatos
+            }
+        }
+    }
+
+    // Cada filtro indexado da su conjunto de candidatos en O(log n + k); se
+    // intersecan empezando por el más chico y lo demás se comprueba sobre el
+    // resultado. Sin filtros indexados se recorre la carpeta pedida.
+    // Ordenado por fecha de modificación, de la más reciente a la más antigua.
+    public List<Archivo> consultar(Filtro f) {
+        List<Collection<Archivo>> candidatos = new ArrayList<>();
+        if (f.extension != null) {
+            candidatos.add(porExtension.getOrDefault(normalizarExtension(f.extension), Set.of()));
+        }
+        if (f.tamanoMin != null || f.tamanoMax != null) {
+            candidatos.add(rango(porTamano,
+                    f.tamanoMin == null ? Long.MIN_VALUE : f.tamanoMin,
+                    f.tamanoMax == null ? Long.MAX_VALUE : f.tamanoMax));
+        }
+        if (f.creadoDesde != null || f.creadoHasta != null) {
+            candidatos.add(rango(porCreacion,
+                    f.creadoDesde == null ? LocalDateTime.MIN : f.creadoDesde,
+                    f.creadoHasta == null ? LocalDateTime.MAX : f.creadoHasta));
+        }
+        if (f.modificadoDesde != null || f.modificadoHasta != null) {
+            candidatos.add(rango(porModificacion,
+                    f.modificadoDesde == null ? LocalDateTime.MIN : f.modificadoDesde,
+                    f.modificadoHasta == null ? LocalDateTime.MAX : f.modificadoHasta));
+        }
+
+        Collection<Archivo> base;
+        if (candidatos.isEmpty()) {
+            List<Archivo> todos = new ArrayList<>();
+            if (f.dentroDe != null) {
+                f.dentroDe.paraCadaArchivo(todos::add);
+            } else {
+                entradas.values().forEach(e -> todos.add(e.archivo));
+            }
+            base = todos;
+        } else {
+            candidatos.sort(Comparator.comparingInt(Collection::size));
+            base = candidatos.get(0);
+        }
+
+        List<Entrada> cumplen = new ArrayList<>();
+        for (Archivo a : base) {
+            Entrada e = entradas.get(a.getId());
+            if (e != null && cumple(e, f)) cumplen.add(e);
+        }
+        cumplen.sort(Comparator.<Entrada, LocalDateTime>comparing(e -> e.modificado).reversed()
+                .thenComparing(e -> e.archivo.getId()));
+
+        List<Archivo> resultado = new ArrayList<>(cumplen.size());
+        for (Entrada e : cumplen) resultado.add(e.archivo);
+        return resultado;
+    }
+
+    private static boolean cumple(Entrada e, Filtro f) {
+        if (f.extension != null && !e.extension.equals(normalizarExtension(f.extension))) return false;
+        if (f.tamanoMin != null && e.tamano < f.tamanoMin) return false;
+        if (f.tamanoMax != null && e.tamano > f.tamanoMax) return false;
+        if (f.creadoDesde != null && e.creado.isBefore(f.creadoDesde)) return false;
+        if (f.creadoHasta != null && e.creado.isAfter(f.creadoHasta)) return false;
+        if (f.modificadoDesde != null && e.modificado.isBefore(f.modificadoDesde)) return false;
+        if (f.modificadoHasta != null && e.modificado.isAfter(f.modificadoHasta)) return false;
+        if (f.dentroDe != null) {
+            Directorio d = e.archivo.getDirectorio();
+            while (d != null && d != f.dentroDe) d = d.getPadre();
+            if (d == null) return false;
+        }
+        return true;
+    }
+
+    private static <K extends Comparable<? super K>> List<Archivo> rango(NavigableMap<K, Set<Archivo>> mapa, K desde, K hasta) {
+        List<Archivo> resultado = new ArrayList<>();
+        if (desde.compareTo(hasta) > 0) return resultado;
+        for (Set<Archivo> grupo : mapa.subMap(desde, true, hasta, true).values()) {
+            resultado.addAll(grupo);
+        }
+        return resultado;
+    }
+
+    private void agregar(Archivo archivo) {
+        quitar(archivo.getId());
+        Entrada e = new Entrada(archivo);
+        entradas.put(archivo.getId(), e);
+        porExtension.computeIfAbsent(e.extension, k -> new HashSet<>()).add(archivo);
+        porTamano.computeIfAbsent(e.tamano, k -> new HashSet<>()).add(archivo);
+        porCreacion.computeIfAbsent(e.creado, k -> new HashSet<>()).add(archivo);
+        porModificacion.computeIfAbsent(e.modificado, k -> new HashSet<>()).add(archivo);
+    }
+
+    private void quitar(String id) {
+        Entrada e = entradas.remove(id);
+        if (e == null) return;
+        sacar(porExtension, e.extension, e.archivo);
+        sacar(porTamano, e.tamano, e.archivo);
+        sacar(porCreacion, e.creado, e.archivo);
+        sacar(porModificacion, e.modificado, e.archivo);
+    }
+
+    private static <K> void sacar(Map<K, Set<Archivo>> mapa, K clave, Archivo archivo) {
+        Set<Archivo> grupo = mapa.get(clave);
+        if (grupo == null) return;
+        grupo.remove(archivo);
+        if (grupo.isEmpty()) mapa.remove(clave);
+    }
+
+    // "PDF", ".pdf" y "pdf" son la misma extensión
+    private static String normalizarExtension(String extension) {
+        if (extension == null) return "";
+        String e = extension.trim().toLowerCase();
+        return e.startsWith(".") ? e.substring(1) : e;
+    }
+}
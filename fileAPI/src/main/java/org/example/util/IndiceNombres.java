@@ -0,0 +1,117 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Multimapa por usuario de nombre -> nodos con ese nombre, para archivos (por
+// nombre sin extensión) y carpetas, en las dos raíces. Guarda los nodos y no las
+// rutas: la ruta se arma al consultar subiendo por los padres, así mover una
+// carpeta no obliga a tocar nada de lo que cuelga de ella.
+public class IndiceNombres implements Consumer<Cambio> {
+    // Primero lo de root, después compartidos; dentro de cada raíz, alfabético
+    private static final Comparator<String> ORDEN = Comparator
+            .comparing((String ruta) -> !(ruta.equals("root") || ruta.startsWith("root/")))
+            .thenComparing(Comparator.naturalOrder());
+
+    private final Map<String, Set<Archivo>> archivos = new HashMap<>();
+    private final Map<String, Set<Directorio>> carpetas = new HashMap<>();
+    // El cambio de borrado de un archivo solo trae su id
+    private final Map<String, Archivo> archivosPorId = new HashMap<>();
+
+    private static final Medidas.Accesos accesos = new Medidas.Accesos("indiceNombres");
+
+    public static IndiceNombres de(Usuario usuario) {
+        accesos.registrar(usuario, IndiceNombres.class);
+        return usuario.derivado(IndiceNombres.class, u -> {
+            IndiceNombres nuevo = new IndiceNombres();
+            if (u.getDirectorioRaiz() != null) nuevo.agregarArbol(u.getDirectorioRaiz());
+            if (u.getDirectorioCompartidos() != null) nuevo.agregarArbol(u.getDirectorioCompartidos());
+            u.agregarOyente(nuevo);
+            return nuevo;
+        });
+    }
+
+    @Override
+    public void accept(Cambio cambio) {
+        switch (cambio.getTipo()) {
+            case Cambio.AGREGAR_ARCHIVO -> agregarArchivo(cambio.getArchivo());
+            case Cambio.ELIMINAR_ARCHIVO -> {
+                Archivo quitado = archivosPorId.get(cambio.getId());
+                if (quitado != null) quitarArchivo(quitado);
+            }
+            case Cambio.AGREGAR_DIRECTORIO, Cambio.COPIAR_DIRECTORIO -> agregarArbol(cambio.getDirectorio());
+            case Cambio.ELIMINAR_DIRECTORIO -> {
+                Directorio quitado = cambio.getQuitado();
+                if (quitado != null) quitarArbol(quitado);
+            }
+            default -> {
+                // los movimientos no cambian nombres; las rutas salen de los padres
+            }
+        }
+    }
+
+    // Rutas de las carpetas que contienen un archivo con ese nombre
+    public List<String> rutasDeArchivo(String nombre) {
+        List<String> rutas = new ArrayList<>();
+        for (Archivo a : archivos.getOrDefault(nombre, Set.of())) {
+            if (a.getDirectorio() != null) rutas.add(a.getDirectorio().getRuta());
+        }
+        rutas.sort(ORDEN);
+        return rutas;
+    }
+
+    public List<String> rutasDeCarpeta(String nombre) {
+        List<String> rutas = new ArrayList<>();
+        for (Directorio d : carpetas.getOrDefault(nombre, Set.of())) {
+            rutas.add(d.getRuta());
+        }
+        rutas.sort(ORDEN);
+        return rutas;
+    }
+
+    private void agregarArbol(Directorio dir) {
+        agregar(carpetas, dir.getNombre(), dir);
+        for (Archivo a : dir.verArchivos()) agregarArchivo(a);
+        for (Directorio sub : dir.verSubdirectorios()) agregarArbol(sub);
+    }
+
+    // Lo quitado ya no está en el árbol y no se despliega; lo que se indexó se
+    // desplegó al agregarlo
+    private void quitarArbol(Directorio dir) {
+        quitar(carpetas, dir.getNombre(), dir);
+        for (Archivo a : dir.getArchivos()) quitarArchivo(a);
+        for (Directorio sub : dir.getSubdirectorios()) quitarArbol(sub);
+    }
+
+    private void agregarArchivo(Archivo archivo) {
+        archivosPorId.put(archivo.getId(), archivo);
+        agregar(archivos, archivo.getNombre(), archivo);
+    }
+
+    private void quitarArchivo(Archivo archivo) {
+        archivosPorId.remove(archivo.getId());
+        quitar(archivos, archivo.getNombre(), archivo);
+    }
+
+    private static <T> void agregar(Map<String, Set<T>> mapa, String nombre, T nodo) {
+        mapa.computeIfAbsent(nombre, k -> new HashSet<>()).add(nodo);
+    }
+
+    private static <T> void quitar(Map<String, Set<T>> mapa, String nombre, T nodo) {
+        Set<T> grupo = mapa.get(nombre);
+        if (grupo == null) return;
+        grupo.remove(nodo);
+        if (grupo.isEmpty()) mapa.remove(nombre);
+    }
+}
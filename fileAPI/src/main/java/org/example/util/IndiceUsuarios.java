@@ -0,0 +1,188 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Índice nombre -> id de los usuarios guardados en disco.
+// Se persiste junto a las instantáneas usuario_* y se reconstruye al arrancar,
+// de modo que buscar un usuario por nombre no requiera leer todos los archivos.
+public class IndiceUsuarios {
+    private static final Logger log = LoggerFactory.getLogger(IndiceUsuarios.class);
+    static final String ARCHIVO_INDICE = "usuarios_indice.json";
+
+    // Lo que se guarda en disco por cada usuario: su nombre y la fecha de
+    // modificación del archivo cuando se leyó ese nombre
+    public static class Entrada {
+        public String nombre;
+        public long modificado;
+
+        public Entrada() {}
+
+        public Entrada(String nombre, long modificado) {
+            this.nombre = nombre;
+            this.modificado = modificado;
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final Map<String, String> idPorNombre = new ConcurrentHashMap<>();
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private Path directorio;
+    // Cerrojo y no synchronized: se escribe a disco con él tomado y un hilo
+    // virtual quedaría fijado a su portador mientras dura la escritura
+    private final ReentrantLock cerrojo = new ReentrantLock();
+
+    public IndiceUsuarios(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    // Recorre las instantáneas del directorio. Solo se vuelve a leer el nombre de
+    // los archivos que cambiaron desde que se guardó el índice; los que ya no
+    // existen se descartan, así el índice no puede quedar desfasado del disco.
+    public void reconstruir(Path directorio) throws IOException {
+        cerrojo.lock();
+        try {
+            reconstruirBloqueado(directorio);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void reconstruirBloqueado(Path directorio) throws IOException {
+        long inicio = Medidas.inicio();
+        this.directorio = directorio;
+        Map<String, Entrada> persistidas = leerPersistido();
+
+        idPorNombre.clear();
+        entradas.clear();
+
+        File[] encontrados = directorio.toFile()
+                .listFiles((dir, name) -> FormatoUsuario.esInstantanea(name));
+        if (encontrados == null) encontrados = new File[0];
+
+        // Si un usuario quedó con las dos versiones (se cortó la conversión a
+        // Smile), vale la Smile
+        Map<String, File> archivos = new HashMap<>();
+        for (File archivo : encontrados) {
+            String id = FormatoUsuario.idDe(archivo.getName());
+            if (archivo.getName().endsWith(FormatoUsuario.SMILE) || !archivos.containsKey(id)) {
+                archivos.put(id, archivo);
+            }
+        }
+
+        boolean cambios = persistidas.size() != archivos.size();
+        for (Map.Entry<String, File> e : archivos.entrySet()) {
+            String id = e.getKey();
+            File archivo = e.getValue();
+            long modificado = archivo.lastModified();
+
+            Entrada entrada = persistidas.get(id);
+            if (entrada == null || entrada.modificado != modificado) {
+                String nombre = leerNombre(archivo);
+                if (nombre == null) continue;
+                entrada = new Entrada(nombre, modificado);
+                cambios = true;
+            }
+
+            String previo = idPorNombre.putIfAbsent(entrada.nombre, id);
+            if (previo != null) {
+                log.warn("Nombre de usuario duplicado en disco: {} ({}, {})", entrada.nombre, previo, id);
+                continue;
+            }
+            entradas.put(id, entrada);
+        }
+
+        if (cambios) persistir();
+        Medidas.fin(Medidas.ESCANEAR_USUARIOS, inicio);
+    }
+
+    public String buscar(String nombre) {
+        return nombre == null ? null : idPorNombre.get(nombre);
+    }
+
+    // Reserva el nombre para un usuario nuevo. Devuelve false si ya está tomado.
+    public boolean reservar(String nombre, String id) {
+        return idPorNombre.putIfAbsent(nombre, id) == null;
+    }
+
+    // Registra el usuario tras escribir su archivo. Solo se persiste el índice
+    // cuando cambia la relación nombre -> id, no en cada guardado.
+    public void registrar(String nombre, String id, long modificado) throws IOException {
+        Entrada anterior = entradas.put(id, new Entrada(nombre, modificado));
+        String previo = idPorNombre.put(nombre, id);
+        if (anterior != null && !anterior.nombre.equals(nombre)) {
+            idPorNombre.remove(anterior.nombre, id);
+        }
+        if (anterior == null || !anterior.nombre.equals(nombre) || !id.equals(previo)) {
+            persistir();
+        }
+    }
+
+    // Quita la entrada si todavía apunta a ese id (p. ej. el archivo ya no existe)
+    public void eliminar(String nombre, String id) throws IOException {
+        if (idPorNombre.remove(nombre, id)) {
+            entradas.remove(id);
+            persistir();
+        }
+    }
+
+    public int tamano() {
+        return idPorNombre.size();
+    }
+
+    public void persistir() throws IOException {
+        cerrojo.lock();
+        try {
+            if (directorio == null) return;
+            Path destino = directorio.resolve(ARCHIVO_INDICE);
+            Path temporal = directorio.resolve(ARCHIVO_INDICE + ".tmp");
+            mapper.writeValue(temporal.toFile(), new HashMap<>(entradas));
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private Map<String, Entrada> leerPersistido() {
+        File archivo = directorio.resolve(ARCHIVO_INDICE).toFile();
+        if (!archivo.exists()) return new HashMap<>();
+        try {
+            return mapper.readValue(archivo, new TypeReference<Map<String, Entrada>>() {});
+        } catch (IOException e) {
+            // Índice corrupto: se reconstruye desde los archivos de usuario
+            return new HashMap<>();
+        }
+    }
+
+    // Lee solo el campo "nombre" de primer nivel, sin deserializar todo el árbol
+    private String leerNombre(File archivo) {
+        try (JsonParser parser = FormatoUsuario.crearParser(archivo)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String campo = parser.currentName();
+                parser.nextToken();
+                if ("nombre".equals(campo)) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer {}: {}", archivo.getName(), e.getMessage());
+        }
+        return null;
+    }
+}
@@ -1,40 +1,460 @@
 package org.example.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
 import org.example.model.Usuario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class JsonUtil {
+    private static final Logger log = LoggerFactory.getLogger(JsonUtil.class);
+
+    // Para el índice de nombres; las instantáneas van por FormatoUsuario
     private static final ObjectMapper mapper = new ObjectMapper()
-            .registerModule(new JavaTimeModule())
-            .enable(SerializationFeature.INDENT_OUTPUT);
+            .registerModule(new JavaTimeModule());
+
+    private static final IndiceUsuarios indice = new IndiceUsuarios(mapper);
+    private static volatile Path directorio;
+
+    private static volatile CacheUsuarios cache = new CacheUsuarios(256L * 1024 * 1024);
+    // 0 = escritura inmediata; > 0 = los cambios se agrupan y se escriben cada N ms
+    private static volatile long intervaloEscrituraMs = 0;
+    private static ScheduledExecutorService vaciador;
+    private static ScheduledExecutorService recolector;
+
+    // Compacta diarios en segundo plano; cada usuario entra una sola vez a la cola
+    private static final ExecutorService compactador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "compactador-diario");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Set<String> compactacionesPendientes = ConcurrentHashMap.newKeySet();
+    // Usuarios descartados de la caché tras una escritura fallida (ver descartar)
+    private static final Set<String> descartados = ConcurrentHashMap.newKeySet();
+
+    // Exclusión por usuario entre quien modifica el árbol y quien lo serializa
+    private static final Map<String, ReentrantLock> cerrojos = new ConcurrentHashMap<>();
+
+    // Para inicializar y reconfigurar. No se usa synchronized en nada que toque
+    // disco: con hilos virtuales un monitor tomado durante la E/S fija el hilo a
+    // su portador y deja al resto de peticiones sin dónde correr.
+    private static final ReentrantLock configuracion = new ReentrantLock();
+
+    // Fija el directorio de datos y reconstruye el índice de nombres
+    public static void inicializar(Path dir) throws IOException {
+        configuracion.lock();
+        try {
+            Files.createDirectories(dir);
+            indice.reconstruir(dir);
+            AlmacenBlobs.inicializar(dir.resolve("blobs"));
+            SesionesCarga.inicializar(dir.resolve("cargas"));
+            directorio = dir;
+        } finally {
+            configuracion.unlock();
+        }
+    }
+
+    public static void configurarCache(long capacidadBytes, long intervaloMs) throws IOException {
+        configuracion.lock();
+        try {
+            vaciarCache();
+            cache = new CacheUsuarios(capacidadBytes);
+            intervaloEscrituraMs = intervaloMs;
+            programarVaciado(intervaloMs);
+        } finally {
+            configuracion.unlock();
+        }
+    }
+
+    private static void programarVaciado(long intervaloMs) {
+        if (vaciador != null) {
+            vaciador.shutdown();
+            vaciador = null;
+        }
+        if (intervaloMs > 0) {
+            vaciador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cache-usuarios-vaciado");
+                t.setDaemon(true);
+                return t;
+            });
+            vaciador.scheduleWithFixedDelay(() -> {
+                try {
+                    vaciarCache();
+                } catch (IOException e) {
+                    log.error("Error al vaciar la cache de usuarios", e);
+                }
+            }, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Cuenta las referencias a blobs de todos los usuarios en disco y luego, cada
+    // intervalo, borra los blobs que quedaron sin referencias
+    public static void configurarRecolector(long intervaloMs, long graciaMs) {
+        configuracion.lock();
+        try {
+            programarRecolector(intervaloMs, graciaMs);
+        } finally {
+            configuracion.unlock();
+        }
+    }
+
+    private static void programarRecolector(long intervaloMs, long graciaMs) {
+        if (recolector != null) recolector.shutdownNow();
+        recolector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recolector-blobs");
+            t.setDaemon(true);
+            return t;
+        });
+        recolector.execute(() -> {
+            try {
+                AlmacenBlobs.reconstruirReferencias(blobsEnDisco(directorio()));
+            } catch (IOException e) {
+                log.error("No se pudieron contar las referencias a blobs", e);
+            }
+        });
+        if (intervaloMs > 0) {
+            recolector.scheduleWithFixedDelay(() -> {
+                try {
+                    SesionesCarga.descartarVencidas();
+                } catch (IOException e) {
+                    log.error("Error al descartar subidas vencidas", e);
+                }
+                try {
+                    recolectarBlobs(graciaMs);
+                } catch (IOException e) {
+                    log.error("Error al recolectar blobs", e);
+                }
+            }, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static int recolectarBlobs(long graciaMs) throws IOException {
+        // Lo que se liberó en memoria tiene que estar en disco antes de borrar el blob
+        vaciarCache();
+        return AlmacenBlobs.recolectar(graciaMs);
+    }
+
+    // Las referencias a blobs de todos los usuarios en disco, contadas con la
+    // misma regla que el proceso en marcha (ver AlmacenBlobs.retenerArbol): cada
+    // instantánea con su diario reproducido encima, y las copias pendientes con lo
+    // que ven de su origen. Se lee un usuario a la vez; la instantánea y el diario
+    // se leen bajo su cerrojo para no cruzarse con una compactación, y el diario
+    // sin cortarlo, porque la cola puede estar escribiéndolo.
+    // Paquete y no private para poder probarlo con otro directorio
+    static List<String> blobsEnDisco(Path directorio) throws IOException {
+        File[] archivos = directorio.toFile()
+                .listFiles((dir, name) -> FormatoUsuario.esInstantanea(name));
+        List<String> blobs = new ArrayList<>();
+        if (archivos == null) return blobs;
+
+        long inicio = Medidas.inicio();
+        Set<String> ids = new LinkedHashSet<>();
+        for (File archivo : archivos) ids.add(FormatoUsuario.idDe(archivo.getName()));
+        for (String id : ids) {
+            Usuario leido;
+            List<Cambio> cambios;
+            ReentrantLock cerrojo = cerrojo(id);
+            cerrojo.lock();
+            try {
+                File instantanea = FormatoUsuario.buscar(directorio, id);
+                if (instantanea == null) continue;
+                leido = FormatoUsuario.leer(instantanea);
+                cambios = DiarioUsuarios.leerSinCortar(directorio.resolve("usuario_" + id + ".journal"));
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se pudo leer el usuario {}: {}", id, e.getMessage());
+                continue;
+            } finally {
+                cerrojo.unlock();
+            }
+            try {
+                DiarioUsuarios.reproducir(leido, cambios);
+            } catch (RuntimeException e) {
+                log.warn("No se pudo reproducir el diario del usuario {}: {}", id, e.getMessage());
+            }
+            if (leido.getDirectorioRaiz() != null) blobs.addAll(AlmacenBlobs.blobsDe(leido.getDirectorioRaiz()));
+            if (leido.getDirectorioCompartidos() != null) blobs.addAll(AlmacenBlobs.blobsDe(leido.getDirectorioCompartidos()));
+        }
+        Medidas.fin(Medidas.ESCANEAR_BLOBS, inicio);
+        return blobs;
+    }
+
+    // Escribe a disco todos los usuarios con cambios pendientes
+    public static void vaciarCache() throws IOException {
+        escribir(cache.tomarSucios());
+    }
+
+    public static Map<String, Object> estadisticasCache() {
+        return cache.estadisticas();
+    }
+
+    private static Path directorio() throws IOException {
+        if (directorio == null) {
+            configuracion.lock();
+            try {
+                if (directorio == null) inicializar(Paths.get("."));
+            } finally {
+                configuracion.unlock();
+            }
+        }
+        return directorio;
+    }
+
+    private static File archivoUsuario(String id) throws IOException {
+        return FormatoUsuario.instantanea(directorio(), id).toFile();
+    }
+
+    private static Path archivoDiario(String id) throws IOException {
+        return directorio().resolve("usuario_" + id + ".journal");
+    }
+
+    // Conecta los cambios del árbol con el diario del usuario
+    private static void vincular(Usuario usuario) {
+        if (usuario.getObservador() == null) {
+            String id = usuario.getId();
+            usuario.setObservador(cambio -> DiarioUsuarios.anotar(id, cambio));
+        }
+    }
 
+    // Con escritura diferida solo se marca como sucio; varias ediciones seguidas
+    // del mismo usuario terminan en una única escritura
     public static void guardarUsuario(Usuario usuario) throws IOException {
-        String filename = "usuario_" + usuario.getId() + ".json";
-        mapper.writeValue(new File(filename), usuario);
+        vincular(usuario);
+        if (intervaloEscrituraMs > 0) {
+            cache.ponerModificado(usuario, true);
+        } else {
+            try {
+                escribirArchivo(usuario);
+            } catch (IOException e) {
+                descartar(usuario);
+                throw e;
+            }
+            cache.ponerModificado(usuario, false);
+        }
+        escribir(cache.tomarDesalojados());
+    }
+
+    // Una escritura síncrona que falla ya devolvió error a quienes hicieron los
+    // cambios, pero el árbol en memoria los tiene y el diario los guarda como
+    // pendientes: se tiran las dos cosas y la próxima carga lee lo que hay en
+    // disco. Lo que esas operaciones liberaron en el almacén de blobs puede volver
+    // con la recarga, así que al recargar se retiene el árbol otra vez (contado de
+    // más, nunca de menos).
+    private static void descartar(Usuario usuario) {
+        String id = usuario.getId();
+        ReentrantLock cerrojo = cerrojo(id);
+        cerrojo.lock();
+        try {
+            DiarioUsuarios.olvidarPendientes(id);
+            cache.descartar(usuario);
+            descartados.add(id);
+        } finally {
+            cerrojo.unlock();
+        }
+        log.warn("Usuario {} descartado de la caché tras fallar su escritura", id);
+    }
+
+    // Solo desde la franja del usuario (ColaMutaciones): una carga fuera de ella
+    // reproduciría el diario y compactaría sin su cola, y podría dejar en la
+    // caché otra instancia mientras la franja modifica la que acaba de salir
+    static Usuario cargarUsuario(String id) throws IOException {
+        Usuario usuario = cache.obtener(id);
+        if (usuario != null) return usuario;
+
+        // Instantánea + los cambios del diario posteriores a ella
+        long inicio = Medidas.inicio();
+        File instantanea = FormatoUsuario.buscar(directorio(), id);
+        if (instantanea == null) {
+            throw new FileNotFoundException("No existe la instantánea del usuario " + id);
+        }
+        long bytes = instantanea.length();
+        Usuario leido = FormatoUsuario.leer(instantanea);
+        Medidas.INSTANTANEA.leidos(bytes);
+        // Una instantánea .json de antes se reescribe en Smile al cargarla
+        boolean legada = !instantanea.getName().endsWith(FormatoUsuario.SMILE);
+        List<Cambio> cambios = DiarioUsuarios.leer(archivoDiario(id));
+        DiarioUsuarios.reproducir(leido, cambios);
+
+        List<Archivo> migrados = new ArrayList<>();
+        migrarContenidos(leido.getDirectorioRaiz(), migrados);
+        migrarContenidos(leido.getDirectorioCompartidos(), migrados);
+        Medidas.fin(Medidas.CARGAR, inicio);
+        Medidas.documento(leido, bytes);
+
+        usuario = cache.ponerCargado(leido);
+        if (usuario == leido) {
+            vincular(usuario);
+            if (descartados.remove(id)) {
+                if (usuario.getDirectorioRaiz() != null) AlmacenBlobs.retenerArbol(usuario.getDirectorioRaiz());
+                if (usuario.getDirectorioCompartidos() != null) AlmacenBlobs.retenerArbol(usuario.getDirectorioCompartidos());
+            }
+            // Se reescribe ya sin el contenido embebido
+            migrados.forEach(a -> AlmacenBlobs.retener(a.getBlob()));
+            if (!migrados.isEmpty() || legada) {
+                compactar(usuario);
+            } else if (!cambios.isEmpty() && Files.size(archivoDiario(id)) > DiarioUsuarios.getUmbralCompactacion()) {
+                programarCompactacion(id);
+            }
+        }
+        escribir(cache.tomarDesalojados());
+        return usuario;
+    }
+
+    // Documentos antiguos traen el contenido de cada archivo dentro del JSON;
+    // se pasa al almacén de blobs y el árbol queda solo con la referencia
+    private static void migrarContenidos(Directorio dir, List<Archivo> migrados) throws IOException {
+        // Una copia pendiente no tiene archivos propios (ni documentos tan viejos)
+        if (dir == null || dir.esCopiaPendiente()) return;
+        for (Archivo archivo : dir.getArchivos()) {
+            if (archivo.getContenidoLegado() != null) {
+                archivo.migrarContenido(AlmacenBlobs.guardar(archivo.getContenidoLegado()));
+                migrados.add(archivo);
+            }
+        }
+        for (Directorio sub : dir.getSubdirectorios()) {
+            migrarContenidos(sub, migrados);
+        }
+    }
+
+    private static void escribir(List<Usuario> usuarios) throws IOException {
+        IOException error = null;
+        for (Usuario u : usuarios) {
+            try {
+                escribirArchivo(u);
+                cache.escrito(u);
+            } catch (IOException e) {
+                cache.fallo(u);
+                error = e;
+            }
+        }
+        if (error != null) throw error;
     }
 
-    public static Usuario cargarUsuario(String id) throws IOException {
-        String filename = "usuario_" + id + ".json";
-        return mapper.readValue(new File(filename), Usuario.class);
+    public static ReentrantLock cerrojo(String id) {
+        return cerrojos.computeIfAbsent(id, k -> new ReentrantLock());
     }
-    public static Usuario buscarPorNombre(String nombre) throws IOException {
-        File folder = new File(".");
-        File[] archivos = folder.exists()
-                ? folder.listFiles((dir, name) -> name.startsWith("usuario_") && name.endsWith(".json"))
-                : new File[0];
 
-        for (File archivo : archivos) {
-            Usuario u = mapper.readValue(archivo, Usuario.class);
-            if (u.getNombre().equals(nombre)) {
-                return u;
+    // Un usuario sin instantánea (recién creado) se escribe entero; si no, solo se
+    // añaden sus cambios al diario
+    private static void escribirArchivo(Usuario usuario) throws IOException {
+        String id = usuario.getId();
+        ReentrantLock cerrojo = cerrojo(id);
+        long tamanoDiario;
+        cerrojo.lock();
+        try {
+            if (FormatoUsuario.buscar(directorio(), id) == null) {
+                compactar(usuario);
+                return;
             }
+            long inicio = Medidas.inicio();
+            tamanoDiario = DiarioUsuarios.volcar(archivoDiario(id), id);
+            Medidas.fin(Medidas.GUARDAR, inicio);
+        } finally {
+            cerrojo.unlock();
         }
-        throw new IOException("Usuario no encontrado por nombre: " + nombre);
+        if (tamanoDiario > DiarioUsuarios.getUmbralCompactacion()) {
+            programarCompactacion(id);
+        }
+    }
+
+    // Escribe la instantánea completa (temporal + fsync + renombrado atómico) y
+    // vacía el diario. Si se cae entre las dos cosas, al cargar se saltan los
+    // cambios del diario que la instantánea ya incluye, por su secuencia.
+    private static void compactar(Usuario usuario) throws IOException {
+        String id = usuario.getId();
+        File archivo = archivoUsuario(id);
+        Path temporal = archivo.toPath().resolveSibling(archivo.getName() + ".tmp");
+        ReentrantLock cerrojo = cerrojo(id);
+        long inicio = Medidas.inicio();
+        byte[] datos;
+        cerrojo.lock();
+        try {
+            datos = FormatoUsuario.serializar(usuario);
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                canal.write(ByteBuffer.wrap(datos));
+                canal.force(true);
+            }
+            try {
+                Files.move(temporal, archivo.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporal, archivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            DiarioUsuarios.descartarPendientes(id);
+            Files.deleteIfExists(archivoDiario(id));
+            Files.deleteIfExists(FormatoUsuario.instantaneaLegada(directorio(), id));
+        } finally {
+            cerrojo.unlock();
+        }
+        Medidas.fin(Medidas.COMPACTAR, inicio);
+        Medidas.INSTANTANEA.escritos(datos.length);
+        Medidas.documento(usuario, datos.length);
+        indice.registrar(usuario.getNombre(), id, archivo.lastModified());
+    }
+
+    // La compactación pasa por la cola del usuario, así no compite con sus operaciones
+    private static void programarCompactacion(String id) {
+        if (!compactacionesPendientes.add(id)) return;
+        compactador.execute(() -> {
+            compactacionesPendientes.remove(id);
+            try {
+                ColaMutaciones.leerPorId(id, usuario -> {
+                    compactar(usuario);
+                    return null;
+                });
+            } catch (IOException e) {
+                log.error("No se pudo compactar el diario de {}", id, e);
+            }
+        });
+    }
+
+    public static String buscarIdPorNombre(String nombre) throws IOException {
+        directorio();
+        return indice.buscar(nombre);
+    }
+
+    // Reserva el nombre en el índice; false si ya existe un usuario con ese nombre
+    public static boolean reservarNombre(String nombre, String id) throws IOException {
+        directorio();
+        return indice.reservar(nombre, id);
+    }
+
+    public static void liberarNombre(String nombre, String id) throws IOException {
+        indice.eliminar(nombre, id);
+    }
+
+    // El usuario completo en JSON legible, para exportarlo o revisarlo a mano
+    public static byte[] exportarJson(Usuario usuario) throws IOException {
+        return FormatoUsuario.exportarJson(usuario);
+    }
+
+    public static void persistirIndice() throws IOException {
+        indice.persistir();
     }
 
-} 
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Listados de un nivel de carpeta, ordenados (carpetas primero, luego por nombre)
+// y paginados con un cursor. El orden de cada carpeta se calcula una vez y se
+// guarda hasta que cambian sus hijos directos; una página cuesta una búsqueda
+// binaria más el tamaño de la página.
+public class ListadoDirectorios implements Consumer<Cambio> {
+    private static final int MAX_CARPETAS_ORDENADAS = 256;
+    private static final Medidas.Accesos accesos = new Medidas.Accesos("listados");
+
+    private static final Comparator<String> POR_NOMBRE =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    // Un hijo directo: carpeta o archivo. La clave es lo que va en el cursor
+    public static class Entrada {
+        public final Directorio carpeta;
+        public final Archivo archivo;
+        final String clave;
+
+        private Entrada(Directorio carpeta, Archivo archivo) {
+            this.carpeta = carpeta;
+            this.archivo = archivo;
+            this.clave = carpeta != null ? "d:" + carpeta.getNombre() : "f:" + archivo.getNombreCompleto();
+        }
+
+        // Solo para buscar la posición de un cursor
+        private Entrada(String clave) {
+            this.carpeta = null;
+            this.archivo = null;
+            this.clave = clave;
+        }
+    }
+
+    private static final Comparator<Entrada> ORDEN = Comparator
+            .comparing((Entrada e) -> e.clave.startsWith("f:"))
+            .thenComparing(e -> e.clave.substring(2), POR_NOMBRE);
+
+    public static class Pagina {
+        public final List<Entrada> entradas;
+        public final String siguiente; // null si no hay más
+        public final int total;
+
+        Pagina(List<Entrada> entradas, String siguiente, int total) {
+            this.entradas = entradas;
+            this.siguiente = siguiente;
+            this.total = total;
+        }
+    }
+
+    // id de carpeta -> hijos ordenados
+    private final Map<String, List<Entrada>> ordenados =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Entrada>> mayor) {
+                    return size() > MAX_CARPETAS_ORDENADAS;
+                }
+            };
+
+    public static ListadoDirectorios de(Usuario usuario) {
+        return usuario.derivado(ListadoDirectorios.class, u -> {
+            ListadoDirectorios nuevo = new ListadoDirectorios();
+            u.agregarOyente(nuevo);
+            return nuevo;
+        });
+    }
+
+    // Cambian los hijos de la carpeta afectada (y del destino en los movimientos)
+    @Override
+    public void accept(Cambio cambio) {
+        if (cambio.getDir() != null) ordenados.remove(cambio.getDir());
+        if (cambio.getDestino() != null) ordenados.remove(cambio.getDestino());
+    }
+
+    // La página que sigue a la entrada del cursor (o la primera si es null).
+    // Devuelve null si el cursor no es válido.
+    public Pagina listar(Directorio dir, String cursor, int limite) {
+        List<Entrada> hijos = ordenados.get(dir.getId());
+        accesos.registrar(hijos != null);
+        if (hijos == null) {
+            hijos = ordenar(dir);
+            ordenados.put(dir.getId(), hijos);
+        }
+
+        int desde = 0;
+        if (cursor != null) {
+            Entrada ultima = decodificar(cursor);
+            if (ultima == null) return null;
+            // Se busca por clave: aunque se agreguen o quiten hijos entre página
+            // y página, se sigue justo después de lo último que se entregó
+            int pos = Collections.binarySearch(hijos, ultima, ORDEN);
+            desde = pos >= 0 ? pos + 1 : -pos - 1;
+        }
+
+        int hasta = Math.min(desde + limite, hijos.size());
+        List<Entrada> pagina = hijos.subList(desde, hasta);
+        String siguiente = hasta < hijos.size() ? codificar(pagina.get(pagina.size() - 1)) : null;
+        return new Pagina(List.copyOf(pagina), siguiente, hijos.size());
+    }
+
+    private static List<Entrada> ordenar(Directorio dir) {
+        List<Entrada> hijos = new ArrayList<>(dir.verSubdirectorios().size() + dir.verArchivos().size());
+        for (Directorio sub : dir.verSubdirectorios()) hijos.add(new Entrada(sub, null));
+        for (Archivo a : dir.verArchivos()) hijos.add(new Entrada(null, a));
+        hijos.sort(ORDEN);
+        return hijos;
+    }
+
+    private static String codificar(Entrada e) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(e.clave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Entrada decodificar(String cursor) {
+        String clave;
+        try {
+            clave = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!clave.startsWith("d:") && !clave.startsWith("f:")) return null;
+        return new Entrada(clave);
+    }
+}
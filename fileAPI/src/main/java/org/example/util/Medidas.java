@@ -0,0 +1,140 @@
+package org.example.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.util.concurrent.TimeUnit;
+
+// Medidores del almacenamiento y de la forma de los árboles. Van al registro
+// global de Micrometer, al que Spring Boot engancha el de Prometheus; sin
+// aplicación (benchmarks, herramientas) quedan sin efecto.
+// Cada medidor se crea una sola vez al cargar la clase: en el camino caliente
+// solo se suma a un contador o se registra una duración.
+public class Medidas {
+    private static final MeterRegistry registro = Metrics.globalRegistry;
+
+    // Operaciones de almacenamiento (fileapi.almacen{operacion=...})
+    public static final Timer CARGAR = operacion("cargar");          // instantánea + diario, tras un fallo de cache
+    public static final Timer GUARDAR = operacion("guardar");        // cambios añadidos al diario
+    public static final Timer COMPACTAR = operacion("compactar");    // instantánea completa
+    public static final Timer ESCANEAR_USUARIOS = operacion("escanearUsuarios");
+    public static final Timer ESCANEAR_BLOBS = operacion("escanearBlobs");
+    public static final Timer RECOLECTAR = operacion("recolectarBlobs");
+
+    // Bytes leídos y escritos en disco, por tipo de archivo
+    public static final Bytes INSTANTANEA = new Bytes("instantanea");
+    public static final Bytes DIARIO = new Bytes("diario");
+    public static final Bytes BLOB = new Bytes("blob");
+
+    // Forma de los documentos, medida al cargarlos de disco y al compactarlos
+    private static final DistributionSummary documento = DistributionSummary.builder("fileapi.usuario.documento")
+            .description("Tamaño de la instantánea del usuario")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(1024.0)
+            .maximumExpectedValue(1024.0 * 1024 * 1024)
+            .register(registro);
+    private static final DistributionSummary profundidad = DistributionSummary.builder("fileapi.arbol.profundidad")
+            .description("Niveles de carpetas del árbol del usuario")
+            .serviceLevelObjectives(1, 2, 4, 8, 16, 32, 64, 128, 256)
+            .register(registro);
+    private static final DistributionSummary ramificacion = DistributionSummary.builder("fileapi.arbol.ramificacion")
+            .description("Subcarpetas más archivos de cada carpeta")
+            .serviceLevelObjectives(1, 4, 16, 64, 256, 1024, 4096, 16384, 65536)
+            .register(registro);
+
+    public static class Bytes {
+        private final Counter leidos;
+        private final Counter escritos;
+
+        private Bytes(String tipo) {
+            leidos = contador(tipo, "leidos");
+            escritos = contador(tipo, "escritos");
+        }
+
+        private static Counter contador(String tipo, String sentido) {
+            return Counter.builder("fileapi.almacen.bytes")
+                    .baseUnit("bytes")
+                    .tag("tipo", tipo)
+                    .tag("sentido", sentido)
+                    .register(registro);
+        }
+
+        public void leidos(long bytes) {
+            if (bytes > 0) leidos.increment(bytes);
+        }
+
+        public void escritos(long bytes) {
+            if (bytes > 0) escritos.increment(bytes);
+        }
+    }
+
+    // Aciertos y fallos de una cache o de un índice derivado
+    // (fileapi.cache.accesos{cache=...,resultado=acierto|fallo})
+    public static class Accesos {
+        private final Counter aciertos;
+        private final Counter fallos;
+
+        public Accesos(String cache) {
+            aciertos = contador(cache, "acierto");
+            fallos = contador(cache, "fallo");
+        }
+
+        private static Counter contador(String cache, String resultado) {
+            return Counter.builder("fileapi.cache.accesos")
+                    .tag("cache", cache)
+                    .tag("resultado", resultado)
+                    .register(registro);
+        }
+
+        public void registrar(boolean acierto) {
+            (acierto ? aciertos : fallos).increment();
+        }
+
+        // Para los índices colgados de Usuario.derivado: acierto si ya estaba construido
+        public void registrar(Usuario usuario, Class<?> tipo) {
+            registrar(usuario.tieneDerivado(tipo));
+        }
+    }
+
+    private static Timer operacion(String nombre) {
+        return Timer.builder("fileapi.almacen")
+                .description("Duración de las operaciones de almacenamiento")
+                .tag("operacion", nombre)
+                .register(registro);
+    }
+
+    public static long inicio() {
+        return System.nanoTime();
+    }
+
+    public static void fin(Timer timer, long inicio) {
+        timer.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    // Tamaño del documento y forma del árbol; recorre el árbol entero, así que
+    // solo se llama donde ya se paga un recorrido (leer o serializar el documento)
+    public static void documento(Usuario usuario, long bytes) {
+        documento.record(bytes);
+        int niveles = Math.max(forma(usuario.getDirectorioRaiz()), forma(usuario.getDirectorioCompartidos()));
+        profundidad.record(niveles);
+    }
+
+    // Registra la ramificación de cada carpeta y devuelve los niveles. Las copias
+    // pendientes no se despliegan para medirlas: cuentan como un nivel
+    private static int forma(Directorio dir) {
+        if (dir == null) return 0;
+        if (dir.esCopiaPendiente()) return 1;
+        ramificacion.record(dir.getSubdirectorios().size() + dir.getArchivos().size());
+        int niveles = 0;
+        for (Directorio sub : dir.getSubdirectorios()) {
+            niveles = Math.max(niveles, forma(sub));
+        }
+        return niveles + 1;
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Escribe un Usuario en JSON directamente sobre la salida, con un generador y
+// sin armar mapas intermedios, recortando lo que no se pidió: campos de primer
+// nivel, profundidad del árbol y contenido de los archivos. Va en dos pasos:
+// dentro de la cola del usuario se toma una foto de lo pedido (solo metadatos,
+// sin leer blobs) y fuera de ella se escribe, así un cliente lento o el
+// contenido de los archivos no retienen la franja.
+public class ProyeccionUsuario {
+    public static final List<String> CAMPOS = List.of(
+            "id", "nombre", "espacioMaximo", "espacioUsado", "espacioReservado",
+            "secuencia", "directorioRaiz", "directorioCompartidos");
+
+    // Mismo formato de fechas que las respuestas de Spring (ISO, no arreglos)
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private final Set<String> campos;
+    private final int profundidad;
+    private final boolean contenido;
+
+    // campos null = todos; profundidad < 0 = sin límite (0 = solo las raíces,
+    // 1 = las raíces con sus hijos directos, ...)
+    private ProyeccionUsuario(Set<String> campos, int profundidad, boolean contenido) {
+        this.campos = campos;
+        this.profundidad = profundidad;
+        this.contenido = contenido;
+    }
+
+    // Lanza IllegalArgumentException si algún campo no existe
+    public static ProyeccionUsuario de(String campos, Integer profundidad, boolean contenido) {
+        Set<String> elegidos = null;
+        if (campos != null && !campos.isBlank()) {
+            elegidos = new LinkedHashSet<>();
+            for (String c : campos.split(",")) {
+                String campo = c.trim();
+                if (campo.isEmpty()) continue;
+                if (!CAMPOS.contains(campo)) {
+                    throw new IllegalArgumentException("Campo desconocido: " + campo);
+                }
+                elegidos.add(campo);
+            }
+        }
+        return new ProyeccionUsuario(elegidos, profundidad == null ? -1 : profundidad, contenido);
+    }
+
+    // Identifica la proyección (para el ETag)
+    public String variante() {
+        return campos + "|" + profundidad + "|" + contenido;
+    }
+
+    // La foto que se toma dentro de la cola: copias inmutables de lo pedido
+    public record Foto(String id, String nombre, long espacioMaximo, long espacioUsado,
+                       long espacioReservado, long secuencia, Carpeta raiz, Carpeta compartidos) {
+    }
+
+    // archivos y subdirectorios quedan en null si la carpeta cae bajo el límite
+    public record Carpeta(String id, String nombre, LocalDateTime fechaCreacion, LocalDateTime fechaModificacion,
+                          long version, long tamanoTotal, List<Fichero> archivos, List<Carpeta> subdirectorios) {
+    }
+
+    public record Fichero(String id, String nombre, String extension, String blob, LocalDateTime fechaCreacion,
+                          LocalDateTime fechaModificacion, long tamano, long version) {
+    }
+
+    // Solo desde la cola del usuario: recorre (y despliega) el árbol
+    public Foto tomar(Usuario u) {
+        return new Foto(u.getId(), u.getNombre(), u.getEspacioMaximo(), u.getEspacioUsado(),
+                u.getEspacioReservado(), u.getSecuencia(),
+                incluye("directorioRaiz") ? tomar(u.getDirectorioRaiz(), 0) : null,
+                incluye("directorioCompartidos") ? tomar(u.getDirectorioCompartidos(), 0) : null);
+    }
+
+    private Carpeta tomar(Directorio dir, int nivel) {
+        if (dir == null) return null;
+        if (profundidad >= 0 && nivel >= profundidad) {
+            return new Carpeta(dir.getId(), dir.getNombre(), dir.getFechaCreacion(), dir.getFechaModificacion(),
+                    dir.getVersion(), dir.getTamanoTotal(), null, null);
+        }
+        List<Fichero> archivos = new ArrayList<>(dir.verArchivos().size());
+        for (Archivo a : dir.verArchivos()) {
+            archivos.add(new Fichero(a.getId(), a.getNombre(), a.getExtension(), a.getBlob(),
+                    a.getFechaCreacion(), a.getFechaModificacion(), a.getTamano(), a.getVersion()));
+        }
+        List<Carpeta> subdirectorios = new ArrayList<>(dir.verSubdirectorios().size());
+        for (Directorio sub : dir.verSubdirectorios()) subdirectorios.add(tomar(sub, nivel + 1));
+        return new Carpeta(dir.getId(), dir.getNombre(), dir.getFechaCreacion(), dir.getFechaModificacion(),
+                dir.getVersion(), dir.getTamanoTotal(), archivos, subdirectorios);
+    }
+
+    // Fuera de la cola: aquí se leen los blobs si se pidió el contenido
+    public void escribir(Foto u, OutputStream salida) throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(salida)) {
+            gen.writeStartObject();
+            if (incluye("id")) gen.writeStringField("id", u.id());
+            if (incluye("nombre")) gen.writeStringField("nombre", u.nombre());
+            if (incluye("espacioMaximo")) gen.writeNumberField("espacioMaximo", u.espacioMaximo());
+            if (incluye("espacioUsado")) gen.writeNumberField("espacioUsado", u.espacioUsado());
+            if (incluye("espacioReservado")) gen.writeNumberField("espacioReservado", u.espacioReservado());
+            if (incluye("secuencia")) gen.writeNumberField("secuencia", u.secuencia());
+            if (incluye("directorioRaiz")) {
+                gen.writeFieldName("directorioRaiz");
+                escribirDirectorio(gen, u.raiz());
+            }
+            if (incluye("directorioCompartidos")) {
+                gen.writeFieldName("directorioCompartidos");
+                escribirDirectorio(gen, u.compartidos());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private boolean incluye(String campo) {
+        return campos == null || campos.contains(campo);
+    }
+
+    // Por debajo del límite de profundidad la carpeta sale sin hijos y con
+    // "truncado": true, así el cliente sabe que tiene que pedirla aparte
+    private void escribirDirectorio(JsonGenerator gen, Carpeta dir) throws IOException {
+        if (dir == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeStringField("id", dir.id());
+        gen.writeStringField("nombre", dir.nombre());
+        gen.writeObjectField("fechaCreacion", dir.fechaCreacion());
+        gen.writeObjectField("fechaModificacion", dir.fechaModificacion());
+        gen.writeNumberField("version", dir.version());
+
+        if (dir.archivos() == null) {
+            gen.writeNumberField("tamanoTotal", dir.tamanoTotal());
+            gen.writeBooleanField("truncado", true);
+        } else {
+            gen.writeArrayFieldStart("archivos");
+            for (Fichero a : dir.archivos()) escribirArchivo(gen, a);
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("subdirectorios");
+            for (Carpeta sub : dir.subdirectorios()) escribirDirectorio(gen, sub);
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    private void escribirArchivo(JsonGenerator gen, Fichero a) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", a.id());
+        gen.writeStringField("nombre", a.nombre());
+        gen.writeStringField("extension", a.extension());
+        gen.writeStringField("blob", a.blob());
+        gen.writeObjectField("fechaCreacion", a.fechaCreacion());
+        gen.writeObjectField("fechaModificacion", a.fechaModificacion());
+        gen.writeNumberField("tamano", a.tamano());
+        gen.writeNumberField("version", a.version());
+        if (contenido) {
+            gen.writeStringField("contenido", AlmacenBlobs.leerTexto(a.blob()));
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.util;
+
+// Rango de bytes pedido con la cabecera HTTP Range (solo un rango por petición).
+// Las formas admitidas son "bytes=a-b", "bytes=a-" y "bytes=-n".
+public class RangoHttp {
+    // Rango bien formado pero fuera del archivo: se responde 416
+    public static final RangoHttp NO_SATISFACIBLE = new RangoHttp(-1, -1);
+
+    private final long inicio;
+    private final long fin; // inclusivo
+
+    private RangoHttp(long inicio, long fin) {
+        this.inicio = inicio;
+        this.fin = fin;
+    }
+
+    public long getInicio() { return inicio; }
+    public long getFin() { return fin; }
+
+    public long getLongitud() {
+        return fin - inicio + 1;
+    }
+
+    // Devuelve null si no hay rango o si debe ignorarse (sintaxis inválida,
+    // varios rangos); en esos casos se envía el archivo completo con 200
+    public static RangoHttp parsear(String cabecera, long longitudTotal) {
+        if (cabecera == null) return null;
+        String valor = cabecera.trim();
+        if (!valor.startsWith("bytes=")) return null;
+        valor = valor.substring("bytes=".length()).trim();
+        if (valor.contains(",")) return null;
+
+        int guion = valor.indexOf('-');
+        if (guion < 0) return null;
+        String a = valor.substring(0, guion).trim();
+        String b = valor.substring(guion + 1).trim();
+
+        try {
+            if (a.isEmpty()) {
+                // Sufijo: los últimos n bytes
+                if (b.isEmpty()) return null;
+                long n = Long.parseLong(b);
+                if (n <= 0 || longitudTotal == 0) return NO_SATISFACIBLE;
+                return new RangoHttp(Math.max(0, longitudTotal - n), longitudTotal - 1);
+            }
+
+            long inicio = Long.parseLong(a);
+            long fin = b.isEmpty() ? Long.MAX_VALUE : Long.parseLong(b);
+            if (inicio < 0 || fin < inicio) return null;
+            if (inicio >= longitudTotal) return NO_SATISFACIBLE;
+            return new RangoHttp(inicio, Math.min(fin, longitudTotal - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
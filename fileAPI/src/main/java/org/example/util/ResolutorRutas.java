@@ -0,0 +1,96 @@
+package org.example.util;
+
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Resuelve rutas tipo "root/Carpeta/Sub" o "compartidos/Otra" a su Directorio.
+// El primer segmento debe ser root o compartidos. Las rutas ya resueltas se
+// guardan en el Usuario cargado (desaparecen con él cuando sale de la cache),
+// así una ruta profunda se resuelve con una sola búsqueda en el mapa.
+// Se usa dentro de la cola del usuario; quien mueve, borra o renombra una carpeta
+// debe llamar a invalidar con su ruta anterior.
+public class ResolutorRutas {
+    private static final int MAX_RUTAS_POR_USUARIO = 10_000;
+    private static final Medidas.Accesos accesos = new Medidas.Accesos("rutas");
+
+    // Tipo propio para colgarlo de Usuario.derivado
+    private static class Rutas extends TreeMap<String, Directorio> {
+    }
+
+    public static Directorio resolver(Usuario usuario, String path) {
+        if (path == null) return null;
+        String ruta = normalizar(path);
+        if (ruta == null) return null;
+
+        NavigableMap<String, Directorio> cache = cacheDe(usuario);
+        Directorio cacheado = cache.get(ruta);
+        // Un nodo que ya no cuelga de nadie quedó fuera del árbol
+        if (cacheado != null && (cacheado.getPadre() != null || esRaiz(usuario, cacheado))) {
+            accesos.registrar(true);
+            return cacheado;
+        }
+        accesos.registrar(false);
+
+        Directorio actual = recorrer(usuario, ruta);
+        if (actual != null) {
+            if (cache.size() >= MAX_RUTAS_POR_USUARIO) cache.clear();
+            cache.put(ruta, actual);
+        }
+        return actual;
+    }
+
+    // Olvida la ruta y todo lo que cuelga de ella
+    public static void invalidar(Usuario usuario, String path) {
+        String ruta = normalizar(path);
+        if (ruta == null) return;
+        NavigableMap<String, Directorio> cache = cacheDe(usuario);
+        cache.remove(ruta);
+        cache.subMap(ruta + "/", true, ruta + "/" + Character.MAX_VALUE, true).clear();
+    }
+
+    public static void olvidar(Usuario usuario) {
+        cacheDe(usuario).clear();
+    }
+
+    private static NavigableMap<String, Directorio> cacheDe(Usuario usuario) {
+        return usuario.derivado(Rutas.class, u -> new Rutas());
+    }
+
+    private static Directorio recorrer(Usuario usuario, String ruta) {
+        String[] partes = ruta.split("/");
+        Directorio actual = partes[0].equals("root")
+                ? usuario.getDirectorioRaiz()
+                : usuario.getDirectorioCompartidos();
+
+        for (int i = 1; i < partes.length && actual != null; i++) {
+            actual = actual.getSubdirectorioPorNombre(partes[i]);
+        }
+        return actual;
+    }
+
+    // Quita barras sobrantes y pone la raíz en minúsculas; null si la ruta no
+    // empieza por root o compartidos
+    static String normalizar(String path) {
+        StringBuilder sb = new StringBuilder();
+        boolean primero = true;
+        for (String parte : path.split("/")) {
+            if (parte.isEmpty()) continue;
+            if (primero) {
+                String raiz = parte.toLowerCase();
+                if (!raiz.equals("root") && !raiz.equals("compartidos")) return null;
+                sb.append(raiz);
+                primero = false;
+            } else {
+                sb.append('/').append(parte);
+            }
+        }
+        return primero ? null : sb.toString();
+    }
+
+    private static boolean esRaiz(Usuario usuario, Directorio dir) {
+        return dir == usuario.getDirectorioRaiz() || dir == usuario.getDirectorioCompartidos();
+    }
+}
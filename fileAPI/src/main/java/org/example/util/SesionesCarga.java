@@ -0,0 +1,301 @@
+package org.example.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.SesionCarga;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Sesiones de subida por trozos guardadas en disco: cargas/<sesion>/sesion.json y
+// un archivo trozo_<n> por cada trozo recibido. Lo que hay en disco es el estado;
+// si la subida se corta, el cliente pregunta qué trozos faltan y sigue desde ahí.
+public class SesionesCarga {
+    private static final Logger log = LoggerFactory.getLogger(SesionesCarga.class);
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final String METADATOS = "sesion.json";
+    // Los metadatos de una sesión que se está confirmando (ver reclamar)
+    private static final String RECLAMADA = METADATOS + ".confirmando";
+    private static final int BUFFER = 64 * 1024;
+
+    private static volatile Path directorio = Paths.get("cargas");
+    private static volatile Duration vencimiento = Duration.ofHours(24);
+
+    // Una confirmación cortada por una caída deja la sesión reclamada; vuelve a
+    // quedar visible para que el cliente la reintente o la cancele
+    public static void inicializar(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        directorio = dir;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir)) {
+            for (Path sesion : dirs) {
+                if (Files.exists(sesion.resolve(RECLAMADA))) devolver(sesion.getFileName().toString());
+            }
+        }
+    }
+
+    public static void crear(SesionCarga sesion) throws IOException {
+        Path dir = directorio.resolve(sesion.getId());
+        Files.createDirectories(dir);
+        Path temporal = dir.resolve(METADATOS + ".tmp");
+        mapper.writeValue(temporal.toFile(), sesion);
+        mover(temporal, dir.resolve(METADATOS));
+    }
+
+    // null si no existe (o si el id no tiene forma de id de sesión)
+    public static SesionCarga obtener(String id) throws IOException {
+        if (!esIdValido(id)) return null;
+        Path metadatos = directorio.resolve(id).resolve(METADATOS);
+        try {
+            return mapper.readValue(metadatos.toFile(), SesionCarga.class);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Escribe el trozo directamente a disco. Se escribe primero a un temporal y se
+    // renombra al final, así un trozo cortado a la mitad nunca cuenta como recibido;
+    // el trozo y el renombrado se fuerzan a disco antes de darlo por recibido.
+    // Devuelve los bytes escritos; lanza IllegalArgumentException si el número o el
+    // tamaño del trozo no corresponden a la sesión, e IllegalStateException si la
+    // sesión ya se está confirmando (sus trozos ya no pueden cambiar).
+    public static long escribirTrozo(SesionCarga sesion, int numero, InputStream entrada) throws IOException {
+        if (numero < 0 || numero >= sesion.getTotalTrozos()) {
+            throw new IllegalArgumentException("Número de trozo fuera de rango: " + numero);
+        }
+        if (estaReclamada(sesion.getId())) {
+            throw new IllegalStateException("La sesión se está confirmando");
+        }
+        long esperado = sesion.tamanoEsperado(numero);
+        Path dir = directorio.resolve(sesion.getId());
+        Path temporal = dir.resolve("trozo_" + numero + "." + UUID.randomUUID() + ".part");
+
+        long escritos = 0;
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(canal);
+            byte[] buffer = new byte[BUFFER];
+            int n;
+            while ((n = entrada.read(buffer)) != -1) {
+                escritos += n;
+                if (escritos > esperado) break;
+                out.write(buffer, 0, n);
+            }
+            if (escritos == esperado) canal.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+
+        if (escritos != esperado) {
+            Files.deleteIfExists(temporal);
+            throw new IllegalArgumentException("El trozo " + numero + " debe medir " + esperado + " bytes");
+        }
+        // La confirmación pudo reclamar la sesión mientras llegaba el cuerpo
+        if (estaReclamada(sesion.getId())) {
+            Files.deleteIfExists(temporal);
+            throw new IllegalStateException("La sesión se está confirmando");
+        }
+        mover(temporal, trozo(sesion, numero));
+        sincronizarDirectorio(dir);
+        return escritos;
+    }
+
+    public static List<Integer> recibidos(SesionCarga sesion) throws IOException {
+        List<Integer> numeros = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio.resolve(sesion.getId()), "trozo_*")) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                if (nombre.endsWith(".part")) continue;
+                numeros.add(Integer.parseInt(nombre.substring("trozo_".length())));
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+
+    public static List<Integer> faltantes(SesionCarga sesion) throws IOException {
+        List<Integer> recibidos = recibidos(sesion);
+        List<Integer> faltan = new ArrayList<>();
+        for (int i = 0; i < sesion.getTotalTrozos(); i++) {
+            if (Collections.binarySearch(recibidos, i) < 0) faltan.add(i);
+        }
+        return faltan;
+    }
+
+    // Junta los trozos en orden y los guarda como un blob, en streaming
+    public static String ensamblar(SesionCarga sesion) throws IOException {
+        List<Path> trozos = new ArrayList<>();
+        for (int i = 0; i < sesion.getTotalTrozos(); i++) {
+            trozos.add(trozo(sesion, i));
+        }
+        Iterator<Path> it = trozos.iterator();
+        Enumeration<InputStream> flujos = new Enumeration<>() {
+            public boolean hasMoreElements() { return it.hasNext(); }
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(it.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try (InputStream entrada = new SequenceInputStream(flujos)) {
+            return AlmacenBlobs.guardar(entrada);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Toma la sesión para confirmarla renombrando sus metadatos: mientras tanto
+    // obtener no la ve, así ni una cancelación ni el barrido de vencidas liberan
+    // su reserva. Solo uno la toma; false si otro la tomó o la borró antes.
+    public static boolean reclamar(String id) throws IOException {
+        if (!esIdValido(id)) return false;
+        Path dir = directorio.resolve(id);
+        try {
+            Files.move(dir.resolve(METADATOS), dir.resolve(RECLAMADA), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    public static boolean estaReclamada(String id) {
+        return esIdValido(id) && Files.exists(directorio.resolve(id).resolve(RECLAMADA));
+    }
+
+    // Si la confirmación no llegó a hacerse, la sesión vuelve a estar disponible
+    public static void devolver(String id) throws IOException {
+        if (!esIdValido(id)) return;
+        Path dir = directorio.resolve(id);
+        mover(dir.resolve(RECLAMADA), dir.resolve(METADATOS));
+    }
+
+    // Devuelve true solo a quien borró los metadatos, para que dos cancelaciones
+    // simultáneas no liberen dos veces la misma reserva
+    public static boolean eliminar(String id) throws IOException {
+        if (!esIdValido(id)) return false;
+        Path dir = directorio.resolve(id);
+        if (!Files.exists(dir)) return false;
+        boolean borrada = Files.deleteIfExists(dir.resolve(METADATOS));
+        try (Stream<Path> archivos = Files.list(dir)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        Files.deleteIfExists(dir);
+        return borrada;
+    }
+
+    // Las sesiones abiertas hace más que esto se consideran abandonadas
+    public static void configurarVencimiento(Duration duracion) {
+        vencimiento = duracion;
+    }
+
+    // Primero se borra la sesión y después se libera la reserva, así una
+    // cancelación repetida (o el barrido a la vez) no libera dos veces
+    public static boolean descartar(SesionCarga sesion) throws IOException {
+        if (!eliminar(sesion.getId())) return false;
+        ColaMutaciones.mutarPorId(sesion.getIdUsuario(), usuario -> {
+            usuario.liberarReserva(sesion.getTamano());
+            return null;
+        });
+        return true;
+    }
+
+    // Descarta las subidas abandonadas de un usuario
+    public static int descartarVencidas(String idUsuario) throws IOException {
+        return descartarVencidas(sesion -> idUsuario.equals(sesion.getIdUsuario()));
+    }
+
+    // Descarta las subidas abandonadas de todos los usuarios; lo llama el
+    // recolector para que no dependa de que el usuario vuelva a abrir una
+    public static int descartarVencidas() throws IOException {
+        return descartarVencidas(sesion -> true);
+    }
+
+    private static int descartarVencidas(Predicate<SesionCarga> filtro) throws IOException {
+        LocalDateTime limite = LocalDateTime.now().minus(vencimiento);
+        int descartadas = 0;
+        for (SesionCarga sesion : vencidas(limite)) {
+            if (!filtro.test(sesion)) continue;
+            try {
+                if (descartar(sesion)) descartadas++;
+            } catch (IOException e) {
+                // El usuario ya no existe: no hay reserva que liberar
+                log.warn("No se pudo liberar la reserva de la sesión {}", sesion.getId(), e);
+            }
+        }
+        return descartadas;
+    }
+
+    // Sesiones abiertas antes del límite (subidas abandonadas)
+    static List<SesionCarga> vencidas(LocalDateTime limite) throws IOException {
+        List<SesionCarga> resultado = new ArrayList<>();
+        if (!Files.isDirectory(directorio)) return resultado;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directorio)) {
+            for (Path dir : dirs) {
+                SesionCarga sesion = obtener(dir.getFileName().toString());
+                if (sesion != null && sesion.getFechaCreacion().isBefore(limite)) {
+                    resultado.add(sesion);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private static Path trozo(SesionCarga sesion, int numero) {
+        return directorio.resolve(sesion.getId()).resolve("trozo_" + numero);
+    }
+
+    private static boolean esIdValido(String id) {
+        try {
+            return id != null && UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Donde no se puede abrir un directorio (Windows) no hay nada que sincronizar
+    private static void sincronizarDirectorio(Path carpeta) throws IOException {
+        try (FileChannel canal = FileChannel.open(carpeta, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            // el sistema no lo permite
+        }
+    }
+
+    private static void mover(Path origen, Path destino) throws IOException {
+        try {
+            Files.move(origen, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(origen, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
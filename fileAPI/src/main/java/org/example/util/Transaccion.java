@@ -0,0 +1,40 @@
+package org.example.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Lo necesario para deshacer en memoria un grupo de operaciones sobre el árbol
+// de un usuario. Cada operación anota cómo revertir cada cambio que hace, y deja
+// para el final lo que sale del árbol (referencias a blobs), que solo se aplica
+// al confirmar. Revertir también pasa por los métodos del árbol: el diario y los
+// índices derivados reciben los cambios inversos y quedan coherentes.
+// Se usa dentro de la cola del usuario; una operación suelta crea una y la
+// confirma al terminar.
+public class Transaccion {
+    private final Deque<Runnable> inversas = new ArrayDeque<>();
+    private final List<Runnable> alConfirmar = new ArrayList<>();
+
+    public void deshacer(Runnable inversa) {
+        inversas.push(inversa);
+    }
+
+    public void alConfirmar(Runnable efecto) {
+        alConfirmar.add(efecto);
+    }
+
+    public void confirmar() {
+        alConfirmar.forEach(Runnable::run);
+        alConfirmar.clear();
+        inversas.clear();
+    }
+
+    // Aplica las inversas en orden contrario y descarta los efectos pendientes
+    public void revertir() {
+        while (!inversas.isEmpty()) {
+            inversas.pop().run();
+        }
+        alConfirmar.clear();
+    }
+}
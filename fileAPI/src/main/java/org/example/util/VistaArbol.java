@@ -0,0 +1,70 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Copias de los nodos del árbol para el cuerpo de una respuesta. El usuario vive
+// en la caché y su cola lo sigue cambiando, pero Spring serializa el cuerpo
+// después, en el hilo de Tomcat: por eso dentro de la cola se arma esta copia
+// y nunca se devuelve un nodo del árbol. Mismos campos y orden que tendría el
+// JSON del nodo; una copia pendiente se despliega para mostrarla.
+public class VistaArbol {
+
+    public static Map<String, Object> archivo(Archivo a) {
+        Map<String, Object> vista = new LinkedHashMap<>();
+        vista.put("id", a.getId());
+        vista.put("nombre", a.getNombre());
+        vista.put("extension", a.getExtension());
+        vista.put("blob", a.getBlob());
+        vista.put("fechaCreacion", a.getFechaCreacion());
+        vista.put("fechaModificacion", a.getFechaModificacion());
+        vista.put("tamano", a.getTamano());
+        vista.put("version", a.getVersion());
+        return vista;
+    }
+
+    public static List<Map<String, Object>> archivos(List<Archivo> archivos) {
+        List<Map<String, Object>> vistas = new ArrayList<>(archivos.size());
+        for (Archivo a : archivos) vistas.add(archivo(a));
+        return vistas;
+    }
+
+    // Con todo el subárbol
+    public static Map<String, Object> directorio(Directorio dir) {
+        Map<String, Object> vista = new LinkedHashMap<>();
+        vista.put("id", dir.getId());
+        vista.put("nombre", dir.getNombre());
+        vista.put("fechaCreacion", dir.getFechaCreacion());
+        vista.put("fechaModificacion", dir.getFechaModificacion());
+        vista.put("archivos", archivos(dir.verArchivos()));
+        vista.put("subdirectorios", directorios(dir.verSubdirectorios()));
+        vista.put("version", dir.getVersion());
+        return vista;
+    }
+
+    public static List<Map<String, Object>> directorios(List<Directorio> directorios) {
+        List<Map<String, Object>> vistas = new ArrayList<>(directorios.size());
+        for (Directorio d : directorios) vistas.add(directorio(d));
+        return vistas;
+    }
+
+    public static Map<String, Object> usuario(Usuario u) {
+        Map<String, Object> vista = new LinkedHashMap<>();
+        vista.put("id", u.getId());
+        vista.put("nombre", u.getNombre());
+        vista.put("espacioMaximo", u.getEspacioMaximo());
+        vista.put("espacioUsado", u.getEspacioUsado());
+        vista.put("espacioReservado", u.getEspacioReservado());
+        vista.put("directorioRaiz", u.getDirectorioRaiz() == null ? null : directorio(u.getDirectorioRaiz()));
+        vista.put("directorioCompartidos",
+                u.getDirectorioCompartidos() == null ? null : directorio(u.getDirectorioCompartidos()));
+        vista.put("secuencia", u.getSecuencia());
+        return vista;
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.controller;
+
+import org.example.util.AlmacenBlobs;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchivoControllerTest {
+
+    private final ArchivoController controller = new ArchivoController();
+    private String contenido;
+    private ArchivoController.Descarga descarga;
+
+    // AlmacenBlobs es estático: el directorio no puede ser temporal si otra
+    // prueba lo sigue usando después
+    @BeforeAll
+    static void almacen() throws IOException {
+        AlmacenBlobs.inicializar(Path.of("build", "test-datos", "blobs"));
+    }
+
+    @BeforeEach
+    void preparar() throws IOException {
+        // Texto repetitivo (comprime bien) y propio de cada prueba
+        contenido = (UUID.randomUUID() + " hola mundo\n").repeat(200);
+        String blob = AlmacenBlobs.guardar(contenido);
+        assertTrue(AlmacenBlobs.esComprimido(AlmacenBlobs.ubicar(blob)));
+        descarga = new ArchivoController.Descarga(blob, contenido.length(), LocalDateTime.now(), "x.txt");
+    }
+
+    private MockHttpServletResponse descargar(String acceptEncoding, String range) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/flujo");
+        if (acceptEncoding != null) request.addHeader("Accept-Encoding", acceptEncoding);
+        if (range != null) request.addHeader("Range", range);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.enviar(descarga, request, response);
+        return response;
+    }
+
+    // Si el cliente acepta gzip se mandan los bytes del disco, sin descomprimir
+    // ni volver a comprimir
+    @Test
+    void unBlobEnGzipSeMandaTalCual() throws IOException {
+        MockHttpServletResponse response = descargar("br, gzip;q=0.8", null);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("\"" + descarga.blob() + "-gzip\"", response.getHeader("ETag"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        byte[] enDisco = Files.readAllBytes(AlmacenBlobs.ubicar(descarga.blob()));
+        assertArrayEquals(enDisco, response.getContentAsByteArray());
+        assertEquals(enDisco.length, response.getContentLengthLong());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(contenido, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void sinGzipOConRangoSeMandaDescomprimido() throws IOException {
+        for (String acepta : new String[]{null, "gzip;q=0", "identity"}) {
+            MockHttpServletResponse response = descargar(acepta, null);
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals("\"" + descarga.blob() + "\"", response.getHeader("ETag"));
+            assertEquals(contenido, response.getContentAsString(StandardCharsets.UTF_8));
+        }
+
+        // Los rangos son sobre el contenido original
+        MockHttpServletResponse parcial = descargar("gzip", "bytes=37-46");
+        assertEquals(206, parcial.getStatus());
+        assertNull(parcial.getHeader("Content-Encoding"));
+        assertEquals("bytes 37-46/" + contenido.length(), parcial.getHeader("Content-Range"));
+        assertEquals(contenido.substring(37, 47), parcial.getContentAsString(StandardCharsets.UTF_8));
+    }
+}
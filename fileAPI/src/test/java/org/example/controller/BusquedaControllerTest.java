@@ -0,0 +1,111 @@
+package org.example.controller;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.IndiceMetadatos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BusquedaControllerTest {
+
+    private final BusquedaController controller = new BusquedaController();
+    private final LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private Usuario usuario;
+    private Archivo a;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        Directorio raiz = usuario.getDirectorioRaiz();
+        Directorio sub = new Directorio("sub", null);
+        raiz.agregarSubdirectorio(sub);
+        a = archivo(raiz, "a", "pdf", 10, 1);
+        archivo(raiz, "b", "PDF", 50, 2);
+        archivo(raiz, "c", "txt", 30, 3);
+        archivo(sub, "d", "pdf", 70, 4);
+    }
+
+    // Creado y modificado el día n de la base
+    private Archivo archivo(Directorio dir, String nombre, String extension, long tamano, int dia) {
+        Archivo archivo = new Archivo(nombre, extension, "h-" + nombre, tamano);
+        archivo.setFechaCreacion(base.plusDays(dia));
+        archivo.setFechaModificacion(base.plusDays(dia));
+        dir.agregarArchivo(archivo);
+        return archivo;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cuerpo(ResponseEntity<?> respuesta) {
+        return (Map<String, Object>) respuesta.getBody();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> nombres(ResponseEntity<?> respuesta) {
+        List<Map<String, Object>> resultados = (List<Map<String, Object>>) cuerpo(respuesta).get("resultados");
+        return resultados.stream().map(r -> (String) r.get("nombre")).toList();
+    }
+
+    private List<String> consultar(IndiceMetadatos.Filtro filtro, String path) {
+        return nombres(controller.consultar(usuario, filtro, path, 0, 50));
+    }
+
+    @Test
+    void filtraPorExtensionTamanoFechaYCarpeta() {
+        IndiceMetadatos.Filtro pdf = new IndiceMetadatos.Filtro();
+        pdf.extension = ".Pdf";
+        // De la modificación más reciente a la más antigua
+        assertEquals(List.of("d", "b", "a"), consultar(pdf, null));
+
+        IndiceMetadatos.Filtro grandes = new IndiceMetadatos.Filtro();
+        grandes.extension = "pdf";
+        grandes.tamanoMin = 20L;
+        grandes.tamanoMax = 60L;
+        assertEquals(List.of("b"), consultar(grandes, null));
+
+        IndiceMetadatos.Filtro fechas = new IndiceMetadatos.Filtro();
+        fechas.creadoDesde = base.plusDays(2);
+        fechas.modificadoHasta = base.plusDays(3);
+        assertEquals(List.of("c", "b"), consultar(fechas, null));
+
+        assertEquals(List.of("d"), consultar(new IndiceMetadatos.Filtro(), "root/sub"));
+        assertEquals(400, controller.consultar(usuario, new IndiceMetadatos.Filtro(), "root/no", 0, 50)
+                .getStatusCode().value());
+    }
+
+    @Test
+    void elIndiceSigueLosCambiosDelArbol() {
+        IndiceMetadatos.Filtro grandes = new IndiceMetadatos.Filtro();
+        grandes.tamanoMin = 60L;
+        assertEquals(List.of("d"), consultar(grandes, null));
+
+        a.getDirectorio().actualizarContenido(a, "h-a2", 100);
+        Directorio sub = usuario.getDirectorioRaiz().getSubdirectorioPorNombre("sub");
+        sub.quitarArchivo(sub.getArchivo("d", "pdf"));
+
+        assertEquals(List.of("a"), consultar(grandes, null));
+    }
+
+    @Test
+    void lasPaginasCubrenElResultadoSinRepetir() {
+        IndiceMetadatos.Filtro todos = new IndiceMetadatos.Filtro();
+        List<String> vistos = new ArrayList<>();
+        for (int pagina = 0; pagina < 2; pagina++) {
+            ResponseEntity<?> respuesta = controller.consultar(usuario, todos, null, pagina, 3);
+            assertEquals(4, cuerpo(respuesta).get("total"));
+            vistos.addAll(nombres(respuesta));
+        }
+        assertEquals(List.of("d", "c", "b", "a"), vistos);
+        assertEquals(List.of(), nombres(controller.consultar(usuario, todos, null, 5, 3)));
+    }
+}
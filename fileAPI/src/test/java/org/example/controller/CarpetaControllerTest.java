@@ -0,0 +1,93 @@
+package org.example.controller;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CarpetaControllerTest {
+
+    private final CarpetaController controller = new CarpetaController();
+    private Usuario usuario;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        Directorio a = new Directorio("a", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(a);
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarArchivo(new Archivo("y", "txt", UUID.randomUUID().toString(), 6));
+        Directorio otra = new Directorio("otra", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(otra);
+        usuario.recalcularEspacioUsado();
+    }
+
+    private ResponseEntity<?> listar(String path, String ifNoneMatch) {
+        return controller.listarNivel(usuario, path, null, 100, ifNoneMatch);
+    }
+
+    @Test
+    void conLaMismaEtiquetaResponde304SinCuerpo() {
+        ResponseEntity<?> primera = listar("root/a", null);
+        assertEquals(200, primera.getStatusCode().value());
+        String etag = primera.getHeaders().getETag();
+
+        ResponseEntity<?> igual = listar("root/a", etag);
+        assertEquals(304, igual.getStatusCode().value());
+        assertEquals(etag, igual.getHeaders().getETag());
+        assertNull(igual.getBody());
+        // If-None-Match compara en débil y admite varias etiquetas
+        assertEquals(304, listar("root/a", "\"otra\", W/" + etag).getStatusCode().value());
+        assertEquals(304, listar("root/a", "*").getStatusCode().value());
+        assertEquals(200, listar("root/a", "\"otra\"").getStatusCode().value());
+    }
+
+    // La versión sube por toda la cadena de padres: un cambio en un nieto cambia
+    // la etiqueta del listado (que muestra tamaños), uno en la carpeta de al lado no
+    @Test
+    void laEtiquetaCambiaConElSubarbolYNoConLoDemas() throws IOException {
+        String antes = listar("root/a", null).getHeaders().getETag();
+
+        OperacionesArbol.sola(tx -> OperacionesArbol.crearArchivo(usuario, tx, "root/otra", "z", "txt",
+                UUID.randomUUID().toString(), 1));
+        assertEquals(304, listar("root/a", antes).getStatusCode().value());
+
+        OperacionesArbol.sola(tx -> OperacionesArbol.modificarArchivo(usuario, tx, "root/a/b", "y.txt",
+                UUID.randomUUID().toString(), 9, null));
+        ResponseEntity<?> despues = listar("root/a", antes);
+        assertEquals(200, despues.getStatusCode().value());
+        assertNotEquals(antes, despues.getHeaders().getETag());
+    }
+
+    // If-Match en una escritura: con una etiqueta vieja no se aplica (412 con la
+    // actual) y con la vigente sí
+    @Test
+    void unaEscrituraConEtiquetaViejaDevuelve412() throws IOException {
+        Archivo y = usuario.getDirectorioRaiz().getSubdirectorioPorNombre("a")
+                .getSubdirectorioPorNombre("b").getArchivo("y", "txt");
+        String vieja = "\"" + y.getId() + "-" + (y.getVersion() - 1) + "\"";
+
+        ResponseEntity<?> rechazada = OperacionesArbol.sola(tx -> OperacionesArbol.modificarArchivo(usuario, tx,
+                "root/a/b", "y.txt", UUID.randomUUID().toString(), 9, vieja));
+        assertEquals(412, rechazada.getStatusCode().value());
+        assertEquals(6, y.getTamano());
+
+        String vigente = rechazada.getHeaders().getETag();
+        ResponseEntity<?> aceptada = OperacionesArbol.sola(tx -> OperacionesArbol.modificarArchivo(usuario, tx,
+                "root/a/b", "y.txt", UUID.randomUUID().toString(), 9, vigente));
+        assertEquals(200, aceptada.getStatusCode().value());
+        assertEquals(9, y.getTamano());
+        assertNotEquals(vigente, aceptada.getHeaders().getETag());
+    }
+}
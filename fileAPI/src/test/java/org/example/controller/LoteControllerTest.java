@@ -0,0 +1,139 @@
+package org.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.ResolutorRutas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LoteControllerTest {
+
+    private final LoteController controller = new LoteController(new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    private Usuario usuario;
+    private final List<Cambio> diario = new ArrayList<>();
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        Directorio raiz = usuario.getDirectorioRaiz();
+        raiz.agregarArchivo(new Archivo("a", "txt", "h1", 10));
+        Directorio viejo = new Directorio("viejo", null);
+        raiz.agregarSubdirectorio(viejo);
+        viejo.agregarArchivo(new Archivo("b", "txt", "h2", 20));
+        usuario.recalcularEspacioUsado();
+        usuario.setObservador(diario::add);
+    }
+
+    // Lo que importa del árbol: nombres, ids, blobs y tamaños, en orden
+    private static String forma(Directorio dir) {
+        StringBuilder sb = new StringBuilder(dir.getNombre()).append('{');
+        for (Archivo a : dir.getArchivos()) {
+            sb.append(a.getId()).append(':').append(a.getNombreCompleto()).append(':')
+                    .append(a.getBlob()).append(':').append(a.getTamano()).append(';');
+        }
+        for (Directorio sub : dir.getSubdirectorios()) sb.append(sub.getId()).append('=').append(forma(sub));
+        return sb.append('}').toString();
+    }
+
+    private List<LoteController.Operacion> lote(LoteController.Operacion... operaciones) {
+        return List.of(operaciones);
+    }
+
+    private static List<String> tipos(int n) {
+        List<String> tipos = new ArrayList<>();
+        for (int i = 0; i < n; i++) tipos.add("op" + i);
+        return tipos;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cuerpo(ResponseEntity<?> respuesta) {
+        return (Map<String, Object>) respuesta.getBody();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> resultados(ResponseEntity<?> respuesta) {
+        return (List<Map<String, Object>>) cuerpo(respuesta).get("resultados");
+    }
+
+    @Test
+    void unFalloDeshaceTodoLoAnterior() {
+        String antes = forma(usuario.getDirectorioRaiz());
+        long espacioAntes = usuario.getEspacioUsado();
+
+        List<LoteController.Operacion> operaciones = lote(
+                (u, tx) -> OperacionesArbol.crearCarpeta(u, tx, "root", "docs"),
+                (u, tx) -> OperacionesArbol.crearArchivo(u, tx, "root/docs", "x", "txt", "h3", 30),
+                (u, tx) -> OperacionesArbol.modificarArchivo(u, tx, "root", "a.txt", "h4", 40, null),
+                (u, tx) -> OperacionesArbol.moverArchivo(u, tx, "root", "root/docs", "a", "txt", null),
+                (u, tx) -> OperacionesArbol.eliminarCarpeta(u, tx, "root/viejo", null),
+                (u, tx) -> OperacionesArbol.crearArchivo(u, tx, "root/noexiste", "y", "txt", "h5", 1),
+                (u, tx) -> OperacionesArbol.crearCarpeta(u, tx, "root", "nunca"));
+
+        ResponseEntity<?> respuesta = controller.todoONada(usuario, tipos(operaciones.size()), operaciones, "todoONada");
+
+        assertEquals(400, respuesta.getStatusCode().value());
+        Map<String, Object> cuerpo = cuerpo(respuesta);
+        assertEquals(false, cuerpo.get("confirmado"));
+        assertEquals(5, cuerpo.get("fallida"));
+        List<Map<String, Object>> resultados = resultados(respuesta);
+        assertEquals(7, resultados.size());
+        for (int i = 0; i < 5; i++) assertEquals(true, resultados.get(i).get("revertida"));
+        assertEquals(424, resultados.get(6).get("estado"));
+
+        assertEquals(antes, forma(usuario.getDirectorioRaiz()));
+        assertEquals(espacioAntes, usuario.getEspacioUsado());
+        assertNull(ResolutorRutas.resolver(usuario, "root/docs"));
+        assertNotNull(ResolutorRutas.resolver(usuario, "root/viejo"));
+        // El diario recibe también los cambios inversos
+        assertEquals(10, diario.size());
+    }
+
+    @Test
+    void unaExcepcionTambienDeshaceElLote() {
+        String antes = forma(usuario.getDirectorioRaiz());
+
+        List<LoteController.Operacion> operaciones = lote(
+                (u, tx) -> OperacionesArbol.crearCarpeta(u, tx, "root", "docs"),
+                (u, tx) -> {
+                    throw new IllegalStateException("falla");
+                });
+
+        ResponseEntity<?> respuesta = controller.todoONada(usuario, tipos(2), operaciones, "todoONada");
+
+        assertEquals(500, respuesta.getStatusCode().value());
+        assertEquals(antes, forma(usuario.getDirectorioRaiz()));
+    }
+
+    @Test
+    void sinFallosQuedaTodoAplicado() {
+        List<LoteController.Operacion> operaciones = lote(
+                (u, tx) -> OperacionesArbol.crearCarpeta(u, tx, "root", "docs"),
+                (u, tx) -> OperacionesArbol.moverArchivo(u, tx, "root", "root/docs", "a", "txt", null),
+                (u, tx) -> OperacionesArbol.eliminarCarpeta(u, tx, "root/viejo", null));
+
+        ResponseEntity<?> respuesta = controller.todoONada(usuario, tipos(3), operaciones, "todoONada");
+
+        assertEquals(200, respuesta.getStatusCode().value());
+        assertEquals(true, cuerpo(respuesta).get("confirmado"));
+        Directorio raiz = usuario.getDirectorioRaiz();
+        assertEquals(0, raiz.getArchivos().size());
+        assertEquals(1, raiz.getSubdirectorios().size());
+        assertNotNull(raiz.getSubdirectorioPorNombre("docs").getArchivo("a", "txt"));
+        assertEquals(10, usuario.getEspacioUsado());
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.controller;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.example.util.AlmacenBlobs;
+import org.example.util.DiarioUsuarios;
+import org.example.util.FormatoUsuario;
+import org.example.util.ResolutorRutas;
+import org.example.util.Transaccion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OperacionesArbolTest {
+
+    @TempDir
+    Path dir;
+
+    private Usuario usuario;
+    // Hashes propios de cada prueba: el conteo de referencias es global
+    private String h1;
+    private String h2;
+
+    @BeforeEach
+    void preparar() {
+        h1 = UUID.randomUUID().toString();
+        h2 = UUID.randomUUID().toString();
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        Directorio a = new Directorio("a", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(a);
+        a.agregarArchivo(new Archivo("x", "txt", h1, 4));
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarArchivo(new Archivo("y", "txt", h2, 6));
+        AlmacenBlobs.retenerArbol(usuario.getDirectorioRaiz());
+        usuario.recalcularEspacioUsado();
+    }
+
+    @Test
+    void unaCopiaRetieneSusBlobsUnaSolaVez() throws IOException {
+        OperacionesArbol.sola(tx -> OperacionesArbol.copiarCarpeta(usuario, tx, "root/a", "root", "c"));
+        assertEquals(2, AlmacenBlobs.referenciasDe(h1));
+        assertEquals(2, AlmacenBlobs.referenciasDe(h2));
+
+        // Desplegarla no suma nada
+        Directorio c = usuario.getDirectorioRaiz().getSubdirectorioPorNombre("c");
+        c.getSubdirectorioPorNombre("b").verArchivos();
+        assertEquals(2, AlmacenBlobs.referenciasDe(h1));
+        assertEquals(2, AlmacenBlobs.referenciasDe(h2));
+
+        // Ni recargar el usuario, que vuelve a tener la copia pendiente
+        Path archivo = FormatoUsuario.instantanea(dir, usuario.getId());
+        Files.write(archivo, FormatoUsuario.serializar(usuario));
+        Usuario leido = FormatoUsuario.leer(archivo.toFile());
+        DiarioUsuarios.reproducir(leido, List.of());
+        leido.getDirectorioRaiz().getSubdirectorioPorNombre("c").verSubdirectorios().get(0).verArchivos();
+        assertEquals(2, AlmacenBlobs.referenciasDe(h1));
+        assertEquals(2, AlmacenBlobs.referenciasDe(h2));
+    }
+
+    @Test
+    void borrarUnaCopiaPendienteSueltaLoQueRetuvo() throws IOException {
+        OperacionesArbol.sola(tx -> OperacionesArbol.copiarCarpeta(usuario, tx, "root/a", "root", "c"));
+        OperacionesArbol.sola(tx -> OperacionesArbol.eliminarCarpeta(usuario, tx, "root/c", null));
+
+        assertEquals(1, AlmacenBlobs.referenciasDe(h1));
+        assertEquals(1, AlmacenBlobs.referenciasDe(h2));
+    }
+
+    @Test
+    void unaCopiaRevertidaNoRetieneNada() {
+        Transaccion tx = new Transaccion();
+        OperacionesArbol.copiarCarpeta(usuario, tx, "root/a", "root", "c");
+        tx.revertir();
+
+        assertEquals(1, AlmacenBlobs.referenciasDe(h1));
+        assertEquals(1, AlmacenBlobs.referenciasDe(h2));
+    }
+
+    private Directorio carpeta(String path) {
+        return ResolutorRutas.resolver(usuario, path);
+    }
+
+    // Los tamaños se mantienen al cambiar el árbol; el recorrido completo de
+    // verificarEspacioUsado no debe encontrar nada que corregir
+    @Test
+    void losTamanosSeMantienenSinRecorrerElArbol() throws IOException {
+        String h3 = UUID.randomUUID().toString();
+        String h4 = UUID.randomUUID().toString();
+        OperacionesArbol.sola(tx -> OperacionesArbol.crearCarpeta(usuario, tx, "root", "d"));
+        OperacionesArbol.sola(tx -> OperacionesArbol.crearArchivo(usuario, tx, "root/d", "z", "txt", h3, 5));
+        assertEquals(15, usuario.getEspacioUsado());
+
+        OperacionesArbol.sola(tx -> OperacionesArbol.modificarArchivo(usuario, tx, "root/a", "x.txt", h4, 9, null));
+        assertEquals(15, carpeta("root/a").getTamanoTotal());
+        assertEquals(20, usuario.getEspacioUsado());
+
+        OperacionesArbol.sola(tx -> OperacionesArbol.moverCarpeta(usuario, tx, "root/a/b", "root/d", null));
+        OperacionesArbol.sola(tx -> OperacionesArbol.moverArchivo(usuario, tx, "root/a", "root/d", "x", "txt", null));
+        assertEquals(0, carpeta("root/a").getTamanoTotal());
+        assertEquals(20, carpeta("root/d").getTamanoTotal());
+        assertEquals(6, carpeta("root/d/b").getTamanoTotal());
+
+        OperacionesArbol.sola(tx -> OperacionesArbol.copiarCarpeta(usuario, tx, "root/d", "root", "e"));
+        assertEquals(40, usuario.getEspacioUsado());
+        OperacionesArbol.sola(tx -> OperacionesArbol.eliminarCarpeta(usuario, tx, "root/d", null));
+        assertEquals(20, usuario.getEspacioUsado());
+        assertEquals(20, usuario.getDirectorioRaiz().getTamanoTotal());
+
+        assertEquals(0, usuario.verificarEspacioUsado());
+        assertEquals(20, usuario.getEspacioUsado());
+    }
+
+    @Test
+    void revertirDevuelveLosTamanos() {
+        Transaccion tx = new Transaccion();
+        OperacionesArbol.crearArchivo(usuario, tx, "root/a/b", "z", "txt", UUID.randomUUID().toString(), 7);
+        OperacionesArbol.moverCarpeta(usuario, tx, "root/a/b", "root", null);
+        assertEquals(17, usuario.getEspacioUsado());
+        assertEquals(4, carpeta("root/a").getTamanoTotal());
+        tx.revertir();
+
+        assertEquals(10, usuario.getEspacioUsado());
+        assertEquals(10, carpeta("root/a").getTamanoTotal());
+        assertEquals(6, carpeta("root/a/b").getTamanoTotal());
+        assertEquals(0, usuario.verificarEspacioUsado());
+    }
+}
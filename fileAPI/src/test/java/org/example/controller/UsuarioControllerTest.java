@@ -0,0 +1,24 @@
+package org.example.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UsuarioControllerTest {
+
+    private final UsuarioController controller = new UsuarioController();
+
+    @Test
+    void crearSinNombreEsUnaPeticionInvalida() {
+        Map<String, Object> sinNombre = new HashMap<>();
+        sinNombre.put("espacioMaximo", 100);
+        assertEquals(400, controller.crearUsuario(sinNombre).getStatusCode().value());
+
+        Map<String, Object> enBlanco = new HashMap<>(sinNombre);
+        enBlanco.put("nombre", "  ");
+        assertEquals(400, controller.crearUsuario(enBlanco).getStatusCode().value());
+    }
+}
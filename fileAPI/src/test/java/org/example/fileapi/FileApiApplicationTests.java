@@ -3,7 +3,7 @@ package org.example.fileapi;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "fileapi.datos.directorio=build/test-datos")
 class FileApiApplicationTests {
 
     @Test
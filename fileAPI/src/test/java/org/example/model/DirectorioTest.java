@@ -0,0 +1,83 @@
+package org.example.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectorioTest {
+
+    private Directorio raiz;
+
+    @BeforeEach
+    void preparar() {
+        raiz = new Directorio("root", null);
+    }
+
+    @Test
+    void losIndicesPorNombreSiguenAlArbol() {
+        Directorio a = new Directorio("a", null);
+        Directorio b = new Directorio("b", null);
+        raiz.agregarSubdirectorio(a);
+        raiz.agregarSubdirectorio(b);
+        Archivo x = new Archivo("x", "txt", "h1", 1);
+        a.agregarArchivo(x);
+        assertSame(x, a.getArchivo("x", "txt"));
+        assertSame(x, a.getArchivoPorNombreCompleto("x.txt"));
+
+        a.moverArchivo(x, b);
+        assertNull(a.getArchivo("x", "txt"));
+        assertSame(x, b.getArchivo("x", "txt"));
+
+        raiz.moverSubdirectorio(b, a);
+        assertFalse(raiz.contieneSubdirectorio("b"));
+        assertSame(b, a.getSubdirectorioPorNombre("b"));
+
+        b.quitarArchivo(x);
+        assertFalse(b.contieneArchivo("x", "txt"));
+        a.quitarSubdirectorio(b);
+        assertNull(a.getSubdirectorioPorNombre("b"));
+    }
+
+    // Un documento viejo puede traer nombres repetidos: al quitar el indexado,
+    // el siguiente con ese nombre pasa a encontrarse
+    @Test
+    void alQuitarUnRepetidoSeIndexaElSiguiente() {
+        Archivo primero = new Archivo("x", "txt", "h1", 1);
+        Archivo segundo = new Archivo("x", "txt", "h2", 2);
+        raiz.setArchivos(List.of(primero, segundo));
+        Directorio d1 = new Directorio("d", null);
+        Directorio d2 = new Directorio("d", null);
+        raiz.setSubdirectorios(List.of(d1, d2));
+        assertSame(primero, raiz.getArchivo("x", "txt"));
+        assertSame(d1, raiz.getSubdirectorioPorNombre("d"));
+
+        raiz.quitarArchivo(primero);
+        raiz.quitarSubdirectorio(d1);
+
+        assertSame(segundo, raiz.getArchivo("x", "txt"));
+        assertSame(d2, raiz.getSubdirectorioPorNombre("d"));
+    }
+
+    @Test
+    void buscarEnUnaCopiaPendienteLaDespliega() {
+        Directorio a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        Archivo x = new Archivo("x", "txt", "h1", 1);
+        a.agregarArchivo(x);
+        a.agregarSubdirectorio(new Directorio("b", null));
+        Directorio c = a.copiaDiferida("c");
+        raiz.agregarCopia(c);
+        assertTrue(c.esCopiaPendiente());
+
+        assertTrue(c.contieneArchivo("x", "txt"));
+        assertFalse(c.esCopiaPendiente());
+        assertSame(x.getBlob(), c.getArchivo("x", "txt").getBlob());
+        assertTrue(c.contieneSubdirectorio("b"));
+    }
+}
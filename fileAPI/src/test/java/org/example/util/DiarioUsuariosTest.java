@@ -0,0 +1,137 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Cambio;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DiarioUsuariosTest {
+
+    @TempDir
+    Path dir;
+
+    private static Usuario nuevoUsuario() {
+        Usuario u = new Usuario("ana", 1_000_000);
+        u.setDirectorioRaiz(new Directorio("root", null));
+        u.setObservador(c -> DiarioUsuarios.anotar(u.getId(), c));
+        return u;
+    }
+
+    private Usuario instantanea(Usuario u) throws IOException {
+        Path archivo = FormatoUsuario.instantanea(dir, u.getId());
+        Files.write(archivo, FormatoUsuario.serializar(u));
+        return FormatoUsuario.leer(archivo.toFile());
+    }
+
+    @Test
+    void reproduceSobreLaInstantaneaSoloLoPosterior() throws IOException {
+        Usuario u = nuevoUsuario();
+        Directorio raiz = u.getDirectorioRaiz();
+        Archivo a = new Archivo("a", "txt", "h1", 5);
+        raiz.agregarArchivo(a);
+
+        Usuario leido = instantanea(u);
+        assertEquals(1, leido.getSecuencia());
+
+        Directorio docs = new Directorio("docs", null);
+        raiz.agregarSubdirectorio(docs);
+        docs.agregarArchivo(new Archivo("b", "txt", "h2", 7));
+        raiz.actualizarContenido(a, "h3", 11);
+        raiz.moverArchivo(a, docs);
+
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        DiarioUsuarios.volcar(diario, u.getId());
+        List<Cambio> cambios = DiarioUsuarios.leer(diario);
+        assertEquals(5, cambios.size());
+
+        DiarioUsuarios.reproducir(leido, cambios);
+
+        // El primer cambio ya estaba en la instantánea: no se vuelve a agregar
+        Directorio raizLeida = leido.getDirectorioRaiz();
+        assertEquals(0, raizLeida.getArchivos().size());
+        Directorio docsLeida = raizLeida.getSubdirectorioPorNombre("docs");
+        assertNotNull(docsLeida);
+        assertEquals(docs.getId(), docsLeida.getId());
+        assertEquals(2, docsLeida.getArchivos().size());
+        Archivo aLeido = docsLeida.getArchivo("a", "txt");
+        assertEquals(a.getId(), aLeido.getId());
+        assertEquals("h3", aLeido.getBlob());
+        assertEquals(11, aLeido.getTamano());
+        assertEquals(u.getSecuencia(), leido.getSecuencia());
+        assertEquals(18, leido.getEspacioUsado());
+    }
+
+    @Test
+    void unaInstantaneaAlDiaNoReproduceNada() throws IOException {
+        Usuario u = nuevoUsuario();
+        Directorio raiz = u.getDirectorioRaiz();
+        raiz.agregarArchivo(new Archivo("a", "txt", "h1", 5));
+        raiz.agregarSubdirectorio(new Directorio("docs", null));
+
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        DiarioUsuarios.volcar(diario, u.getId());
+        Usuario leido = instantanea(u);
+
+        DiarioUsuarios.reproducir(leido, DiarioUsuarios.leer(diario));
+
+        assertEquals(1, leido.getDirectorioRaiz().getArchivos().size());
+        assertEquals(1, leido.getDirectorioRaiz().getSubdirectorios().size());
+        assertEquals(2, leido.getSecuencia());
+    }
+
+    @Test
+    void cortaUnaUltimaLineaIncompleta() throws IOException {
+        Usuario u = nuevoUsuario();
+        u.getDirectorioRaiz().agregarArchivo(new Archivo("a", "txt", "h1", 5));
+        u.getDirectorioRaiz().agregarArchivo(new Archivo("b", "txt", "h2", 5));
+
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        long tamano = DiarioUsuarios.volcar(diario, u.getId());
+        Files.write(diario, "{\"secuencia\":3,\"ti".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<Cambio> cambios = DiarioUsuarios.leer(diario);
+
+        assertEquals(2, cambios.size());
+        assertEquals(2, cambios.get(1).getSecuencia());
+        assertEquals(tamano, Files.size(diario));
+    }
+
+    @Test
+    void cortaEnLaPrimeraLineaIlegible() throws IOException {
+        Usuario u = nuevoUsuario();
+        u.getDirectorioRaiz().agregarArchivo(new Archivo("a", "txt", "h1", 5));
+
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        long tamano = DiarioUsuarios.volcar(diario, u.getId());
+        Files.write(diario, "no es json\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        u.getDirectorioRaiz().agregarArchivo(new Archivo("b", "txt", "h2", 5));
+        DiarioUsuarios.volcar(diario, u.getId());
+
+        List<Cambio> cambios = DiarioUsuarios.leer(diario);
+
+        assertEquals(1, cambios.size());
+        assertEquals(tamano, Files.size(diario));
+        // Lo de después de la línea rota también se pierde
+        assertEquals(1, DiarioUsuarios.leer(diario).size());
+    }
+
+    @Test
+    void sinDiarioNoHayCambios() throws IOException {
+        Path diario = dir.resolve("usuario_nadie.journal");
+        assertEquals(0, DiarioUsuarios.leer(diario).size());
+        assertNull(FormatoUsuario.buscar(dir, "nadie"));
+    }
+}
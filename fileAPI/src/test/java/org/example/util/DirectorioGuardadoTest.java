@@ -0,0 +1,127 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectorioGuardadoTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> ids(List<Archivo> archivos) {
+        return archivos.stream().map(Archivo::getId).toList();
+    }
+
+    @Test
+    void unaCopiaPendienteSeGuardaSinDesplegarseYSeEnlazaAlCargar() throws IOException {
+        Usuario u = new Usuario("ana", 1_000_000);
+        Directorio raiz = new Directorio("root", null);
+        u.setDirectorioRaiz(raiz);
+        Directorio a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        a.agregarArchivo(new Archivo("x", "txt", "h1", 4));
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarArchivo(new Archivo("y", "txt", "h2", 6));
+        Directorio c = a.copiaDiferida("c");
+        raiz.agregarCopia(c);
+
+        Path archivo = FormatoUsuario.instantanea(dir, u.getId());
+        Files.write(archivo, FormatoUsuario.serializar(u));
+        assertTrue(c.esCopiaPendiente(), "guardar no despliega la copia");
+
+        Usuario leido = FormatoUsuario.leer(archivo.toFile());
+        Directorio cLeida = leido.getDirectorioRaiz().getSubdirectorioPorNombre("c");
+        assertTrue(cLeida.esCopiaSinEnlazar());
+        assertTrue(cLeida.getArchivos().isEmpty());
+        assertEquals(10, cLeida.getTamanoTotal());
+        assertEquals(20, leido.getDirectorioRaiz().getTamanoTotal());
+
+        DiarioUsuarios.reproducir(leido, List.of());
+
+        assertFalse(cLeida.esCopiaSinEnlazar());
+        // Desplegar da los mismos ids que en el árbol original
+        assertEquals(ids(c.verArchivos()), ids(cLeida.verArchivos()));
+        Directorio bLeida = cLeida.getSubdirectorioPorNombre("b");
+        assertEquals(ids(c.getSubdirectorioPorNombre("b").verArchivos()), ids(bLeida.verArchivos()));
+        assertEquals("h2", bLeida.verArchivos().get(0).getBlob());
+    }
+
+    private static String usuarioConCopia(String copia) {
+        return """
+                {"id":"u1","nombre":"ana","espacioMaximo":100,"secuencia":0,
+                 "directorioRaiz":{"id":"r","nombre":"root","archivos":[],"subdirectorios":[
+                   {"id":"a","nombre":"a","subdirectorios":[],
+                    "archivos":[{"id":"x","nombre":"x","extension":"txt","blob":"h1","tamano":4}]},
+                   %s]}}
+                """.formatted(copia);
+    }
+
+    // Si al guardar se cruzó un despliegue, la copia trae también sus listas;
+    // manda la referencia a su origen, venga antes o después de ellas
+    private void cargaComoCopiaPendiente(String copia) throws IOException {
+        Path archivo = FormatoUsuario.instantaneaLegada(dir, "u1");
+        Files.writeString(archivo, usuarioConCopia(copia), StandardCharsets.UTF_8);
+
+        Usuario leido = FormatoUsuario.leer(archivo.toFile());
+        Directorio c = leido.getDirectorioRaiz().getSubdirectorioPorNombre("c");
+        assertTrue(c.esCopiaSinEnlazar());
+        assertTrue(c.getArchivos().isEmpty());
+        assertTrue(c.getSubdirectorios().isEmpty());
+        assertEquals(4, c.getTamanoTotal());
+        assertEquals(8, leido.getDirectorioRaiz().getTamanoTotal());
+
+        DiarioUsuarios.reproducir(leido, List.of());
+        List<Archivo> vistos = c.verArchivos();
+        assertEquals(1, vistos.size());
+        assertEquals("h1", vistos.get(0).getBlob());
+        assertEquals(8, leido.getDirectorioRaiz().getTamanoTotal());
+    }
+
+    @Test
+    void laCopiaMandaSiLasListasVienenDespues() throws IOException {
+        cargaComoCopiaPendiente("""
+                {"id":"c","nombre":"c","copia":{"origen":"a","tamano":4},
+                 "archivos":[{"id":"viejo","nombre":"viejo","extension":"txt","blob":"h9","tamano":50}],
+                 "subdirectorios":[{"id":"s","nombre":"s","archivos":[],"subdirectorios":[]}]}""");
+    }
+
+    @Test
+    void laCopiaMandaSiLasListasVienenAntes() throws IOException {
+        cargaComoCopiaPendiente("""
+                {"id":"c","nombre":"c",
+                 "archivos":[{"id":"viejo","nombre":"viejo","extension":"txt","blob":"h9","tamano":50}],
+                 "subdirectorios":[{"id":"s","nombre":"s","archivos":[],"subdirectorios":[]}],
+                 "copia":{"origen":"a","tamano":4}}""");
+    }
+
+    @Test
+    void sinSuOrigenQuedaVacia() throws IOException {
+        Path archivo = FormatoUsuario.instantaneaLegada(dir, "u1");
+        Files.writeString(archivo, usuarioConCopia(
+                "{\"id\":\"c\",\"nombre\":\"c\",\"copia\":{\"origen\":\"borrada\",\"tamano\":4}}"),
+                StandardCharsets.UTF_8);
+
+        Usuario leido = FormatoUsuario.leer(archivo.toFile());
+        DiarioUsuarios.reproducir(leido, List.of());
+
+        Directorio c = leido.getDirectorioRaiz().getSubdirectorioPorNombre("c");
+        assertFalse(c.esCopiaPendiente());
+        assertTrue(c.verArchivos().isEmpty());
+        assertEquals(0, c.getTamanoTotal());
+        assertEquals(4, leido.getEspacioUsado());
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndiceNombresTest {
+
+    private Usuario usuario;
+    private Directorio a;
+    private Directorio d;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        usuario.setDirectorioCompartidos(new Directorio("compartidos", null));
+        Directorio raiz = usuario.getDirectorioRaiz();
+        a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        a.agregarArchivo(new Archivo("x", "txt", "h1", 1));
+        a.agregarSubdirectorio(new Directorio("b", null));
+        d = new Directorio("d", null);
+        raiz.agregarSubdirectorio(d);
+        usuario.getDirectorioCompartidos().agregarArchivo(new Archivo("x", "pdf", "h2", 1));
+    }
+
+    @Test
+    void primeroRootYDespuesCompartidos() {
+        assertEquals(List.of("root/a", "compartidos"), IndiceNombres.de(usuario).rutasDeArchivo("x"));
+        assertEquals(List.of("root/a/b"), IndiceNombres.de(usuario).rutasDeCarpeta("b"));
+    }
+
+    // El índice se arma una vez y después sigue los cambios del árbol
+    @Test
+    void sigueLosCambiosDelArbol() {
+        IndiceNombres indice = IndiceNombres.de(usuario);
+
+        usuario.getDirectorioRaiz().moverSubdirectorio(a, d);
+        assertEquals(List.of("root/d/a", "compartidos"), indice.rutasDeArchivo("x"));
+        assertEquals(List.of("root/d/a/b"), indice.rutasDeCarpeta("b"));
+
+        usuario.getDirectorioRaiz().agregarCopia(a.copiaDiferida("c"));
+        assertEquals(List.of("root/c/b", "root/d/a/b"), indice.rutasDeCarpeta("b"));
+
+        d.quitarSubdirectorio(a);
+        usuario.getDirectorioCompartidos().quitarArchivo(usuario.getDirectorioCompartidos().getArchivo("x", "pdf"));
+        d.agregarArchivo(new Archivo("x", "md", "h3", 1));
+        assertEquals(List.of("root/c", "root/d"), indice.rutasDeArchivo("x"));
+        assertEquals(List.of("root/c/b"), indice.rutasDeCarpeta("b"));
+        assertEquals(List.of(), indice.rutasDeCarpeta("a"));
+    }
+}
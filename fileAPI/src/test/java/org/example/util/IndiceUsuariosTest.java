@@ -0,0 +1,74 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndiceUsuariosTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Con hilos virtuales: reservar el mismo nombre a la vez lo gana uno solo
+    @Test
+    void unNombreLoReservaUnoSolo() throws Exception {
+        IndiceUsuarios indice = new IndiceUsuarios(mapper);
+        indice.reconstruir(dir);
+
+        List<Future<Boolean>> intentos = new ArrayList<>();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                String id = "u" + i;
+                intentos.add(hilos.submit(() -> indice.reservar("ana", id)));
+            }
+        }
+
+        int ganados = 0;
+        for (Future<Boolean> intento : intentos) if (intento.get()) ganados++;
+        assertEquals(1, ganados);
+    }
+
+    // Cada registro persiste el índice bajo el cerrojo: escrituras simultáneas
+    // desde muchos hilos virtuales dejan un archivo válido con todos
+    @Test
+    void losRegistrosSimultaneosQuedanTodosEnDisco() throws Exception {
+        IndiceUsuarios indice = new IndiceUsuarios(mapper);
+        indice.reconstruir(dir);
+
+        List<Future<Void>> registros = new ArrayList<>();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                registros.add(hilos.submit(() -> {
+                    indice.registrar("usuario" + n, "u" + n, n);
+                    return null;
+                }));
+            }
+        }
+        for (Future<Void> registro : registros) registro.get();
+
+        Map<String, IndiceUsuarios.Entrada> enDisco = leer();
+        assertEquals(100, enDisco.size());
+        assertEquals("usuario42", enDisco.get("u42").nombre);
+        assertEquals(100, indice.tamano());
+    }
+
+    private Map<String, IndiceUsuarios.Entrada> leer() throws IOException {
+        return mapper.readValue(dir.resolve(IndiceUsuarios.ARCHIVO_INDICE).toFile(),
+                new TypeReference<Map<String, IndiceUsuarios.Entrada>>() {});
+    }
+}
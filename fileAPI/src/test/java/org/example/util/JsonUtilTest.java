@@ -0,0 +1,111 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonUtilTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> ordenados(List<String> blobs) {
+        List<String> copia = new ArrayList<>(blobs);
+        Collections.sort(copia);
+        return copia;
+    }
+
+    // El recuento al arrancar cuenta lo mismo que el proceso en marcha: una copia
+    // pendiente, la del diario o la de la instantánea, cuenta lo que ve de su origen
+    @Test
+    void elRecuentoCuentaLasCopiasComoElProcesoEnMarcha() throws IOException {
+        Usuario u = new Usuario("ana", 1_000_000);
+        Directorio raiz = new Directorio("root", null);
+        u.setDirectorioRaiz(raiz);
+        Directorio a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        Archivo x = new Archivo("x", "txt", "h1", 4);
+        a.agregarArchivo(x);
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarArchivo(new Archivo("y", "txt", "h2", 6));
+        raiz.agregarCopia(a.copiaDiferida("antes"));
+        Files.write(FormatoUsuario.instantanea(dir, u.getId()), FormatoUsuario.serializar(u));
+
+        // Lo posterior a la instantánea, solo en el diario
+        u.setObservador(c -> DiarioUsuarios.anotar(u.getId(), c));
+        raiz.agregarCopia(a.copiaDiferida("despues"));
+        a.actualizarContenido(x, "h3", 5);
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        DiarioUsuarios.volcar(diario, u.getId());
+
+        List<String> enMemoria = AlmacenBlobs.blobsDe(raiz);
+        assertEquals(List.of("h1", "h1", "h2", "h2", "h2", "h3"), ordenados(enMemoria));
+        assertEquals(ordenados(enMemoria), ordenados(JsonUtil.blobsEnDisco(dir)));
+    }
+
+    @Test
+    void elRecuentoNoCortaElDiario() throws IOException {
+        Usuario u = new Usuario("ana", 1_000_000);
+        u.setDirectorioRaiz(new Directorio("root", null));
+        Files.write(FormatoUsuario.instantanea(dir, u.getId()), FormatoUsuario.serializar(u));
+        u.setObservador(c -> DiarioUsuarios.anotar(u.getId(), c));
+        u.getDirectorioRaiz().agregarArchivo(new Archivo("x", "txt", "h1", 4));
+        Path diario = dir.resolve("usuario_" + u.getId() + ".journal");
+        DiarioUsuarios.volcar(diario, u.getId());
+        // Una línea que la cola está escribiendo en este momento
+        Files.write(diario, "{\"secuencia\":2".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        long tamano = Files.size(diario);
+
+        assertEquals(List.of("h1"), JsonUtil.blobsEnDisco(dir));
+        assertEquals(tamano, Files.size(diario));
+    }
+
+    // Una instantánea JSON de antes, con el contenido dentro de cada archivo: al
+    // cargarla el contenido pasa al almacén de blobs y se reescribe en Smile
+    // JsonUtil es estático y sigue apuntando a su directorio al terminar (el
+    // contexto de Spring escribe ahí el índice al cerrarse), así que no es temporal
+    @Test
+    void unaInstantaneaJsonSePasaASmileAlCargar() throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path dir = Files.createDirectories(Path.of("build", "test-datos", "legado-" + id));
+        Files.writeString(FormatoUsuario.instantaneaLegada(dir, id), """
+                {"id":"%s","nombre":"%s","espacioMaximo":100,
+                 "directorioRaiz":{"id":"r","nombre":"root","subdirectorios":[],
+                   "archivos":[{"id":"x","nombre":"x","extension":"txt","contenido":"hola","tamano":4}]}}
+                """.formatted(id, "legado-" + id), StandardCharsets.UTF_8);
+        JsonUtil.inicializar(dir);
+
+        Usuario cargado = ColaMutaciones.leerPorId(id, usuario -> usuario);
+
+        assertFalse(Files.exists(FormatoUsuario.instantaneaLegada(dir, id)));
+        Path smile = FormatoUsuario.instantanea(dir, id);
+        assertTrue(Files.exists(smile));
+        String blob = cargado.getDirectorioRaiz().getArchivo("x", "txt").getBlob();
+        assertEquals("hola", AlmacenBlobs.leerTexto(blob));
+
+        Usuario releido = FormatoUsuario.leer(smile.toFile());
+        Archivo x = releido.getDirectorioRaiz().getArchivo("x", "txt");
+        assertEquals(blob, x.getBlob());
+        assertNull(x.getContenidoLegado());
+        assertEquals(4, releido.getDirectorioRaiz().getTamanoTotal());
+        assertEquals(id, JsonUtil.buscarIdPorNombre("legado-" + id));
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.util;
+
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListadoDirectoriosTest {
+
+    private Usuario usuario;
+    private Directorio raiz;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        raiz = new Directorio("root", null);
+        usuario.setDirectorioRaiz(raiz);
+    }
+
+    @Test
+    void lasCarpetasDeUnaPaginaNoSeDespliegan() {
+        Directorio a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        a.agregarArchivo(new Archivo("x", "txt", "h1", 1));
+        a.agregarArchivo(new Archivo("y", "txt", "h2", 1));
+        a.agregarSubdirectorio(new Directorio("b", null));
+        raiz.agregarCopia(a.copiaDiferida("c"));
+
+        ListadoDirectorios.Pagina pagina = ListadoDirectorios.de(usuario).listar(raiz, null, 10);
+
+        Directorio c = pagina.entradas.get(1).carpeta;
+        assertEquals("c", c.getNombre());
+        assertEquals(2, c.cuantosArchivos());
+        assertEquals(1, c.cuantosSubdirectorios());
+        assertTrue(c.esCopiaPendiente());
+    }
+
+    private static List<String> claves(ListadoDirectorios.Pagina pagina) {
+        return pagina.entradas.stream()
+                .map(e -> e.carpeta != null ? e.carpeta.getNombre() + "/" : e.archivo.getNombreCompleto())
+                .toList();
+    }
+
+    @Test
+    void carpetasPrimeroYLuegoPorNombre() {
+        raiz.agregarArchivo(new Archivo("b", "txt", "h1", 1));
+        raiz.agregarArchivo(new Archivo("A", "txt", "h2", 1));
+        raiz.agregarSubdirectorio(new Directorio("z", null));
+
+        ListadoDirectorios.Pagina pagina = ListadoDirectorios.de(usuario).listar(raiz, null, 10);
+
+        assertEquals(List.of("z/", "A.txt", "b.txt"), claves(pagina));
+        assertNull(pagina.siguiente);
+        assertNull(ListadoDirectorios.de(usuario).listar(raiz, "no es un cursor", 10));
+    }
+
+    // El cursor es la clave de lo último entregado: lo que se agrega o se quita
+    // entre páginas no hace repetir ni saltar entradas
+    @Test
+    void elCursorSigueDondeQuedoAunqueCambienLosHijos() {
+        for (String nombre : List.of("b", "d", "f", "h")) raiz.agregarArchivo(new Archivo(nombre, "txt", "h-" + nombre, 1));
+        ListadoDirectorios listado = ListadoDirectorios.de(usuario);
+
+        ListadoDirectorios.Pagina primera = listado.listar(raiz, null, 2);
+        assertEquals(List.of("b.txt", "d.txt"), claves(primera));
+        assertNotNull(primera.siguiente);
+
+        raiz.agregarArchivo(new Archivo("a", "txt", "h-a", 1));
+        raiz.agregarArchivo(new Archivo("e", "txt", "h-e", 1));
+        raiz.quitarArchivo(raiz.getArchivo("d", "txt"));
+
+        ListadoDirectorios.Pagina segunda = listado.listar(raiz, primera.siguiente, 2);
+        assertEquals(List.of("e.txt", "f.txt"), claves(segunda));
+        ListadoDirectorios.Pagina tercera = listado.listar(raiz, segunda.siguiente, 2);
+        assertEquals(List.of("h.txt"), claves(tercera));
+        assertNull(tercera.siguiente);
+        assertEquals(5, tercera.total);
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MedidasTest {
+
+    // Los medidores van al registro global; uno propio por prueba empieza en cero
+    private final SimpleMeterRegistry registro = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void preparar() {
+        Metrics.addRegistry(registro);
+    }
+
+    @AfterEach
+    void limpiar() {
+        Metrics.removeRegistry(registro);
+        registro.close();
+    }
+
+    private double accesos(String cache, String resultado) {
+        return registro.get("fileapi.cache.accesos").tag("cache", cache).tag("resultado", resultado).counter().count();
+    }
+
+    @Test
+    void losAccesosCuentanAciertosYFallos() {
+        String cache = "prueba-" + UUID.randomUUID();
+        Medidas.Accesos accesos = new Medidas.Accesos(cache);
+        accesos.registrar(true);
+        accesos.registrar(true);
+        accesos.registrar(false);
+
+        assertEquals(2, accesos(cache, "acierto"));
+        assertEquals(1, accesos(cache, "fallo"));
+    }
+
+    @Test
+    void losBytesNoSumanCeroNiNegativos() {
+        Medidas.BLOB.escritos(10);
+        Medidas.BLOB.escritos(0);
+        Medidas.BLOB.escritos(-1);
+        Medidas.BLOB.leidos(4);
+
+        assertEquals(10, registro.get("fileapi.almacen.bytes").tag("tipo", "blob").tag("sentido", "escritos").counter().count());
+        assertEquals(4, registro.get("fileapi.almacen.bytes").tag("tipo", "blob").tag("sentido", "leidos").counter().count());
+    }
+
+    // La copia pendiente cuenta como un nivel y no se despliega para medirla
+    @Test
+    void elDocumentoMideProfundidadYRamificacion() {
+        Usuario usuario = new Usuario("ana", 1_000);
+        Directorio raiz = new Directorio("root", null);
+        usuario.setDirectorioRaiz(raiz);
+        Directorio a = new Directorio("a", null);
+        raiz.agregarSubdirectorio(a);
+        a.agregarArchivo(new Archivo("x", "txt", "h1", 1));
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarSubdirectorio(new Directorio("c", null));
+        raiz.agregarCopia(a.copiaDiferida("copia"));
+
+        Medidas.documento(usuario, 2048);
+
+        DistributionSummary documento = registro.get("fileapi.usuario.documento").summary();
+        assertEquals(1, documento.count());
+        assertEquals(2048, documento.totalAmount());
+        DistributionSummary profundidad = registro.get("fileapi.arbol.profundidad").summary();
+        assertEquals(1, profundidad.count());
+        assertEquals(4, profundidad.max());
+        // root, a, b y c; la copia no
+        assertEquals(4, registro.get("fileapi.arbol.ramificacion").summary().count());
+    }
+}
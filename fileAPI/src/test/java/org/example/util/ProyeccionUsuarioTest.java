@@ -0,0 +1,83 @@
+package org.example.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.model.Archivo;
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProyeccionUsuarioTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Usuario usuario;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        usuario.setDirectorioCompartidos(new Directorio("compartidos", null));
+        Directorio a = new Directorio("a", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(a);
+        usuario.getDirectorioRaiz().agregarArchivo(new Archivo("x", "txt", "h1", 4));
+        Directorio b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        b.agregarArchivo(new Archivo("y", "txt", "h2", 6));
+        usuario.recalcularEspacioUsado();
+    }
+
+    private JsonNode proyectar(String campos, Integer profundidad) throws IOException {
+        ProyeccionUsuario proyeccion = ProyeccionUsuario.de(campos, profundidad, false);
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        proyeccion.escribir(proyeccion.tomar(usuario), salida);
+        return mapper.readTree(salida.toByteArray());
+    }
+
+    // Cuántos niveles de carpetas traen sus hijos, contando la raíz
+    private static int nivelesCompletos(JsonNode dir) {
+        if (dir.path("truncado").asBoolean()) return 0;
+        int mas = 0;
+        for (JsonNode sub : dir.get("subdirectorios")) mas = Math.max(mas, nivelesCompletos(sub));
+        return 1 + mas;
+    }
+
+    @Test
+    void laProfundidadRecortaElArbol() throws IOException {
+        JsonNode soloRaices = proyectar(null, 0).get("directorioRaiz");
+        assertTrue(soloRaices.get("truncado").asBoolean());
+        assertEquals(10, soloRaices.get("tamanoTotal").asLong());
+        assertFalse(soloRaices.has("archivos"));
+
+        JsonNode unNivel = proyectar(null, 1).get("directorioRaiz");
+        assertEquals(1, nivelesCompletos(unNivel));
+        assertEquals("x", unNivel.get("archivos").get(0).get("nombre").asText());
+        JsonNode a = unNivel.get("subdirectorios").get(0);
+        assertTrue(a.get("truncado").asBoolean());
+        assertEquals(6, a.get("tamanoTotal").asLong());
+
+        assertEquals(2, nivelesCompletos(proyectar(null, 2).get("directorioRaiz")));
+        assertEquals(3, nivelesCompletos(proyectar(null, null).get("directorioRaiz")));
+    }
+
+    @Test
+    void soloLosCamposPedidos() throws IOException {
+        JsonNode respuesta = proyectar("nombre, espacioUsado", null);
+
+        List<String> campos = new ArrayList<>();
+        respuesta.fieldNames().forEachRemaining(campos::add);
+        assertEquals(List.of("nombre", "espacioUsado"), campos);
+        assertEquals(10, respuesta.get("espacioUsado").asLong());
+        assertThrows(IllegalArgumentException.class, () -> ProyeccionUsuario.de("nombre,clave", null, false));
+    }
+}
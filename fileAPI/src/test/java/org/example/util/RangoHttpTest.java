@@ -0,0 +1,70 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RangoHttpTest {
+
+    @Test
+    void rangoCerrado() {
+        RangoHttp r = RangoHttp.parsear("bytes=10-19", 100);
+        assertEquals(10, r.getInicio());
+        assertEquals(19, r.getFin());
+        assertEquals(10, r.getLongitud());
+    }
+
+    @Test
+    void finAbiertoOFueraDelArchivoSeRecorta() {
+        RangoHttp abierto = RangoHttp.parsear("bytes=90-", 100);
+        assertEquals(90, abierto.getInicio());
+        assertEquals(99, abierto.getFin());
+
+        RangoHttp largo = RangoHttp.parsear("bytes=50-500", 100);
+        assertEquals(50, largo.getInicio());
+        assertEquals(99, largo.getFin());
+    }
+
+    @Test
+    void sufijo() {
+        RangoHttp r = RangoHttp.parsear("bytes=-30", 100);
+        assertEquals(70, r.getInicio());
+        assertEquals(99, r.getFin());
+
+        // Más bytes de los que hay: el archivo entero
+        RangoHttp todo = RangoHttp.parsear("bytes=-500", 100);
+        assertEquals(0, todo.getInicio());
+        assertEquals(99, todo.getFin());
+    }
+
+    @Test
+    void noSatisfacible() {
+        assertSame(RangoHttp.NO_SATISFACIBLE, RangoHttp.parsear("bytes=100-", 100));
+        assertSame(RangoHttp.NO_SATISFACIBLE, RangoHttp.parsear("bytes=200-300", 100));
+        assertSame(RangoHttp.NO_SATISFACIBLE, RangoHttp.parsear("bytes=-0", 100));
+        assertSame(RangoHttp.NO_SATISFACIBLE, RangoHttp.parsear("bytes=-5", 0));
+        assertSame(RangoHttp.NO_SATISFACIBLE, RangoHttp.parsear("bytes=0-", 0));
+    }
+
+    @Test
+    void seIgnoranLasCabecerasInvalidas() {
+        assertNull(RangoHttp.parsear(null, 100));
+        assertNull(RangoHttp.parsear("", 100));
+        assertNull(RangoHttp.parsear("items=0-10", 100));
+        assertNull(RangoHttp.parsear("bytes=0-10,20-30", 100));
+        assertNull(RangoHttp.parsear("bytes=10", 100));
+        assertNull(RangoHttp.parsear("bytes=-", 100));
+        assertNull(RangoHttp.parsear("bytes=20-10", 100));
+        assertNull(RangoHttp.parsear("bytes=a-b", 100));
+        assertNull(RangoHttp.parsear("bytes=99999999999999999999-", 100));
+    }
+
+    @Test
+    void admiteEspacios() {
+        RangoHttp r = RangoHttp.parsear("  bytes= 5 - 9 ", 100);
+        assertEquals(5, r.getInicio());
+        assertEquals(9, r.getFin());
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.util;
+
+import org.example.model.Directorio;
+import org.example.model.Usuario;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ResolutorRutasTest {
+
+    private Usuario usuario;
+    private Directorio a;
+    private Directorio b;
+    private Directorio d;
+
+    @BeforeEach
+    void preparar() {
+        usuario = new Usuario("ana", 1_000_000);
+        usuario.setDirectorioRaiz(new Directorio("root", null));
+        a = new Directorio("a", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(a);
+        b = new Directorio("b", null);
+        a.agregarSubdirectorio(b);
+        d = new Directorio("d", null);
+        usuario.getDirectorioRaiz().agregarSubdirectorio(d);
+    }
+
+    @Test
+    void normalizaLasRutas() {
+        assertEquals("root/a/b", ResolutorRutas.normalizar("/Root//a/b/"));
+        assertEquals("compartidos", ResolutorRutas.normalizar("compartidos"));
+        assertNull(ResolutorRutas.normalizar("otra/a"));
+        assertNull(ResolutorRutas.normalizar("/"));
+    }
+
+    // Lo que cuelga de la carpeta movida sigue enganchado al árbol, así que solo
+    // invalidar evita que la ruta vieja la siga encontrando
+    @Test
+    void moverInvalidaLaRutaYLoQueCuelgaDeElla() {
+        assertSame(a, ResolutorRutas.resolver(usuario, "root/a"));
+        assertSame(b, ResolutorRutas.resolver(usuario, "root/a/b"));
+
+        usuario.getDirectorioRaiz().moverSubdirectorio(a, d);
+        ResolutorRutas.invalidar(usuario, "root/a");
+
+        assertNull(ResolutorRutas.resolver(usuario, "root/a"));
+        assertNull(ResolutorRutas.resolver(usuario, "root/a/b"));
+        assertSame(a, ResolutorRutas.resolver(usuario, "root/d/a"));
+        assertSame(b, ResolutorRutas.resolver(usuario, "root/d/a/b"));
+    }
+
+    @Test
+    void unaCarpetaQuitadaNoSeDevuelveAunqueNoSeInvalide() {
+        assertSame(b, ResolutorRutas.resolver(usuario, "root/a/b"));
+        a.quitarSubdirectorio(b);
+        assertNull(ResolutorRutas.resolver(usuario, "root/a/b"));
+    }
+
+    // Al leer de disco cada carpeta vuelve a tener su padre
+    @Test
+    void alCargarSeRestauranLosPadres(@TempDir Path dir) throws IOException {
+        Path archivo = FormatoUsuario.instantanea(dir, usuario.getId());
+        Files.write(archivo, FormatoUsuario.serializar(usuario));
+        Usuario leido = FormatoUsuario.leer(archivo.toFile());
+
+        Directorio bLeida = ResolutorRutas.resolver(leido, "root/a/b");
+        assertEquals("root/a/b", bLeida.getRuta());
+        assertSame(leido.getDirectorioRaiz(), bLeida.getPadre().getPadre());
+    }
+}
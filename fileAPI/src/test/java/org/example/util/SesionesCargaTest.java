@@ -0,0 +1,66 @@
+package org.example.util;
+
+import org.example.model.SesionCarga;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SesionesCargaTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void preparar() throws IOException {
+        SesionesCarga.inicializar(dir);
+    }
+
+    private static SesionCarga abrir(String idUsuario, LocalDateTime fecha) throws IOException {
+        SesionCarga sesion = new SesionCarga(idUsuario, "root", "x", "bin", 8, 4);
+        sesion.setFechaCreacion(fecha);
+        SesionesCarga.crear(sesion);
+        return sesion;
+    }
+
+    @Test
+    void unaSesionReclamadaNoAdmiteTrozos() throws IOException {
+        SesionCarga sesion = abrir("u1", LocalDateTime.now());
+        SesionesCarga.escribirTrozo(sesion, 0, new ByteArrayInputStream(new byte[4]));
+        assertTrue(SesionesCarga.reclamar(sesion.getId()));
+
+        assertTrue(SesionesCarga.estaReclamada(sesion.getId()));
+        assertThrows(IllegalStateException.class,
+                () -> SesionesCarga.escribirTrozo(sesion, 1, new ByteArrayInputStream(new byte[4])));
+        assertEquals(List.of(0), SesionesCarga.recibidos(sesion));
+        try (var archivos = Files.list(dir.resolve(sesion.getId()))) {
+            assertFalse(archivos.anyMatch(a -> a.getFileName().toString().endsWith(".part")));
+        }
+    }
+
+    @Test
+    void lasVencidasSeBuscanEntreTodosLosUsuarios() throws IOException {
+        LocalDateTime ayer = LocalDateTime.now().minusDays(1);
+        SesionCarga a = abrir("u1", ayer);
+        SesionCarga b = abrir("u2", ayer);
+        abrir("u2", LocalDateTime.now());
+        SesionCarga reclamada = abrir("u3", ayer);
+        SesionesCarga.reclamar(reclamada.getId());
+
+        List<String> vencidas = SesionesCarga.vencidas(LocalDateTime.now().minusHours(1)).stream()
+                .map(SesionCarga::getId).sorted().toList();
+
+        assertEquals(List.of(a.getId(), b.getId()).stream().sorted().toList(), vencidas);
+    }
+}